@@ -11,6 +11,24 @@
 dependencies {
     implementation(libs.bundles.log4j)
     implementation(project(":core"))
+    testImplementation(platform("org.junit:junit-bom:${libs.versions.junit.get()}"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+}
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark") // timing-sensitive, run with the benchmark task instead
+    }
+}
+
+tasks.register<Test>("benchmark") {
+    description = "Runs the benchmarks."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
 }
 
 javafx {
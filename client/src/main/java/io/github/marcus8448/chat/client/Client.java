@@ -18,12 +18,22 @@
 
 import io.github.marcus8448.chat.client.config.AccountData;
 import io.github.marcus8448.chat.client.config.Config;
+import io.github.marcus8448.chat.client.message.ChannelMessages;
+import io.github.marcus8448.chat.client.message.ImageStore;
+import io.github.marcus8448.chat.client.message.KeyCache;
+import io.github.marcus8448.chat.client.message.MessageCache;
+import io.github.marcus8448.chat.client.message.MessageSender;
+import io.github.marcus8448.chat.client.message.ReceivedMessage;
+import io.github.marcus8448.chat.client.message.SignatureVerifier;
 import io.github.marcus8448.chat.client.ui.ChatView;
 import io.github.marcus8448.chat.client.ui.LoginScreen;
 import io.github.marcus8448.chat.client.ui.UserTrustScreen;
+import io.github.marcus8448.chat.client.util.FxUpdateQueue;
+import io.github.marcus8448.chat.client.util.ImageCache;
 import io.github.marcus8448.chat.core.api.Constants;
 import io.github.marcus8448.chat.core.api.account.User;
 import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.Handshake;
 import io.github.marcus8448.chat.core.api.message.*;
 import io.github.marcus8448.chat.core.api.misc.Identifier;
 import io.github.marcus8448.chat.core.api.network.PacketPipeline;
@@ -32,6 +42,14 @@
 import io.github.marcus8448.chat.core.api.network.packet.ServerPacketTypes;
 import io.github.marcus8448.chat.core.api.network.packet.client.Authenticate;
 import io.github.marcus8448.chat.core.api.network.packet.client.Hello;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestImage;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestKeys;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeChannels;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeSession;
+import io.github.marcus8448.chat.core.api.network.packet.client.SendEncodedImageMessage;
+import io.github.marcus8448.chat.core.api.network.packet.client.SendMessage;
+import io.github.marcus8448.chat.core.api.network.packet.client.SyncPresence;
 import io.github.marcus8448.chat.core.api.network.packet.common.ChannelList;
 import io.github.marcus8448.chat.core.api.network.packet.server.*;
 import javafx.application.Application;
@@ -61,24 +79,38 @@
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
-import java.security.Signature;
+import java.security.KeyPair;
+import java.security.PublicKey;
 import java.security.SignatureException;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
-import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class Client extends Application implements Runnable {
     private static final Logger LOGGER = LogManager.getLogger();
     /**
-     * Map of channel id -> list of messages
+     * When the client class was initialized (in nanoseconds), to measure startup time
      */
-    public final Map<Identifier, ObservableList<Message>> messages = new HashMap<>();
+    private static final long LAUNCH_TIME = System.nanoTime();
+    /**
+     * The number of messages to request per page of history
+     */
+    private static final int HISTORY_PAGE_SIZE = 50;
+    /**
+     * The maximum number of bytes of encoded images kept in memory (64MiB)
+     */
+    private static final long IMAGE_STORE_SIZE = 64 * 1024 * 1024;
+    /**
+     * Map of channel id -> loaded messages
+     */
+    public final Map<Identifier, ChannelMessages> messages = new HashMap<>();
     /**
      * Users connected to the server
      * Map of user session id -> user
@@ -96,9 +128,38 @@ public class Client extends Application implements Runnable {
      */
     private final Cipher aesCipher = CryptoHelper.createAesCipher();
     /**
-     * RSA signature for the signing of messages
+     * Applies updates from the server on the application thread, once per frame
+     */
+    private final FxUpdateQueue updates = new FxUpdateQueue(this::flushUpdates);
+    /**
+     * Signs and sends messages in the background
+     */
+    private final MessageSender sender = new MessageSender(this.updates);
+    /**
+     * Checks the signatures of received messages in the background
+     */
+    private final SignatureVerifier verifier = new SignatureVerifier(Runtime.getRuntime().availableProcessors(), this.updates);
+    /**
+     * Encoded images that have been downloaded (or sent), by hash
+     */
+    private final ImageStore imageStore = new ImageStore(IMAGE_STORE_SIZE, this::requestImage);
+    /**
+     * The public keys of other users (fetched when first needed, and kept across reconnects)
      */
-    private final Signature rsaSignature = CryptoHelper.createRsaSignature();
+    private final KeyCache keys = new KeyCache(this::requestKeys);
+    /**
+     * Map of session id -> online user, as sent by the server
+     * Only accessed on the connection thread (the application thread has its own copy, see {@link #users})
+     */
+    private final Map<Integer, User> sessions = new HashMap<>();
+    /**
+     * Users added to the user map since the last flush (not yet in the user list)
+     */
+    private final List<User> addedUsers = new ArrayList<>();
+    /**
+     * Users removed from the user map since the last flush (still in the user list)
+     */
+    private final List<User> removedUsers = new ArrayList<>();
     /**
      * Whether the client should shutdown or attempt to reconnect to the server
      */
@@ -107,6 +168,18 @@ public class Client extends Application implements Runnable {
      * The configuration data/file
      */
     public Config config;
+    /**
+     * The root directory of the local message caches
+     */
+    private Path cacheDirectory;
+    /**
+     * Decoded images, kept for redisplay
+     */
+    private ImageCache imageCache;
+    /**
+     * The local message cache of the active account. Null if disabled or not logged in
+     */
+    private @Nullable MessageCache messageCache;
     /**
      * The connection to the server. Might be null if one is not active
      */
@@ -127,15 +200,24 @@ public class Client extends Application implements Runnable {
     /**
      * The public key of this client's account
      */
-    private RSAPublicKey publicKey;
+    private PublicKey publicKey;
     /**
      * The public key of the server this client is connected to
      */
-    private RSAPublicKey serverPubKey;
+    private PublicKey serverPubKey;
+    /**
+     * The author of the system messages of the server this client is connected to
+     */
+    private MessageAuthor systemAuthor;
     /**
      * The active account's data
      */
     private AccountData accountData;
+    /**
+     * Nicknames of trusted accounts, keyed by key fingerprint
+     * Derived from the account data's known accounts so that lookups never re-hash keys
+     */
+    private final Map<String, String> trustedNames = new HashMap<>();
     /**
      * The primary stage/window
      */
@@ -156,13 +238,43 @@ public class Client extends Application implements Runnable {
      * The username of the active account
      */
     private Identifier username;
+    /**
+     * The active account, as a message author
+     */
+    private User self;
+    /**
+     * The session ticket issued by the server (if any), used to quickly resume the session after a disconnect
+     */
+    private volatile @Nullable SessionTicket sessionTicket;
+    /**
+     * When the session ticket expires (as {@link System#nanoTime()})
+     */
+    private volatile long ticketExpiry;
+    /**
+     * The epoch of the online user list (0 if there is none)
+     */
+    private long presenceEpoch = 0;
+    /**
+     * The version of the online user list (-1 if there is none)
+     */
+    private int presenceVersion = -1;
+    /**
+     * Whether the changes to the user list have been requested (and changes sent before then should be ignored)
+     */
+    private boolean presenceSyncPending = false;
+    /**
+     * Completed once the authors of all received messages are known
+     * Messages are added in the order they were received, even if an author's key has to be fetched first
+     */
+    private CompletableFuture<Void> authorQueue = CompletableFuture.completedFuture(null);
 
     public Client() {
-        this.users.addListener((MapChangeListener<Integer, User>) change -> { // sync list with map
+        this.users.addListener((MapChangeListener<Integer, User>) change -> { // sync list with map (in bulk, see flushUpdates)
+            if (change.wasRemoved() && !this.addedUsers.remove(change.getValueRemoved())) {
+                this.removedUsers.add(change.getValueRemoved());
+            }
             if (change.wasAdded()) {
-                Platform.runLater(() -> this.userList.add(change.getValueAdded()));
-            } else {
-                Platform.runLater(() -> this.userList.remove(change.getValueRemoved()));
+                this.addedUsers.add(change.getValueAdded());
             }
         });
     }
@@ -172,8 +284,12 @@ public void start(Stage primaryStage) {
         Parameters parameters = this.getParameters();
         String configName = parameters.getNamed().getOrDefault("config", "chat.json"); //get config file name
         this.config = Config.load(new File(configName)); // laod the config file
+        this.cacheDirectory = Path.of(parameters.getNamed().getOrDefault("cache", "cache")); // get message cache location
+        this.imageCache = new ImageCache(this.config.getImageCacheSize() * 1024L * 1024L);
         this.primaryStage = primaryStage; // set the stage
+        this.updates.start(); // start applying server updates
         this.beginLoginProcess(primaryStage);
+        LOGGER.info("Login screen shown in {}ms", (System.nanoTime() - LAUNCH_TIME) / 1_000_000);
     }
 
     /**
@@ -215,12 +331,27 @@ public void logout(Stage stage) {
         this.channels.clear();
         this.connection = null;
         this.passKey = null;
+        if (this.messageCache != null) {
+            this.messageCache.close();
+            this.messageCache = null;
+        }
         this.serverPubKey = null;
+        this.systemAuthor = null;
         this.accountData = null;
+        this.trustedNames.clear();
         this.messages.clear();
+        this.imageStore.clear();
+        this.imageCache.clear();
         this.address = null;
         this.users.clear();
         this.username = null;
+        this.self = null;
+        this.sessionTicket = null;
+        this.sessions.clear();
+        this.presenceEpoch = 0;
+        this.presenceVersion = -1;
+        this.keys.clear();
+        this.authorQueue = CompletableFuture.completedFuture(null);
 
         // remove the system tray icon
         if (this.trayIcon != null && this.systemTray != null) {
@@ -240,14 +371,13 @@ public void logout(Stage stage) {
      *
      * @param connection the connection to the server
      * @param passKey    the AES key that encrypts the account data
-     * @param serverKey  the connected server's public RSA key
-     * @param publicKey  the active account's public RSA key
+     * @param serverKey  the connected server's public key (RSA or Ed25519)
+     * @param publicKey  the active account's public key (RSA or Ed25519)
      * @param data       the active account's decrypted data
-     * @param users      the users online on the server
      * @param username   the username of the active account
      * @param address    the address of the connected server
      */
-    public void initialize(PacketPipeline connection, SecretKey passKey, RSAPublicKey serverKey, RSAPublicKey publicKey, @NotNull AccountData data, List<User> users, Identifier username, InetSocketAddress address) {
+    public void initialize(PacketPipeline connection, SecretKey passKey, PublicKey serverKey, PublicKey publicKey, @NotNull AccountData data, Identifier username, InetSocketAddress address) {
         // store the state data
         this.connection = connection;
         this.closeConnection = false;
@@ -255,35 +385,36 @@ public void initialize(PacketPipeline connection, SecretKey passKey, RSAPublicKe
         this.passKey = passKey;
         this.publicKey = publicKey;
         this.serverPubKey = serverKey;
+        this.systemAuthor = MessageAuthor.system(serverKey);
         this.accountData = data;
         this.username = username;
+        this.self = new User(-1, username, publicKey, null);
+        this.trustedNames.clear();
+        this.keys.put(this.self.fingerprint(), publicKey); // known keys never have to be fetched
+        for (Map.Entry<PublicKey, String> entry : data.knownAccounts().entrySet()) {
+            String fingerprint = CryptoHelper.sha256Hash(entry.getKey().getEncoded());
+            this.trustedNames.put(fingerprint, entry.getValue());
+            this.keys.put(fingerprint, entry.getKey());
+        }
         // add default channel
-        this.messages.putIfAbsent(Constants.BASE_CHANNEL, FXCollections.observableArrayList());
+        this.messages.putIfAbsent(Constants.BASE_CHANNEL, new ChannelMessages(this.config.getMessageWindow(), this.verifier));
         if (!this.channels.contains(Constants.BASE_CHANNEL)) this.channels.add(0, Constants.BASE_CHANNEL);
-        // add the connected users
-        for (User user : users) {
-            this.users.put(user.sessionId(), user);
-        }
+        // get the connected users (or just the changes since we were last connected)
+        this.syncPresence();
+        this.keys.retry(); // requests sent over a lost connection never got a response
         // initialize signing key
-        RSAPrivateKey privateKey = this.accountData.privateKey();
-        try {
-            this.rsaSignature.initSign(privateKey);
-        } catch (InvalidKeyException e) {
-            LOGGER.fatal("Failed to initialize signature", e);
-            this.shutdown();
-            return;
-        }
+        this.sender.initialize(connection, this.accountData.privateKey());
         // open server -> client packet connection management thread
         Thread thread = new Thread(this, "Client Main");
         thread.start();
 
-        // join relevant channels
-        try {
-            this.connection.send(ClientPacketTypes.JOIN_CHANNELS, new ChannelList(this.accountData.channels().stream().map(Identifier::create).toArray(Identifier[]::new)));
-        } catch (Exception e) {
-            LOGGER.fatal("Failed to request channels", e);
-            this.shutdown();
-            return;
+        if (this.messageCache == null && this.config.getMessageCacheSize() > 0) {
+            // show the cached messages, then join relevant channels and catch up on anything newer
+            this.messageCache = new MessageCache(MessageCache.getDirectory(this.cacheDirectory, publicKey, address), passKey, this.config.getMessageCacheSize() * 1024L * 1024L);
+            this.loadCachedMessages();
+        } else {
+            // join relevant channels, and catch up on anything missed while disconnected
+            Platform.runLater(this::resumeChannels);
         }
 
         // create the system tray icon if possible
@@ -325,20 +456,105 @@ public void initialize(PacketPipeline connection, SecretKey passKey, RSAPublicKe
     }
 
     /**
-     * Sign the given message contents with the active account's key
-     *
-     * @param contents the contents of the message
-     * @return the signature
+     * Reads the newest cached messages of the account's channels, and then resumes the channels
+     * Resuming afterwards means that the server only sends messages that are not cached
+     */
+    private void loadCachedMessages() {
+        List<Identifier> channels = this.getChannelsToJoin();
+        this.messageCache.load(channels, this.config.getMessageWindow(), pages -> this.updates.execute(() -> {
+            for (MessageHistory page : pages) {
+                this.messages.computeIfAbsent(page.getChannel(), c -> new ChannelMessages(this.config.getMessageWindow(), this.verifier))
+                        .addHistory(page.getHistoryId(), page.getFirstSequence(), page.getOldestSequence(), page.getLatestSequence(), page.getMessages());
+            }
+            this.resumeChannels();
+        }));
+    }
+
+    /**
+     * @return the base channel, followed by the channels the account has joined
+     */
+    private List<Identifier> getChannelsToJoin() {
+        List<Identifier> channels = new ArrayList<>();
+        channels.add(Constants.BASE_CHANNEL);
+        for (String channel : this.accountData.channels()) {
+            Identifier id = Identifier.create(channel);
+            if (!channels.contains(id)) channels.add(id);
+        }
+        return channels;
+    }
+
+    /**
+     * Asks the server to (re)join the account's channels
+     * The server only sends the messages sent after the last message received in each channel
      */
-    public byte[] signMessage(String contents) {
+    private void resumeChannels() {
+        List<Identifier> channels = this.getChannelsToJoin();
+        int[] lastSequences = new int[channels.size()];
+        long[] historyIds = new long[channels.size()];
+        for (int i = 0; i < lastSequences.length; i++) {
+            ChannelMessages messages = this.messages.get(channels.get(i));
+            lastSequences[i] = messages == null ? -1 : messages.getLastSequence();
+            historyIds[i] = messages == null ? 0 : messages.getHistoryId();
+            // the missed messages are on their way
+            if (lastSequences[i] != -1) messages.setRequestPending(true);
+        }
         try {
-            this.rsaSignature.update(contents.getBytes(StandardCharsets.UTF_8));
-            return this.rsaSignature.sign();
-        } catch (SignatureException e) {
-            throw new IllegalStateException(e);
+            this.connection.send(ClientPacketTypes.RESUME_CHANNELS, new ResumeChannels(channels.toArray(new Identifier[0]), lastSequences, historyIds));
+        } catch (Exception e) {
+            LOGGER.fatal("Failed to request channels", e);
+            this.shutdown();
         }
     }
 
+    /**
+     * Signs and sends a text message in the background
+     * A placeholder is shown at the end of the channel until the server sends the message back
+     *
+     * @param channel   the channel to send the message to
+     * @param contents  the contents of the message
+     * @param onSent    called (on the application thread) once the message has been sent
+     * @param onFailure called (on the application thread) if the message could not be sent
+     */
+    public void sendMessage(Identifier channel, String contents, Runnable onSent, Consumer<Exception> onFailure) {
+        ChannelMessages messages = this.messages.get(channel);
+        ReceivedMessage placeholder = messages.addSending(Message.unverifiedText(System.currentTimeMillis(), this.getSelf(), contents));
+        this.sender.send(ClientPacketTypes.SEND_MESSAGE, signature -> signature.update(contents.getBytes(StandardCharsets.UTF_8)),
+                signature -> new SendMessage(channel, contents, signature), onSent, e -> {
+                    messages.removeSending(placeholder);
+                    onFailure.accept(e);
+                });
+    }
+
+    /**
+     * Signs and sends an encoded image message in the background
+     * A placeholder is shown at the end of the channel until the server sends the message back
+     *
+     * @param channel   the channel to send the message to
+     * @param width     the width of the image
+     * @param height    the height of the image
+     * @param data      the encoded (PNG) image
+     * @param hash      the SHA-256 hash of the encoded image
+     * @param onSent    called (on the application thread) once the message has been sent
+     * @param onFailure called (on the application thread) if the message could not be sent
+     */
+    public void sendImage(Identifier channel, int width, int height, byte[] data, byte[] hash, Runnable onSent, Consumer<Exception> onFailure) {
+        ChannelMessages messages = this.messages.get(channel);
+        this.imageStore.put(hash, data); // we already have the image, so never download it again
+        ReceivedMessage placeholder = messages.addSending(new EncodedImageMessage(System.currentTimeMillis(), this.getSelf(), width, height, hash, null, new byte[0]));
+        this.sender.send(ClientPacketTypes.SEND_ENCODED_IMAGE_MESSAGE, signature -> signature.update(hash),
+                signature -> new SendEncodedImageMessage(channel, width, height, data, signature), onSent, e -> {
+                    messages.removeSending(placeholder);
+                    onFailure.accept(e);
+                });
+    }
+
+    /**
+     * @return the active account, as a message author
+     */
+    private User getSelf() {
+        return this.self;
+    }
+
     /**
      * Manages the client's connection with the server
      */
@@ -352,34 +568,34 @@ public void run() {
                 if (packet.type() == ServerPacketTypes.ADD_MESSAGE) {
                     // add a text message to a channel
                     AddMessage addMessage = packet.getAs(ServerPacketTypes.ADD_MESSAGE);
-                    Platform.runLater(() -> {
-                        TextMessage text = Message.text(addMessage.getTimestamp(), this.users.get(addMessage.getAuthorId()), addMessage.getContents(), addMessage.getSignature());
-                        addMessage(addMessage.getChannel(), text);
+                    this.withAuthor(addMessage.getChannel(), addMessage.getAuthorId(), author -> {
+                        TextMessage text = Message.text(addMessage.getTimestamp(), author, addMessage.getContents(), addMessage.getSignature());
+                        addMessage(addMessage.getChannel(), addMessage.getSequence(), text);
                     });
-                } else if (packet.type() == ServerPacketTypes.USER_CONNECT) {
-                    // add a user to the online user list
-                    User user = packet.getAs(ServerPacketTypes.USER_CONNECT).getUser();
-                    Platform.runLater(() -> this.users.put(user.sessionId(), user));
-                } else if (packet.type() == ServerPacketTypes.USER_DISCONNECT) {
-                    // remove a user from the online user list
-                    int id = packet.getAs(ServerPacketTypes.USER_DISCONNECT).getId();
-                    Platform.runLater(() -> this.users.remove(id));
+                } else if (packet.type() == ServerPacketTypes.PRESENCE_UPDATE) {
+                    // users joined or left
+                    this.applyPresence(packet.getAs(ServerPacketTypes.PRESENCE_UPDATE));
+                } else if (packet.type() == ServerPacketTypes.USER_KEYS) {
+                    // keys that were requested (checked against their fingerprints)
+                    UserKeys userKeys = packet.getAs(ServerPacketTypes.USER_KEYS);
+                    this.keys.receive(userKeys.getFingerprints(), userKeys.getKeys());
                 } else if (packet.type() == ServerPacketTypes.SYSTEM_MESSAGE) {
                     // add a message from the SYSTEM user to the channel
                     SystemMessage systemMessage = packet.getAs(ServerPacketTypes.SYSTEM_MESSAGE);
-                    Platform.runLater(() -> {
-                        TextMessage text = Message.text(systemMessage.getTimestamp(), MessageAuthor.system(this.serverPubKey), systemMessage.getContents(), systemMessage.getSignature());
-                        addMessage(systemMessage.getChannel(), text);
+                    this.inOrder(() -> {
+                        TextMessage text = Message.text(systemMessage.getTimestamp(), this.systemAuthor, systemMessage.getContents(), systemMessage.getSignature());
+                        addMessage(systemMessage.getChannel(), systemMessage.getSequence(), text);
                     });
                 } else if (packet.type() == ServerPacketTypes.ADD_CHANNELS) {
                     // add a channel to the list of connected channels
                     ChannelList list = packet.getAs(ServerPacketTypes.ADD_CHANNELS);
-                    Platform.runLater(() -> {
+                    this.updates.execute(() -> {
                         for (Identifier listChannel : list.getChannels()) {
                             if (!this.channels.contains(listChannel)) {
                                 this.channels.add(listChannel); // add the channel
                                 this.accountData.channels().add(listChannel.getValue()); // save that the user has joined this channel
-                                this.messages.put(listChannel, FXCollections.observableArrayList()); // create a message list for the channel
+                                // create a message list for the channel (unless cached messages were loaded into one)
+                                this.messages.putIfAbsent(listChannel, new ChannelMessages(this.config.getMessageWindow(), this.verifier));
                             }
                         }
                         this.saveAccountData(); // save new channel data
@@ -387,10 +603,11 @@ public void run() {
                 } else if (packet.type() == ServerPacketTypes.REMOVE_CHANNELS) {
                     // remove channels from the list of connected channels
                     ChannelList list = packet.getAs(ServerPacketTypes.REMOVE_CHANNELS);
-                    Platform.runLater(() -> {
+                    this.updates.execute(() -> {
                         for (Identifier listChannel : list.getChannels()) {
                             if (this.channels.remove(listChannel)) { // remove the channel if it exists
                                 this.messages.remove(listChannel); // remove the channel's messages
+                                if (this.messageCache != null) this.messageCache.remove(listChannel);
                                 this.accountData.channels().remove(listChannel.getValue()); // remove the channel from the restore channel list
                             }
                         }
@@ -399,9 +616,40 @@ public void run() {
                 } else if (packet.type() == ServerPacketTypes.ADD_IMAGE_MESSAGE) {
                     // add an IMAGE message to a channel
                     AddImageMessage msg = packet.getAs(ServerPacketTypes.ADD_IMAGE_MESSAGE);
-                    Platform.runLater(() -> {
-                        ImageMessage img = new ImageMessage(msg.getTimestamp(), this.users.get(msg.getAuthorId()), msg.getWidth(), msg.getHeight(), msg.getContents(), msg.getSignature());
-                        addMessage(msg.getChannel(), img);
+                    this.withAuthor(msg.getChannel(), msg.getAuthorId(), author -> {
+                        ImageMessage img = new ImageMessage(msg.getTimestamp(), author, msg.getWidth(), msg.getHeight(), msg.getContents(), msg.getSignature());
+                        addMessage(msg.getChannel(), msg.getSequence(), img);
+                    });
+                } else if (packet.type() == ServerPacketTypes.ADD_ENCODED_IMAGE_MESSAGE) {
+                    // add an encoded image message to a channel (downloaded and decoded later, when it is displayed)
+                    AddEncodedImageMessage msg = packet.getAs(ServerPacketTypes.ADD_ENCODED_IMAGE_MESSAGE);
+                    this.withAuthor(msg.getChannel(), msg.getAuthorId(), author -> {
+                        EncodedImageMessage img = new EncodedImageMessage(msg.getTimestamp(), author, msg.getWidth(), msg.getHeight(), msg.getHash(), msg.getPreviewHash(), msg.getSignature());
+                        addMessage(msg.getChannel(), msg.getSequence(), img);
+                    });
+                } else if (packet.type() == ServerPacketTypes.IMAGE_DATA) {
+                    // an image that was requested
+                    ImageData image = packet.getAs(ServerPacketTypes.IMAGE_DATA);
+                    // check the contents against the hash here, rather than on the application thread
+                    byte[] data = image.getData().length > 0 && Arrays.equals(EncodedImageMessage.hash(image.getData()), image.getHash()) ? image.getData() : null;
+                    if (data == null) LOGGER.warn("Failed to download image");
+                    this.updates.execute(() -> this.imageStore.receive(image.getHash(), data));
+                } else if (packet.type() == ServerPacketTypes.SESSION_TICKET) {
+                    // keep the ticket for reconnecting (replacing the used one)
+                    SessionTicket ticket = packet.getAs(ServerPacketTypes.SESSION_TICKET);
+                    this.ticketExpiry = System.nanoTime() + ticket.getLifetime() * 1_000_000_000L;
+                    this.sessionTicket = ticket;
+                } else if (packet.type() == ServerPacketTypes.MESSAGE_HISTORY) {
+                    // merge a page of a channel's history into the loaded messages
+                    MessageHistory history = packet.getAs(ServerPacketTypes.MESSAGE_HISTORY);
+                    this.inOrder(() -> {
+                        ChannelMessages messages = this.messages.get(history.getChannel());
+                        if (messages != null) {
+                            messages.addHistory(history.getHistoryId(), history.getFirstSequence(), history.getOldestSequence(), history.getLatestSequence(), history.getMessages());
+                            if (this.messageCache != null) {
+                                this.messageCache.add(history.getChannel(), history.getHistoryId(), history.getFirstSequence(), history.getLatestSequence(), history.getMessages());
+                            }
+                        }
                     });
                 }
             }
@@ -415,7 +663,7 @@ public void run() {
         }
         // if the error is unexpected, try to reconnect
         if (!this.closeConnection) {
-            this.users.clear(); // remove all users - we don't know the state anymore
+            // keep the user list - once reconnected, the server only sends what changed
             if (this.screen != null) { // if we have an active window, mark it as OFFLINE - we can't do much right now
                 Platform.runLater(this.screen::markOffline);
             }
@@ -429,6 +677,126 @@ public void run() {
         }
     }
 
+    /**
+     * Asks the server for the changes to the online user list since the version we have
+     */
+    private void syncPresence() {
+        this.presenceSyncPending = true;
+        try {
+            this.connection.send(ClientPacketTypes.SYNC_PRESENCE, new SyncPresence(this.presenceEpoch, this.presenceVersion));
+        } catch (IOException e) {
+            LOGGER.error("Failed to request the user list", e);
+        }
+    }
+
+    /**
+     * Applies a change to the online user list
+     *
+     * @param update the changes sent by the server
+     */
+    private void applyPresence(PresenceUpdate update) {
+        if (!update.isFull()) {
+            if (update.getEpoch() == this.presenceEpoch && update.getVersion() <= this.presenceVersion) {
+                return; // already included in a previous update
+            }
+            if (update.getEpoch() != this.presenceEpoch || update.getFromVersion() != this.presenceVersion) {
+                // we missed some changes (or are waiting for them), so ask for everything since our version
+                if (!this.presenceSyncPending) this.syncPresence();
+                return;
+            }
+        }
+        this.presenceSyncPending = false;
+        this.presenceEpoch = update.getEpoch();
+        this.presenceVersion = update.getVersion();
+
+        if (update.isFull()) this.sessions.clear();
+        for (int id : update.getLeft()) {
+            this.sessions.remove(id);
+        }
+        List<User> joined = new ArrayList<>(update.getJoined().size());
+        for (User user : update.getJoined()) {
+            PublicKey key = this.keys.getIfPresent(user.fingerprint());
+            User user1 = key == null ? user : user.withKey(key); // otherwise, the key is fetched when it is needed
+            this.sessions.put(user1.sessionId(), user1);
+            joined.add(user1);
+        }
+
+        this.updates.execute(() -> {
+            if (update.isFull()) this.users.clear();
+            for (int id : update.getLeft()) {
+                this.users.remove(id);
+            }
+            for (User user : joined) {
+                this.users.put(user.sessionId(), user);
+            }
+        });
+    }
+
+    /**
+     * Runs an action on the application thread with the author of a received message, once the author's key is known
+     * Actions run in the order they were received, so a message whose author's key is being fetched holds back the ones after it
+     * If the author (or their key) can't be found, the message is dropped and fetched again with the channel's history (which includes keys)
+     *
+     * @param channel  the channel the message was sent to
+     * @param authorId the session id of the author
+     * @param action   the action to run
+     * @see #inOrder(Runnable)
+     */
+    private void withAuthor(Identifier channel, int authorId, Consumer<User> action) {
+        User author = this.sessions.get(authorId);
+        if (author == null) {
+            LOGGER.warn("Received a message from an unknown user: {}", authorId);
+            this.inOrder(() -> this.requestMissedMessages(channel));
+            return;
+        }
+        if (author.key() != null) {
+            this.inOrder(() -> action.accept(author));
+            return;
+        }
+
+        CompletableFuture<User> resolved = this.keys.get(author.fingerprint()).thenApply(key -> {
+            User user = author.withKey(key);
+            this.sessions.replace(authorId, author, user); // the next messages from the author won't have to wait
+            return user;
+        });
+        this.authorQueue = this.authorQueue.thenCombine(resolved.exceptionally(e -> null), (v, user) -> user).thenAccept(user -> {
+            if (user != null) {
+                this.updates.execute(() -> action.accept(user));
+            } else {
+                LOGGER.warn("Failed to get the key of {}", author.getLongIdName());
+                this.updates.execute(() -> this.requestMissedMessages(channel));
+            }
+        });
+    }
+
+    /**
+     * Runs an action on the application thread once every message received before it has been added
+     * All channel messages (and history) go through here, so that they are never added out of order
+     *
+     * @param action the action to run
+     */
+    private void inOrder(Runnable action) {
+        if (this.authorQueue.isDone()) {
+            this.updates.execute(action); // nothing to wait for
+        } else {
+            this.authorQueue = this.authorQueue.thenRun(() -> this.updates.execute(action));
+        }
+    }
+
+    /**
+     * Sends a request for users' public keys to the server
+     *
+     * @param fingerprints the fingerprints of the keys
+     */
+    private void requestKeys(String[] fingerprints) {
+        try {
+            if (this.connection == null) throw new IOException("Not connected");
+            this.connection.send(ClientPacketTypes.REQUEST_KEYS, new RequestKeys(fingerprints));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to request keys (they are requested again after reconnecting)", e);
+        }
+    }
+
     /**
      * Attempts to reconnect to the server
      *
@@ -445,64 +813,62 @@ private boolean tryReconnect() {
                 socket.connect(this.address); // connect to the server
 
                 connect = PacketPipeline.createNetwork(Constants.PACKET_HEADER, socket);
-                // send client hello
-                connect.send(ClientPacketTypes.HELLO, new Hello(Constants.BRAND, Constants.VERSION, publicKey));
+
+                // try to resume the session first, which is much cheaper than logging in again
+                SessionTicket ticket = this.sessionTicket;
+                this.sessionTicket = null; // tickets can only be used once
+                if (ticket != null && System.nanoTime() - this.ticketExpiry < 0) {
+                    byte[] nonce = new byte[Handshake.CHALLENGE_LENGTH];
+                    CryptoHelper.secureRandom().nextBytes(nonce);
+                    connect.send(ClientPacketTypes.RESUME_SESSION, new ResumeSession(Constants.BRAND, Constants.VERSION, ticket.getTicket(), nonce, Handshake.resumeBinder(ticket.getSecret(), ticket.getTicket(), nonce)));
+                    Packet<?> response = connect.receivePacket();
+                    if (response.type() == ServerPacketTypes.SESSION_RESUMED) {
+                        LOGGER.info("Resumed session");
+                        SecretKey key = Handshake.deriveResumedSessionKey(ticket.getSecret(), nonce, response.getAs(ServerPacketTypes.SESSION_RESUMED).getNonce());
+                        return this.completeReconnect(connect, connect.receivePacket(), key, this.serverPubKey);
+                    } else if (response.type() != ServerPacketTypes.RESUME_REJECTED) {
+                        return this.completeReconnect(connect, response, null, this.serverPubKey);
+                    }
+                    // the ticket was not accepted (e.g. it expired), so log in normally on the same connection
+                    LOGGER.info("Session ticket rejected: {}", response.getAs(ServerPacketTypes.RESUME_REJECTED).getReason());
+                }
+
+                // send client hello, with a new ephemeral key for deriving the session key
+                KeyPair exchange = CryptoHelper.generateX25519KeyPair();
+                connect.send(ClientPacketTypes.HELLO, new Hello(Constants.BRAND, Constants.VERSION, publicKey, exchange.getPublic()));
 
                 // get the server response
                 Packet<AuthenticationRequest> packet = connect.receivePacket();
-                RSAPublicKey serverKey = packet.data().getServerKey(); // get the server public key
+                PublicKey serverKey = packet.data().getServerKey(); // get the server public key
                 String keyHash = CryptoHelper.sha256Hash(serverKey.getEncoded()); // calculate the hash of the id
                 LOGGER.info("Server key id: {}", keyHash);
                 String host = address.getHostString() + ":" + address.getPort();
-                RSAPublicKey expectedKey = accountData.knownServers().get(host);
+                PublicKey expectedKey = accountData.knownServers().get(host);
                 if (!serverKey.equals(expectedKey)) { // verify that the key is the same as before
                     return false; // if not, immediately FAIL
                 }
 
-                // server key is correct, so let's respond
-                LOGGER.info("Initializing ciphers");
-                Cipher cipher = CryptoHelper.createRsaCipher();
-                cipher.init(Cipher.DECRYPT_MODE, accountData.privateKey()); // setup decryption with our key
-                byte[] encodedKey = cipher.doFinal(packet.data().getAuthData());
-                cipher.init(Cipher.ENCRYPT_MODE, serverKey); // setup encryption with the server's key
-                byte[] output = cipher.doFinal(encodedKey);
-
-                // get the symmetric AES key used for communications
-                LOGGER.info("Decoding symmetric (AES) key");
-                SecretKey key;
-                try {
-                    key = CryptoHelper.decodeAesKey(encodedKey);
-                } catch (InvalidKeySpecException e) {
+                if (!Handshake.verifyExchangeKey(serverKey, packet.data().getExchangeKey(), packet.data().getExchangeSignature())) {
+                    LOGGER.error("Server exchange key is not signed by the server");
                     return false;
                 }
 
+                // server key is correct, so derive the symmetric AES key used for communications
+                LOGGER.info("Initializing ciphers");
+                byte[] transcript = Handshake.transcript(packet.data().getAuthData(), exchange.getPublic(), packet.data().getExchangeKey());
+                SecretKey key = Handshake.deriveSessionKey(exchange.getPrivate(), packet.data().getExchangeKey(), transcript);
+                byte[] signature = CryptoHelper.sign(accountData.privateKey(), transcript); // prove our identity
+
                 // attempt to verify identity with the server
                 LOGGER.info("Authenticating...");
-                connect.send(ClientPacketTypes.AUTHENTICATE, new Authenticate(this.username, output));
-
-                Packet<?> response = connect.receivePacket(); // get the server's response
-                if (response.type() == ServerPacketTypes.AUTHENTICATION_SUCCESS) {
-                    // we successfully connected, so re-initialize and go!
-                    LOGGER.info("Successfully authenticated to the server");
-                    AuthenticationSuccess success = response.getAs(ServerPacketTypes.AUTHENTICATION_SUCCESS);
-                    this.initialize(connect.encryptWith(key), this.passKey, serverKey, publicKey, accountData, success.getUsers(), this.username, this.address);
-                    Platform.runLater(this.screen::markOnline);
-                    return true;
-                } else if (response.type() == ServerPacketTypes.AUTHENTICATION_FAILURE) {
-                    // the server explicitly rejected us, so stop trying to reconnect
-                    String failure = response.getAs(ServerPacketTypes.AUTHENTICATION_FAILURE).getReason();
-                    LOGGER.error("Server denied connection: {}", failure);
-                    return false;
-                } else {
-                    // the server rejected us, so stop trying to reconnect
-                    LOGGER.error("Server sent invalid id: " + response.type());
-                    return false;
-                }
+                connect.send(ClientPacketTypes.AUTHENTICATE, new Authenticate(this.username, signature));
+
+                return this.completeReconnect(connect, connect.receivePacket(), key, serverKey); // get the server's response
             } catch (ConnectException ignored) {
             } catch (IOException e) {
                 // I/O error is not fatal, so we can try again
                 LOGGER.error("Communication I/O error", e);
-            } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException e) {
+            } catch (InvalidKeyException | SignatureException e) {
                 // encryption failure so there's some deeper issue - fail reconnection
                 LOGGER.error("Generic connection crypto failure", e);
                 return false;
@@ -515,16 +881,57 @@ private boolean tryReconnect() {
         }
     }
 
+    /**
+     * Handles the server's response to a reconnection attempt
+     *
+     * @param connect   the new connection
+     * @param response  the server's response
+     * @param key       the new session key
+     * @param serverKey the server's public key
+     * @return whether reconnection was successful
+     */
+    private boolean completeReconnect(PacketPipeline connect, Packet<?> response, @Nullable SecretKey key, PublicKey serverKey) throws IOException {
+        if (key != null && response.type() == ServerPacketTypes.AUTHENTICATION_SUCCESS) {
+            // we successfully connected, so re-initialize and go!
+            LOGGER.info("Successfully authenticated to the server");
+            this.initialize(connect.encryptWith(key), this.passKey, serverKey, publicKey, accountData, this.username, this.address);
+            Platform.runLater(this.screen::markOnline);
+            return true;
+        } else if (response.type() == ServerPacketTypes.AUTHENTICATION_FAILURE) {
+            // the server explicitly rejected us, so stop trying to reconnect
+            String failure = response.getAs(ServerPacketTypes.AUTHENTICATION_FAILURE).getReason();
+            LOGGER.error("Server denied connection: {}", failure);
+            return false;
+        } else {
+            // the server rejected us, so stop trying to reconnect
+            LOGGER.error("Server sent invalid id: " + response.type());
+            return false;
+        }
+    }
+
     /**
      * Adds a message to the given channel
      *
-     * @param channel the channel the message was sent to
-     * @param message the message contents
+     * @param channel  the channel the message was sent to
+     * @param sequence the sequence number of the message in the channel
+     * @param message  the message contents
      */
-    private void addMessage(Identifier channel, Message message) {
+    private void addMessage(Identifier channel, int sequence, Message message) {
         if (!this.channels.contains(channel) || !this.messages.containsKey(channel))
             return; // if we aren't a part of the channel, ignore the message
-        this.messages.get(channel).add(message); // add the message to the channel list
+        ChannelMessages messages = this.messages.get(channel);
+        if (message.getAuthor().getFingerprint().equals(this.self.getFingerprint())) {
+            messages.confirmSending(message); // our own message made it back, so remove its placeholder
+        }
+        if (!messages.append(sequence, message)) { // add the message to the channel list (unless we already have it)
+            if (messages.isMissingMessages(sequence)) {
+                this.requestMissedMessages(channel); // some messages never arrived, so fetch them (including this one)
+            }
+            return;
+        }
+        if (this.messageCache != null && messages.getHistoryId() != 0) { // otherwise, it is cached with the next page of history
+            this.messageCache.add(channel, messages.getHistoryId(), sequence, message);
+        }
         if (this.trayIcon != null && !this.primaryStage.isFocused()) { // if we are not in focus, send a notification
             if (message.getType() == MessageType.TEXT) { // only text message notifications for now
                 String message1 = ((TextMessage) message).getMessage();
@@ -537,6 +944,24 @@ private void addMessage(Identifier channel, Message message) {
         }
     }
 
+    /**
+     * Applies the changes batched up while running the latest updates
+     * Runs after every pulse with updates, on the application thread
+     */
+    private void flushUpdates() {
+        for (ChannelMessages messages : this.messages.values()) {
+            messages.flush(); // add new messages in bulk
+        }
+        if (!this.removedUsers.isEmpty()) {
+            this.userList.removeAll(this.removedUsers);
+            this.removedUsers.clear();
+        }
+        if (!this.addedUsers.isEmpty()) {
+            this.userList.addAll(this.addedUsers);
+            this.addedUsers.clear();
+        }
+    }
+
     /**
      * Saves the current account data to the configuration file (in encrypted form)
      */
@@ -568,6 +993,10 @@ public void setView(ChatView chatView) {
      */
     public void close() {
         this.closeConnection = true;
+        if (this.messageCache != null) {
+            this.messageCache.close();
+            this.messageCache = null;
+        }
         try {
             if (this.connection != null) {
                 this.connection.close();
@@ -591,6 +1020,9 @@ public void close() {
      */
     public void shutdown() {
         this.close();
+        this.updates.stop();
+        this.verifier.shutdown();
+        this.sender.shutdown();
         Platform.exit();
     }
 
@@ -613,8 +1045,14 @@ public void openTrustScreen(@Nullable User item) {
      * @param nickname the user's nickname
      */
     public void trustUser(User item, String nickname) {
-        this.accountData.knownAccounts().put(item.key(), nickname);
-        this.saveAccountData(); // save and store the nickname
+        this.trustedNames.put(item.getFingerprint(), nickname);
+        // the account data stores the key itself, which may have to be fetched first
+        CompletableFuture<PublicKey> key = item.key() != null ? CompletableFuture.completedFuture(item.key()) : this.keys.get(item.getFingerprint());
+        key.thenAccept(publicKey -> Platform.runLater(() -> {
+            if (this.accountData == null) return; // logged out in the meantime
+            this.accountData.knownAccounts().put(publicKey, nickname);
+            this.saveAccountData(); // save and store the nickname
+        }));
         this.screen.refresh();
     }
 
@@ -625,7 +1063,7 @@ public void trustUser(User item, String nickname) {
      * @return the account's friendly name
      */
     public String getName(MessageAuthor account) {
-        return this.accountData.knownAccounts().getOrDefault(account.getPublicKey(), account.getLongIdName());
+        return this.trustedNames.getOrDefault(account.getFingerprint(), account.getLongIdName());
     }
 
     /**
@@ -635,7 +1073,7 @@ public String getName(MessageAuthor account) {
      * @return the account's short friendly name
      */
     public String getShortName(MessageAuthor account) {
-        return this.accountData.knownAccounts().getOrDefault(account.getPublicKey(), account.getShortIdName());
+        return this.trustedNames.getOrDefault(account.getFingerprint(), account.getShortIdName());
     }
 
     /**
@@ -644,7 +1082,8 @@ public String getShortName(MessageAuthor account) {
      * @param selected the account to remove the nickname of
      */
     public void revokeTrust(User selected) {
-        this.accountData.knownAccounts().remove(selected.key());
+        this.accountData.knownAccounts().keySet().removeIf(key -> CryptoHelper.sha256Hash(key.getEncoded()).equals(selected.getFingerprint()));
+        this.trustedNames.remove(selected.getFingerprint());
         this.saveAccountData(); // record the removal of the nickname
         this.screen.refresh();
     }
@@ -656,7 +1095,7 @@ public void revokeTrust(User selected) {
      * @return whether a nickname exists
      */
     public boolean isTrusted(MessageAuthor account) {
-        return this.accountData.knownAccounts().containsKey(account.getPublicKey());
+        return this.trustedNames.containsKey(account.getFingerprint());
     }
 
     /**
@@ -688,19 +1127,88 @@ public void joinChannel(Identifier channel) {
     }
 
     /**
-     * Signs the given integer array as a message
+     * Gets an encoded image, downloading it from the server if it has not been downloaded yet
+     *
+     * @param hash     the SHA-256 hash of the image
+     * @param callback called (on the application thread) with the encoded image
+     */
+    public void loadImage(byte[] hash, Consumer<byte[]> callback) {
+        this.imageStore.get(hash, callback);
+    }
+
+    /**
+     * @param hash the SHA-256 hash of the image
+     * @return the encoded image, or null if it has not been downloaded
+     */
+    public byte @Nullable [] getLoadedImage(byte[] hash) {
+        return this.imageStore.getIfPresent(hash);
+    }
+
+    /**
+     * @return the cache of decoded images
+     */
+    public ImageCache getImageCache() {
+        return this.imageCache;
+    }
+
+    /**
+     * Asks the server for the contents of an image
+     *
+     * @param hash the SHA-256 hash of the image
+     */
+    private void requestImage(byte[] hash) {
+        try {
+            if (this.connection == null) throw new IOException("Not connected");
+            this.connection.send(ClientPacketTypes.REQUEST_IMAGE, new RequestImage(hash));
+        } catch (IOException e) {
+            LOGGER.error("Failed to request image", e);
+            this.imageStore.receive(hash, null); // forget the request, so that it can be retried
+        }
+    }
+
+    /**
+     * Requests the page of messages before the oldest loaded message of a channel
+     * If no messages have been loaded, the newest messages are requested instead
      *
-     * @param pixels the raw data
-     * @return the data's signature
+     * @param channel the channel to load messages for
      */
-    public byte[] signMessage(int[] pixels) {
-        byte[] arr = new byte[pixels.length * 4];
-        ByteBuffer.wrap(arr).asIntBuffer().put(pixels); // too lazy to bother with bits...
+    public void requestOlderMessages(Identifier channel) {
+        ChannelMessages messages = this.messages.get(channel);
+        // don't request anything if there is nothing left, or we are already waiting on the server
+        if (messages == null || messages.isComplete() || messages.isRequestPending()) return;
+        int before = messages.getFirstSequence() == -1 ? RequestHistory.LATEST : messages.getFirstSequence();
         try {
-            this.rsaSignature.update(arr);
-            return this.rsaSignature.sign();
-        } catch (SignatureException e) {
-            throw new IllegalStateException(e);
+            this.connection.send(ClientPacketTypes.REQUEST_HISTORY_BEFORE, new RequestHistory(channel, before, HISTORY_PAGE_SIZE));
+            messages.setRequestPending(true);
+        } catch (IOException e) {
+            LOGGER.error("Failed to request message history", e);
+        }
+    }
+
+    /**
+     * Requests the page of messages after the newest loaded message of a channel, if newer messages were evicted
+     *
+     * @param channel the channel to load messages for
+     */
+    public void requestNewerMessages(Identifier channel) {
+        ChannelMessages messages = this.messages.get(channel);
+        if (messages == null || messages.isLatest()) return; // live messages are already being added
+        this.requestMissedMessages(channel);
+    }
+
+    /**
+     * Requests the messages sent after the newest loaded message of a channel
+     *
+     * @param channel the channel to load messages for
+     */
+    private void requestMissedMessages(Identifier channel) {
+        ChannelMessages messages = this.messages.get(channel);
+        if (messages == null || messages.isRequestPending()) return; // not joined, or the messages are probably already on their way
+        try {
+            this.connection.send(ClientPacketTypes.REQUEST_HISTORY_SINCE, new RequestHistory(channel, messages.getLastSequence(), RequestHistory.MAX_LIMIT));
+            messages.setRequestPending(true);
+        } catch (IOException e) {
+            LOGGER.error("Failed to request missed messages", e);
         }
     }
 }
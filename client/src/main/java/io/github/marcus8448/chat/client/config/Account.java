@@ -21,7 +21,7 @@
 import io.github.marcus8448.chat.core.api.misc.Identifier;
 
 import java.lang.reflect.Type;
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 import java.util.Base64;
 
 /**
@@ -29,18 +29,18 @@
  * Most data is encrypted, so it's not very useful outside of serialization
  *
  * @param username  the username of this account
- * @param publicKey the (RSA) public key of this account
+ * @param publicKey the public key (RSA or Ed25519) of this account
  * @param data      the encrypted data associated with this account
  * @see AccountData
  */
-public record Account(Identifier username, RSAPublicKey publicKey, AccountData.EncryptedAccountData data) {
+public record Account(Identifier username, PublicKey publicKey, AccountData.EncryptedAccountData data) {
     public static class Serializer implements JsonSerializer<Account>, JsonDeserializer<Account> {
         @Override
         public Account deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
             try {
                 JsonObject obj = json.getAsJsonObject();
                 Identifier username = Identifier.parse(obj.get("username").getAsString()).unwrap();
-                RSAPublicKey publicKey = CryptoHelper.decodeRsaPublicKey(Base64.getDecoder().decode(obj.get("public_key").getAsString()));
+                PublicKey publicKey = CryptoHelper.decodePublicKey(Base64.getDecoder().decode(obj.get("public_key").getAsString()));
                 AccountData.EncryptedAccountData data = context.deserialize(obj.get("data"), AccountData.EncryptedAccountData.class);
                 return new Account(username, publicKey, data);
             } catch (Exception e) {
@@ -28,30 +28,30 @@
 import javax.crypto.IllegalBlockSizeException;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.*;
 
 /**
  * Private data associated with an account
  *
- * @param privateKey    the full RSA private key of the account
+ * @param privateKey    the full private key (RSA or Ed25519) of the account
  * @param knownAccounts map of user public key -> name, for accounts that have been manually trusted
  * @param knownServers  map of "hostname:port" -> public key, to identify trusted servers and avoid MitM attacks
  * @param channels      list of channels to join automatically
  */
-public record AccountData(RSAPrivateKey privateKey, Map<RSAPublicKey, String> knownAccounts,
-                          Map<String, RSAPublicKey> knownServers,
+public record AccountData(PrivateKey privateKey, Map<PublicKey, String> knownAccounts,
+                          Map<String, PublicKey> knownServers,
                           List<String> channels) implements PrivateData<AccountData.EncryptedAccountData> {
     @Override
     public EncryptedAccountData encrypt(Cipher cipher) throws IllegalBlockSizeException, BadPaddingException {
         Map<byte[], byte[]> encodedAccounts = new HashMap<>(knownAccounts.size());
-        for (Map.Entry<RSAPublicKey, String> entry : this.knownAccounts.entrySet()) {
+        for (Map.Entry<PublicKey, String> entry : this.knownAccounts.entrySet()) {
             encodedAccounts.put(cipher.doFinal(entry.getKey().getEncoded()), cipher.doFinal(entry.getValue().getBytes(StandardCharsets.UTF_8)));
         }
         Map<byte[], byte[]> encodedServers = new HashMap<>(this.knownServers.size());
-        for (Map.Entry<String, RSAPublicKey> entry : this.knownServers.entrySet()) {
+        for (Map.Entry<String, PublicKey> entry : this.knownServers.entrySet()) {
             encodedServers.put(
                     cipher.doFinal(entry.getKey().getBytes(StandardCharsets.UTF_8)),
                     cipher.doFinal(entry.getValue().getEncoded())
@@ -75,20 +75,20 @@ public record EncryptedAccountData(byte[] privateKey, Map<byte[], byte[]> knownA
         @Contract("_ -> new")
         @Override
         public @NotNull AccountData decrypt(@NotNull Cipher cipher) throws IllegalBlockSizeException, BadPaddingException, InvalidKeySpecException {
-            RSAPrivateKey rsaPrivateKey = CryptoHelper.decodeRsaPrivateKey(cipher.doFinal(privateKey));
-            Map<RSAPublicKey, String> decodedAccounts = new HashMap<>();
+            PrivateKey decodedPrivateKey = CryptoHelper.decodePrivateKey(cipher.doFinal(privateKey));
+            Map<PublicKey, String> decodedAccounts = new HashMap<>();
             for (Map.Entry<byte[], byte[]> entry : this.knownAccounts.entrySet()) {
-                decodedAccounts.put(CryptoHelper.decodeRsaPublicKey(cipher.doFinal(entry.getKey())), new String(cipher.doFinal(entry.getValue()), StandardCharsets.UTF_8));
+                decodedAccounts.put(CryptoHelper.decodePublicKey(cipher.doFinal(entry.getKey())), new String(cipher.doFinal(entry.getValue()), StandardCharsets.UTF_8));
             }
-            Map<String, RSAPublicKey> decodedServers = new HashMap<>();
+            Map<String, PublicKey> decodedServers = new HashMap<>();
             for (Map.Entry<byte[], byte[]> entry : this.knownServers.entrySet()) {
-                decodedServers.put(new String(cipher.doFinal(entry.getKey()), StandardCharsets.UTF_8), CryptoHelper.decodeRsaPublicKey(cipher.doFinal(entry.getValue())));
+                decodedServers.put(new String(cipher.doFinal(entry.getKey()), StandardCharsets.UTF_8), CryptoHelper.decodePublicKey(cipher.doFinal(entry.getValue())));
             }
             List<String> decodedChannels = new ArrayList<>();
             for (byte[] channel : this.knownChannels) {
                 decodedChannels.add(new String(cipher.doFinal(channel), StandardCharsets.UTF_8));
             }
-            return new AccountData(rsaPrivateKey, decodedAccounts, decodedServers, decodedChannels);
+            return new AccountData(decodedPrivateKey, decodedAccounts, decodedServers, decodedChannels);
         }
 
         /**
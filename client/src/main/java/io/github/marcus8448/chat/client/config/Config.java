@@ -29,7 +29,7 @@
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -59,6 +59,26 @@ public class Config {
      */
     @Expose
     public int lastAccount = 0;
+    /**
+     * The maximum number of messages to keep loaded per channel
+     */
+    @Expose
+    public int messageWindow = 500;
+    /**
+     * The maximum size of the local message cache of each channel, in MiB (0 disables the cache)
+     */
+    @Expose
+    public int messageCacheSize = 16;
+    /**
+     * The maximum width and height of sent images - larger images are scaled down (0 for no limit)
+     */
+    @Expose
+    public int maxImageSize = 2048;
+    /**
+     * The maximum memory used by decoded images that are kept for redisplay, in MiB
+     */
+    @Expose
+    public int imageCacheSize = 128;
     /**
      * Whether the config file is in the process of loading (disables saving on changes)
      */
@@ -88,7 +108,7 @@ public static Config load(File configFile) {
                 Config config = GSON.fromJson(reader, Config.class); // parse the file
                 config.isLoading = false; // mark config as loaded
                 config.configFile = configFile; // set the associated config file
-                List<RSAPublicKey> visited = new ArrayList<>(config.accounts.size()); // list of keys already seen
+                List<PublicKey> visited = new ArrayList<>(config.accounts.size()); // list of keys already seen
                 for (Iterator<Account> iterator = config.accounts.iterator(); iterator.hasNext(); ) {//iterate over keys
                     Account account = iterator.next(); // get the next account
                     if (visited.contains(account.publicKey())) { // check if we have already seen this key
@@ -166,7 +186,7 @@ public void removeAccount(Account account) {
         this.save();
     }
 
-    public void updateAccountData(RSAPublicKey key, AccountData.EncryptedAccountData encrypted) {
+    public void updateAccountData(PublicKey key, AccountData.EncryptedAccountData encrypted) {
         int idx = -1;
         for (int i = 0; i < this.accounts.size(); i++) {
             Account next = this.accounts.get(i);
@@ -182,6 +202,22 @@ public void updateAccountData(RSAPublicKey key, AccountData.EncryptedAccountData
         }
     }
 
+    public int getMessageWindow() {
+        return messageWindow;
+    }
+
+    public int getMessageCacheSize() {
+        return messageCacheSize;
+    }
+
+    public int getMaxImageSize() {
+        return maxImageSize;
+    }
+
+    public int getImageCacheSize() {
+        return imageCacheSize;
+    }
+
     public int getLastAccount() {
         return lastAccount;
     }
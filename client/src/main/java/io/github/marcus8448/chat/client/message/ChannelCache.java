@@ -0,0 +1,295 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The on-disk cache of a single channel
+ * Chunks of (already encrypted) messages are appended to a log file, and the location of each chunk is stored in an index file
+ * The index is rebuilt from the log if the two do not match (e.g. if the client crashed while writing)
+ * Evicting old chunks replaces the whole log at once, so a crash leaves either the old or the new log (never a mix)
+ * Not thread safe - should only be accessed from the message cache thread
+ *
+ * @see MessageCache
+ */
+class ChannelCache implements Closeable {
+    /**
+     * The size of a chunk header: data length (int), first sequence number (int), message count (int)
+     */
+    private static final int HEADER_BYTES = 12;
+    /**
+     * The size of an index entry: first sequence number (int), message count (int), log offset (long)
+     */
+    private static final int INDEX_ENTRY_BYTES = 16;
+
+    /**
+     * The path of the log file
+     */
+    private final Path logPath;
+    /**
+     * The chunks, one after another
+     */
+    private FileChannel log;
+    /**
+     * The index entries of the chunks, in the same order as the log
+     */
+    private final FileChannel index;
+    /**
+     * The sequence number of the first message of each chunk
+     */
+    private int[] firstSequences = new int[64];
+    /**
+     * The number of messages in each chunk
+     */
+    private int[] counts = new int[64];
+    /**
+     * The offset of each chunk in the log
+     */
+    private long[] offsets = new long[64];
+    /**
+     * The number of chunks
+     */
+    private int size = 0;
+
+    ChannelCache(Path log, Path index) throws IOException {
+        this.logPath = log;
+        this.log = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        this.index = FileChannel.open(index, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        if (!this.readIndex()) {
+            this.rebuildIndex();
+        }
+    }
+
+    /**
+     * @return the sequence number of the newest cached message, or -1 if there are no messages
+     */
+    int getLastSequence() {
+        return this.size == 0 ? -1 : this.firstSequences[this.size - 1] + this.counts[this.size - 1] - 1;
+    }
+
+    /**
+     * @return the size of the log, in bytes
+     */
+    long getSize() throws IOException {
+        return this.log.size();
+    }
+
+    /**
+     * Appends a chunk of messages to the end of the log
+     *
+     * @param firstSequence the sequence number of the first message in the chunk
+     * @param count         the number of messages in the chunk
+     * @param data          the encoded messages
+     */
+    void append(int firstSequence, int count, byte[] data) throws IOException {
+        long offset = this.log.size();
+        // write the chunk before its index entry, so that an interrupted write is always detected
+        write(this.log, ByteBuffer.allocate(HEADER_BYTES + data.length).putInt(data.length).putInt(firstSequence).putInt(count).put(data).flip(), offset);
+        write(this.index, ByteBuffer.allocate(INDEX_ENTRY_BYTES).putInt(firstSequence).putInt(count).putLong(offset).flip(), (long) this.size * INDEX_ENTRY_BYTES);
+        this.add(firstSequence, count, offset);
+    }
+
+    /**
+     * Reads the newest chunks, stopping at the first gap in sequence numbers
+     *
+     * @param limit the minimum number of messages to read (if available)
+     * @return the chunks, oldest first
+     */
+    List<Chunk> readLatest(int limit) throws IOException {
+        if (this.size == 0) return List.of();
+        int start = this.size - 1;
+        int messages = this.counts[start];
+        while (start > 0 && messages < limit && this.firstSequences[start - 1] + this.counts[start - 1] == this.firstSequences[start]) {
+            messages += this.counts[--start];
+        }
+
+        // read all the chunks at once
+        ByteBuffer buffer = ByteBuffer.allocate((int) (this.log.size() - this.offsets[start]));
+        read(this.log, buffer, this.offsets[start]);
+        buffer.flip();
+        List<Chunk> chunks = new ArrayList<>(this.size - start);
+        for (int i = start; i < this.size; i++) {
+            byte[] data = new byte[buffer.getInt()];
+            buffer.position(buffer.position() + 8); // sequence and count are already known
+            buffer.get(data);
+            chunks.add(new Chunk(this.firstSequences[i], this.counts[i], data));
+        }
+        return chunks;
+    }
+
+    /**
+     * Drops the oldest chunks until the log is at most half of the given size
+     * The newest chunk is always kept
+     * The kept chunks are written to a new file that replaces the log, and the index is rewritten afterwards
+     * The index is emptied before the log is replaced, so if this is interrupted the index is rebuilt from whichever log
+     * is left when the cache is next opened
+     *
+     * @param maxBytes the maximum size of the log
+     */
+    void evict(long maxBytes) throws IOException {
+        long length = this.log.size();
+        if (length <= maxBytes || this.size == 0) return;
+        int start = 0;
+        while (start < this.size - 1 && length - this.offsets[start] > maxBytes / 2) start++;
+
+        // copy the kept chunks to a new log
+        long removed = this.offsets[start];
+        ByteBuffer buffer = ByteBuffer.allocate((int) (length - removed));
+        read(this.log, buffer, removed);
+        Path temp = this.logPath.resolveSibling(this.logPath.getFileName() + ".tmp");
+        try (FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(output, buffer.flip(), 0);
+            output.force(false); // the data must be on disk before the new log replaces the old one
+        }
+        this.index.truncate(0); // never leave an index that belongs to the other log
+        this.index.force(false);
+        this.log.close();
+        Files.move(temp, this.logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.log = FileChannel.open(this.logPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+        this.size -= start;
+        System.arraycopy(this.firstSequences, start, this.firstSequences, 0, this.size);
+        System.arraycopy(this.counts, start, this.counts, 0, this.size);
+        System.arraycopy(this.offsets, start, this.offsets, 0, this.size);
+        for (int i = 0; i < this.size; i++) {
+            this.offsets[i] -= removed;
+        }
+        this.writeIndex();
+    }
+
+    /**
+     * Removes every chunk
+     */
+    void clear() throws IOException {
+        this.log.truncate(0);
+        this.index.truncate(0);
+        this.size = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.log.close();
+        } finally {
+            this.index.close();
+        }
+    }
+
+    /**
+     * Reads the index file
+     *
+     * @return whether the index matches the log
+     */
+    private boolean readIndex() throws IOException {
+        long length = this.index.size();
+        if (length % INDEX_ENTRY_BYTES != 0) return false; // an entry was partially written
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        read(this.index, buffer, 0);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            this.add(buffer.getInt(), buffer.getInt(), buffer.getLong());
+        }
+        if (this.size == 0) return this.log.size() == 0;
+
+        // the log should end exactly where the last chunk does
+        long offset = this.offsets[this.size - 1];
+        if (offset + HEADER_BYTES > this.log.size()) return false;
+        ByteBuffer header = ByteBuffer.allocate(4);
+        read(this.log, header, offset);
+        return offset + HEADER_BYTES + header.flip().getInt() == this.log.size();
+    }
+
+    /**
+     * Recreates the index by walking through the chunk headers of the log
+     * A partially written chunk at the end of the log is removed
+     */
+    private void rebuildIndex() throws IOException {
+        this.size = 0;
+        long length = this.log.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (offset + HEADER_BYTES <= length) {
+            read(this.log, header.clear(), offset);
+            header.flip();
+            int dataLength = header.getInt();
+            if (dataLength < 0 || offset + HEADER_BYTES + dataLength > length) break;
+            this.add(header.getInt(), header.getInt(), offset);
+            offset += HEADER_BYTES + dataLength;
+        }
+        this.log.truncate(offset);
+        this.writeIndex();
+    }
+
+    /**
+     * Overwrites the index file with the current index
+     */
+    private void writeIndex() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(this.size * INDEX_ENTRY_BYTES);
+        for (int i = 0; i < this.size; i++) {
+            buffer.putInt(this.firstSequences[i]).putInt(this.counts[i]).putLong(this.offsets[i]);
+        }
+        this.index.truncate(0);
+        write(this.index, buffer.flip(), 0);
+    }
+
+    private void add(int firstSequence, int count, long offset) {
+        if (this.size == this.offsets.length) {
+            this.firstSequences = Arrays.copyOf(this.firstSequences, this.size * 2);
+            this.counts = Arrays.copyOf(this.counts, this.size * 2);
+            this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+        }
+        this.firstSequences[this.size] = firstSequence;
+        this.counts[this.size] = count;
+        this.offsets[this.size++] = offset;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read == -1) throw new EOFException();
+            position += read;
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * A chunk of encoded messages
+     *
+     * @param firstSequence the sequence number of the first message
+     * @param count         the number of messages
+     * @param data          the encoded messages
+     */
+    record Chunk(int firstSequence, int count, byte[] data) {
+    }
+}
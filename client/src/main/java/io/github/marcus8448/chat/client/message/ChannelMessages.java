@@ -0,0 +1,351 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import io.github.marcus8448.chat.core.api.message.ImageMessage;
+import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.message.TextMessage;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
+import io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The messages of a channel that have been loaded by the client
+ * Loaded messages are always a contiguous range of the channel's history (by sequence number)
+ * At most a fixed window of messages is kept loaded - messages outside the window are evicted and re-requested when needed
+ * Appended messages are only added to the (observable) list when {@link #flush()} is called, so that bursts become a single change
+ * Checked signatures are also only applied when {@link #flush()} is called, in a single pass over the list
+ * Messages that are being sent by this client are shown at the end of the list, until the server sends them back
+ * Should only be accessed on the JavaFX application thread
+ */
+public class ChannelMessages {
+    /**
+     * The smallest allowed window, so that a full page of history always fits
+     */
+    public static final int MIN_WINDOW = 2 * RequestHistory.MAX_LIMIT;
+    /**
+     * The loaded messages, oldest first, followed by the messages being sent
+     */
+    private final ObservableList<ReceivedMessage> messages = FXCollections.observableArrayList();
+    /**
+     * Messages that have been appended, but not yet added to the list
+     */
+    private final List<ReceivedMessage> appended = new ArrayList<>();
+    /**
+     * Placeholders of messages that are being sent, but have not been received back from the server
+     */
+    private final List<ReceivedMessage> sending = new ArrayList<>();
+    /**
+     * Messages whose signatures have been checked since the last flush
+     * Map of message (by identity) -> checked message
+     */
+    private final Map<Message, ReceivedMessage> verified = new IdentityHashMap<>();
+    /**
+     * The id of the history the loaded messages belong to (0 if no history has been received)
+     *
+     * @see MessageHistory#getHistoryId()
+     */
+    private long historyId = 0;
+    /**
+     * The sequence number of the oldest loaded message (-1 if there are no messages)
+     */
+    private int firstSequence = -1;
+    /**
+     * The sequence number of the newest loaded message (-1 if there are no messages)
+     */
+    private int lastSequence = -1;
+    /**
+     * The sequence number of the oldest message the server still has (older messages were dropped by the server)
+     */
+    private int oldestSequence = 0;
+    /**
+     * Whether a page of history has been requested, but not yet received
+     */
+    private boolean requestPending = false;
+    /**
+     * The maximum number of messages to keep loaded
+     */
+    private final int window;
+    /**
+     * Checks the signatures of added messages
+     */
+    private final SignatureVerifier verifier;
+    /**
+     * Whether newer messages were evicted (so the newest message in the channel is not loaded)
+     */
+    private boolean newerEvicted = false;
+
+    /**
+     * Creates a new (empty) channel
+     *
+     * @param window   the maximum number of messages to keep loaded
+     * @param verifier checks the signatures of added messages
+     */
+    public ChannelMessages(int window, SignatureVerifier verifier) {
+        this.window = Math.max(window, MIN_WINDOW);
+        this.verifier = verifier;
+    }
+
+    /**
+     * @return the loaded messages, oldest first, followed by the messages being sent
+     */
+    public ObservableList<ReceivedMessage> getMessages() {
+        return this.messages;
+    }
+
+    public long getHistoryId() {
+        return this.historyId;
+    }
+
+    public int getFirstSequence() {
+        return this.firstSequence;
+    }
+
+    public int getLastSequence() {
+        return this.lastSequence;
+    }
+
+    /**
+     * @return whether the oldest message in the channel (that the server still has) has been loaded
+     */
+    public boolean isComplete() {
+        return this.firstSequence != -1 && this.firstSequence <= this.oldestSequence;
+    }
+
+    /**
+     * @return whether the newest message in the channel is loaded (live messages are only added if it is)
+     */
+    public boolean isLatest() {
+        return !this.newerEvicted;
+    }
+
+    public boolean isRequestPending() {
+        return this.requestPending;
+    }
+
+    public void setRequestPending(boolean requestPending) {
+        this.requestPending = requestPending;
+    }
+
+    /**
+     * Adds a newly sent message to the end of the channel
+     *
+     * @param sequence the sequence number of the message
+     * @param message  the message
+     * @return whether the message was added (false if it was already loaded, messages before it are missing or newer messages were evicted)
+     * @see #isMissingMessages(int)
+     */
+    public boolean append(int sequence, Message message) {
+        if (this.newerEvicted) return false; // the user is looking at older messages - fetch it later
+        // already received in a history page, or there is a gap that must be filled first
+        if (this.lastSequence != -1 && sequence != this.lastSequence + 1) return false;
+        if (this.firstSequence == -1) this.firstSequence = sequence;
+        this.lastSequence = sequence;
+        this.appended.add(this.verifier.verify(message, this::setVerified));
+        return true;
+    }
+
+    /**
+     * Adds the appended messages to the list, in a single change, and replaces messages whose signatures were checked
+     */
+    public void flush() {
+        if (!this.verified.isEmpty()) {
+            this.appended.replaceAll(message -> this.verified.getOrDefault(message.message(), message));
+            for (int i = this.getLoadedCount() - 1; i >= 0 && !this.verified.isEmpty(); i--) { // most checks are of new messages, at the end
+                ReceivedMessage verified = this.verified.remove(this.messages.get(i).message());
+                if (verified != null) this.messages.set(i, verified);
+            }
+            this.verified.clear(); // the rest were evicted while they were being checked
+        }
+        if (this.appended.isEmpty()) return;
+        this.messages.addAll(this.getLoadedCount(), this.appended); // before the messages being sent
+        this.appended.clear();
+        this.evictOlder();
+    }
+
+    /**
+     * @param sequence the sequence number of a received message
+     * @return whether there are messages missing between the newest loaded message and the given message
+     */
+    public boolean isMissingMessages(int sequence) {
+        return !this.newerEvicted && this.lastSequence != -1 && sequence > this.lastSequence + 1;
+    }
+
+    /**
+     * Shows a message that is being sent by this client at the end of the list
+     *
+     * @param message the unsigned message
+     * @return the placeholder of the message
+     */
+    public ReceivedMessage addSending(Message message) {
+        ReceivedMessage placeholder = ReceivedMessage.sending(message);
+        this.sending.add(placeholder);
+        this.messages.add(placeholder);
+        return placeholder;
+    }
+
+    /**
+     * Removes the placeholder of a message that is no longer being sent
+     *
+     * @param placeholder the placeholder to remove
+     */
+    public void removeSending(ReceivedMessage placeholder) {
+        if (this.sending.remove(placeholder)) {
+            this.messages.remove(placeholder);
+        }
+    }
+
+    /**
+     * Removes the placeholder of a message that was sent by this client and has been received back from the server
+     *
+     * @param message the received message
+     */
+    public void confirmSending(Message message) {
+        for (ReceivedMessage placeholder : this.sending) {
+            if (isSameMessage(placeholder.message(), message)) {
+                this.removeSending(placeholder);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Merges a page of history into the loaded messages
+     * If the page is not connected to the loaded messages, the loaded messages are replaced by the page
+     *
+     * @param historyId      the id of the history the page belongs to
+     * @param firstSequence  the sequence number of the first message in the page
+     * @param oldestSequence the sequence number of the oldest message the server still has (0 if unknown)
+     * @param latestSequence the sequence number of the newest message in the channel
+     * @param page           the messages, oldest first
+     */
+    public void addHistory(long historyId, int firstSequence, int oldestSequence, int latestSequence, List<Message> page) {
+        this.flush();
+        this.requestPending = false;
+        if (this.historyId != 0 && historyId != this.historyId) {
+            // the server's history was reset (e.g. by a restart), so the loaded sequence numbers mean nothing anymore
+            this.messages.remove(0, this.getLoadedCount());
+            this.firstSequence = -1;
+            this.lastSequence = -1;
+            this.oldestSequence = 0;
+            this.newerEvicted = false;
+        }
+        this.historyId = historyId; // live messages received before the first page are always from the current history
+        this.oldestSequence = Math.max(this.oldestSequence, oldestSequence); // the server never gets older messages back
+        if (page.isEmpty()) return;
+        int lastSequence = firstSequence + page.size() - 1;
+        if (this.lastSequence == -1 || lastSequence < this.firstSequence - 1 || firstSequence > this.lastSequence + 1) {
+            // nothing is loaded yet, or too much was missed to connect the page to the loaded messages
+            List<ReceivedMessage> messages = this.verify(page);
+            messages.addAll(this.sending);
+            this.messages.setAll(messages);
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.newerEvicted = false;
+            return;
+        }
+
+        if (firstSequence < this.firstSequence) { // older messages
+            this.messages.addAll(0, this.verify(page.subList(0, Math.min(page.size(), this.firstSequence - firstSequence))));
+            this.firstSequence = firstSequence;
+            this.evictNewer();
+        }
+        if (lastSequence > this.lastSequence) { // newer messages
+            this.messages.addAll(this.getLoadedCount(), this.verify(page.subList(Math.max(0, this.lastSequence + 1 - firstSequence), page.size())));
+            this.lastSequence = lastSequence;
+            if (this.lastSequence >= latestSequence) this.newerEvicted = false; // caught up again
+            this.evictOlder();
+        }
+    }
+
+    /**
+     * Queues the signatures of messages that are about to be loaded to be checked
+     * Messages that are already loaded are never checked again
+     *
+     * @param messages the messages to check
+     * @return the messages, waiting to be checked
+     */
+    private List<ReceivedMessage> verify(List<Message> messages) {
+        List<ReceivedMessage> pending = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            pending.add(this.verifier.verify(message, this::setVerified));
+        }
+        return pending;
+    }
+
+    /**
+     * Queues a pending message to be replaced with its checked version on the next flush
+     *
+     * @param verified the checked message
+     * @see #flush()
+     */
+    private void setVerified(ReceivedMessage verified) {
+        this.verified.put(verified.message(), verified);
+    }
+
+    /**
+     * @return the number of loaded messages in the list (excluding messages being sent)
+     */
+    private int getLoadedCount() {
+        return this.messages.size() - this.sending.size();
+    }
+
+    /**
+     * @return whether the messages have the same contents
+     */
+    private static boolean isSameMessage(Message placeholder, Message received) {
+        if (placeholder.getType() != received.getType()) return false;
+        return switch (placeholder.getType()) {
+            case TEXT -> ((TextMessage) placeholder).getMessage().equals(((TextMessage) received).getMessage());
+            case IMAGE -> Arrays.equals(((ImageMessage) placeholder).image(), ((ImageMessage) received).image());
+            case ENCODED_IMAGE -> Arrays.equals(((EncodedImageMessage) placeholder).hash(), ((EncodedImageMessage) received).hash());
+        };
+    }
+
+    /**
+     * Removes the oldest messages that do not fit in the window
+     * They are requested again when the user scrolls up
+     */
+    private void evictOlder() {
+        int excess = this.getLoadedCount() - this.window;
+        if (excess > 0) {
+            this.messages.remove(0, excess); // a single change, rather than one per message
+            this.firstSequence += excess;
+        }
+    }
+
+    /**
+     * Removes the newest messages that do not fit in the window
+     * They are requested again when the user scrolls down
+     */
+    private void evictNewer() {
+        int excess = this.getLoadedCount() - this.window;
+        if (excess > 0) {
+            this.messages.remove(this.window, this.getLoadedCount());
+            this.lastSequence -= excess;
+            this.newerEvicted = true;
+        }
+    }
+}
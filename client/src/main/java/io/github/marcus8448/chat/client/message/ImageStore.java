@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Local store of encoded images, keyed by the SHA-256 hash of their contents
+ * Images are only requested from the server when they are first needed, so an image that is posted several times
+ * (or to several channels) is only downloaded once. Images are kept up to a byte budget, least recently used first
+ * Should only be accessed from the application thread
+ */
+public class ImageStore {
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+
+    /**
+     * The maximum number of bytes kept across all images
+     */
+    private final long maxBytes;
+    /**
+     * Sends a request for an image to the server
+     */
+    private final Consumer<byte[]> requester;
+    /**
+     * Map of image hash (hex) -> encoded image, ordered from least to most recently used
+     */
+    private final LinkedHashMap<String, byte[]> images = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Map of image hash (hex) -> callbacks waiting on the image (images that have been requested from the server)
+     */
+    private final Map<String, List<Consumer<byte[]>>> pending = new HashMap<>();
+    /**
+     * The number of bytes kept across all images
+     */
+    private long totalBytes = 0;
+
+    public ImageStore(long maxBytes, Consumer<byte[]> requester) {
+        this.maxBytes = maxBytes;
+        this.requester = requester;
+    }
+
+    /**
+     * @param hash the SHA-256 hash of the image
+     * @return the encoded image, or {@code null} if it has not been downloaded
+     */
+    public byte @Nullable [] getIfPresent(byte[] hash) {
+        return this.images.get(HEX_FORMAT.formatHex(hash));
+    }
+
+    /**
+     * Gets an image, requesting it from the server if it is not stored locally
+     * The callback is called immediately if the image is already stored, otherwise once it has been received
+     *
+     * @param hash     the SHA-256 hash of the image
+     * @param callback called with the encoded image
+     */
+    public void get(byte[] hash, Consumer<byte[]> callback) {
+        String key = HEX_FORMAT.formatHex(hash);
+        byte[] data = this.images.get(key);
+        if (data != null) {
+            callback.accept(data);
+            return;
+        }
+        List<Consumer<byte[]>> callbacks = this.pending.get(key);
+        if (callbacks == null) { // not requested yet
+            callbacks = new ArrayList<>(1);
+            this.pending.put(key, callbacks);
+            this.requester.accept(hash);
+        }
+        callbacks.add(callback);
+    }
+
+    /**
+     * Stores an image without requesting it (e.g. one that this client sent)
+     *
+     * @param hash the SHA-256 hash of the image
+     * @param data the encoded image
+     */
+    public void put(byte[] hash, byte[] data) {
+        String key = HEX_FORMAT.formatHex(hash);
+        byte[] previous = this.images.put(key, data);
+        if (previous != null) this.totalBytes -= previous.length;
+        this.totalBytes += data.length;
+        this.evict(key);
+    }
+
+    /**
+     * Handles an image sent by the server, passing it to anything that was waiting for it
+     *
+     * @param hash the SHA-256 hash of the image
+     * @param data the encoded image, or {@code null} if the server did not have it (or sent the wrong image)
+     */
+    public void receive(byte[] hash, byte @Nullable [] data) {
+        List<Consumer<byte[]>> callbacks = this.pending.remove(HEX_FORMAT.formatHex(hash));
+        if (data == null) return; // drop the waiting callbacks - the image can be requested again later
+        this.put(hash, data);
+        if (callbacks != null) {
+            for (Consumer<byte[]> callback : callbacks) {
+                callback.accept(data);
+            }
+        }
+    }
+
+    /**
+     * Removes all images and forgets any outstanding requests
+     */
+    public void clear() {
+        this.images.clear();
+        this.pending.clear();
+        this.totalBytes = 0;
+    }
+
+    /**
+     * Removes the least recently used images until the store fits its budget
+     *
+     * @param keep the image that was just added (never removed, even if it alone exceeds the budget)
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, byte[]>> iterator = this.images.entrySet().iterator();
+        while (this.totalBytes > this.maxBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> entry = iterator.next();
+            if (entry.getKey().equals(keep)) continue;
+            this.totalBytes -= entry.getValue().length;
+            iterator.remove();
+        }
+    }
+}
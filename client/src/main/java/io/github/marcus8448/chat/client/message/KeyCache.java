@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Local store of other users' public keys, keyed by fingerprint
+ * The server only sends fingerprints in the user list, so keys are requested (and decoded) when they are first needed -
+ * and then kept, including across reconnects
+ */
+public class KeyCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Sends a request for keys to the server
+     */
+    private final Consumer<String[]> requester;
+    /**
+     * Map of fingerprint -> decoded key
+     */
+    private final Map<String, PublicKey> keys = new HashMap<>();
+    /**
+     * Map of fingerprint -> keys that have been requested from the server
+     */
+    private final Map<String, CompletableFuture<PublicKey>> pending = new HashMap<>();
+
+    public KeyCache(Consumer<String[]> requester) {
+        this.requester = requester;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the key
+     * @return the key, or {@code null} if it has not been fetched
+     */
+    public synchronized @Nullable PublicKey getIfPresent(String fingerprint) {
+        return this.keys.get(fingerprint);
+    }
+
+    /**
+     * Gets a key, requesting it from the server if it is not stored locally
+     *
+     * @param fingerprint the fingerprint of the key
+     * @return a future completed with the key (exceptionally, if the server does not know it)
+     */
+    public CompletableFuture<PublicKey> get(String fingerprint) {
+        CompletableFuture<PublicKey> future;
+        synchronized (this) {
+            PublicKey key = this.keys.get(fingerprint);
+            if (key != null) return CompletableFuture.completedFuture(key);
+            future = this.pending.get(fingerprint);
+            if (future != null) return future; // already requested
+            future = new CompletableFuture<>();
+            this.pending.put(fingerprint, future);
+        }
+        this.requester.accept(new String[]{fingerprint});
+        return future;
+    }
+
+    /**
+     * Stores a key without requesting it (e.g. this account's key, or a trusted account's)
+     *
+     * @param fingerprint the fingerprint of the key
+     * @param key         the key
+     */
+    public synchronized void put(String fingerprint, PublicKey key) {
+        this.keys.put(fingerprint, key);
+    }
+
+    /**
+     * Handles keys sent by the server, passing them to anything that was waiting for them
+     * Keys that do not match their fingerprint are rejected
+     *
+     * @param fingerprints the fingerprints of the keys
+     * @param encodedKeys  the encoded keys (empty if the server did not know the key)
+     */
+    public void receive(String[] fingerprints, byte[][] encodedKeys) {
+        for (int i = 0; i < fingerprints.length; i++) {
+            PublicKey key = null;
+            if (encodedKeys[i].length > 0 && CryptoHelper.sha256Hash(encodedKeys[i]).equals(fingerprints[i])) {
+                try {
+                    key = CryptoHelper.decodePublicKey(encodedKeys[i]);
+                } catch (InvalidKeySpecException e) {
+                    LOGGER.warn("Failed to decode key", e);
+                }
+            }
+            CompletableFuture<PublicKey> future;
+            synchronized (this) {
+                if (key != null) this.keys.put(fingerprints[i], key);
+                future = this.pending.remove(fingerprints[i]);
+            }
+            if (future != null) {
+                if (key != null) {
+                    future.complete(key);
+                } else {
+                    future.completeExceptionally(new NoSuchElementException("Unknown key: " + fingerprints[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests all outstanding keys again (e.g. after the connection was lost)
+     */
+    public void retry() {
+        String[] fingerprints;
+        synchronized (this) {
+            fingerprints = this.pending.keySet().toArray(new String[0]);
+        }
+        if (fingerprints.length > 0) this.requester.accept(fingerprints);
+    }
+
+    /**
+     * Removes all keys, and cancels any outstanding requests
+     */
+    public void clear() {
+        List<CompletableFuture<PublicKey>> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(this.pending.values());
+            this.pending.clear();
+            this.keys.clear();
+        }
+        for (CompletableFuture<PublicKey> future : cancelled) {
+            future.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.GrowingBinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * An encrypted on-disk cache of the messages an account has received on a server
+ * Lets recent messages be shown immediately after logging in, while the server sends whatever was missed
+ * Messages are stored in chunks (encoded like a page of history), each encrypted with the account's pass key
+ * Newly received messages are collected for a short while and written together, so that each one does not become its own chunk
+ * All file access happens on a dedicated thread
+ *
+ * @see ChannelCache
+ */
+public class MessageCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The length of the random nonce that prefixes each encrypted chunk
+     */
+    private static final int NONCE_BYTES = 12;
+    /**
+     * The length of the authentication tag of each encrypted chunk, in bits
+     */
+    private static final int TAG_BITS = 128;
+    /**
+     * How long (in milliseconds) newly received messages are collected before they are written
+     */
+    private static final long FLUSH_DELAY = 2 * 1000;
+    /**
+     * The number of collected messages that causes them to be written immediately
+     */
+    private static final int MAX_PENDING = 256;
+
+    /**
+     * The cache thread
+     */
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "Message Cache"));
+    /**
+     * Newly received messages that have not been written yet, in the order they were received
+     * Guarded by itself
+     */
+    private final List<Pending> pending = new ArrayList<>();
+    /**
+     * Whether the pending messages are going to be written
+     * Guarded by {@link #pending}
+     */
+    private boolean flushScheduled = false;
+    /**
+     * Map of channel -> cache
+     * Only accessed on the cache thread
+     */
+    private final Map<Identifier, ChannelCache> channels = new HashMap<>();
+    /**
+     * Map of channel -> id of the history its cached messages belong to
+     * Only accessed on the cache thread
+     */
+    private final Map<Identifier, Long> historyIds = new HashMap<>();
+    /**
+     * Encrypts and decrypts the chunks
+     * Only accessed on the cache thread
+     */
+    private final Cipher cipher = CryptoHelper.createAesGcmCipher();
+    /**
+     * The directory containing the channel caches
+     */
+    private final Path directory;
+    /**
+     * The account's pass key
+     */
+    private final SecretKey key;
+    /**
+     * The maximum size of a single channel's cache, in bytes
+     */
+    private final long maxChannelBytes;
+
+    /**
+     * Creates a new message cache
+     *
+     * @param directory       the directory to store the cache in
+     * @param key             the key to encrypt the cache with
+     * @param maxChannelBytes the maximum size of a single channel's cache, in bytes
+     */
+    public MessageCache(Path directory, SecretKey key, long maxChannelBytes) {
+        this.directory = directory;
+        this.key = key;
+        this.maxChannelBytes = maxChannelBytes;
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false); // close() writes everything itself
+    }
+
+    /**
+     * Sequence numbers are only meaningful on the server that assigned them, so each account has a cache per server
+     *
+     * @param root    the root cache directory
+     * @param account the public key of the account
+     * @param server  the address of the server
+     * @return the cache directory of the account on the server
+     */
+    public static Path getDirectory(Path root, PublicKey account, InetSocketAddress server) {
+        String id = CryptoHelper.sha256Hash(account.getEncoded()) + '@' + server.getHostString() + ':' + server.getPort();
+        return root.resolve(CryptoHelper.sha256Hash(id.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads the newest cached messages of some channels
+     * The callback is invoked on the cache thread
+     *
+     * @param channels the channels to read
+     * @param limit    the maximum number of messages to read per channel
+     * @param callback receives the cached messages of each channel that has any
+     */
+    public void load(List<Identifier> channels, int limit, Consumer<List<MessageHistory>> callback) {
+        this.executor.execute(() -> {
+            long start = System.nanoTime();
+            this.flushPending();
+            List<MessageHistory> pages = new ArrayList<>(channels.size());
+            for (Identifier channel : channels) {
+                MessageHistory page = this.read(channel, limit);
+                if (page != null) pages.add(page);
+            }
+            LOGGER.debug("Loaded cached messages of {} channels in {}ms", pages.size(), (System.nanoTime() - start) / 1_000_000.0);
+            callback.accept(pages);
+        });
+    }
+
+    /**
+     * Caches a newly received message
+     * The message is written together with the other messages received around the same time
+     *
+     * @param channel   the channel the message was sent to
+     * @param historyId the id of the history the message belongs to
+     * @param sequence  the sequence number of the message
+     * @param message   the message
+     */
+    public void add(Identifier channel, long historyId, int sequence, Message message) {
+        synchronized (this.pending) {
+            this.pending.add(new Pending(channel, historyId, sequence, message));
+            if (this.pending.size() >= MAX_PENDING) {
+                this.executor.execute(this::flushPending);
+            } else if (!this.flushScheduled) {
+                this.flushScheduled = true;
+                this.executor.schedule(this::flushPending, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Caches a page of messages
+     * Only messages newer than the newest cached message are added (the cache is append-only)
+     * If the messages belong to a different history than the cached ones, the cache is cleared first
+     *
+     * @param channel        the channel the messages were sent to
+     * @param historyId      the id of the history the messages belong to
+     * @param firstSequence  the sequence number of the first message
+     * @param latestSequence the sequence number of the newest message in the channel
+     * @param messages       the messages, oldest first
+     */
+    public void add(Identifier channel, long historyId, int firstSequence, int latestSequence, List<Message> messages) {
+        List<Message> copy = List.copyOf(messages);
+        this.executor.execute(() -> {
+            this.flushPending(); // keep the messages in the order they were received
+            this.write(channel, historyId, firstSequence, latestSequence, copy);
+        });
+    }
+
+    /**
+     * Deletes the cache of a channel
+     *
+     * @param channel the channel to delete
+     */
+    public void remove(Identifier channel) {
+        this.executor.execute(() -> {
+            try {
+                this.flushPending(); // so nothing is written after the files are deleted
+                ChannelCache cache = this.channels.remove(channel);
+                this.historyIds.remove(channel);
+                if (cache != null) cache.close();
+                Files.deleteIfExists(this.getLogFile(channel));
+                Files.deleteIfExists(this.getIndexFile(channel));
+            } catch (IOException e) {
+                LOGGER.error("Failed to delete message cache of #{}", channel.getValue(), e);
+            }
+        });
+    }
+
+    /**
+     * Closes all open files once every queued operation has finished
+     */
+    public void close() {
+        this.executor.execute(() -> {
+            this.flushPending();
+            for (ChannelCache cache : this.channels.values()) {
+                try {
+                    cache.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close message cache", e);
+                }
+            }
+            this.channels.clear();
+            this.historyIds.clear();
+        });
+        this.executor.shutdown();
+    }
+
+    /**
+     * Writes the pending messages, as one chunk per run of consecutive messages in a channel
+     * Only called on the cache thread
+     */
+    private void flushPending() {
+        List<Pending> messages;
+        synchronized (this.pending) {
+            if (this.pending.isEmpty()) return;
+            messages = new ArrayList<>(this.pending);
+            this.pending.clear();
+            this.flushScheduled = false;
+        }
+
+        Map<Identifier, List<Pending>> byChannel = new LinkedHashMap<>();
+        for (Pending message : messages) {
+            byChannel.computeIfAbsent(message.channel(), c -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<Identifier, List<Pending>> entry : byChannel.entrySet()) {
+            List<Pending> list = entry.getValue();
+            int start = 0;
+            for (int i = 1; i <= list.size(); i++) {
+                if (i == list.size() || !list.get(i).follows(list.get(i - 1))) { // end of a run
+                    List<Message> run = new ArrayList<>(i - start);
+                    for (int j = start; j < i; j++) {
+                        run.add(list.get(j).message());
+                    }
+                    Pending first = list.get(start);
+                    this.write(entry.getKey(), first.historyId(), first.sequence(), list.get(i - 1).sequence(), run);
+                    start = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends messages to a channel's cache as a single chunk
+     * Only messages newer than the newest cached message are added (the cache is append-only)
+     * Only called on the cache thread
+     *
+     * @param channel        the channel the messages were sent to
+     * @param historyId      the id of the history the messages belong to
+     * @param firstSequence  the sequence number of the first message
+     * @param latestSequence the sequence number of the newest message in the channel
+     * @param messages       the messages, oldest first
+     */
+    private void write(Identifier channel, long historyId, int firstSequence, int latestSequence, List<Message> messages) {
+        ChannelCache cache = this.get(channel);
+        if (cache == null) return;
+        try {
+            int lastSequence = cache.getLastSequence();
+            if (this.getHistoryId(channel, cache) != historyId) { // the server's history was reset, so the cache is no longer valid
+                cache.clear();
+                lastSequence = -1;
+            }
+            this.historyIds.put(channel, historyId);
+            int skip = Math.max(0, lastSequence + 1 - firstSequence); // messages that are already cached
+            if (skip >= messages.size()) return;
+
+            List<Message> added = messages.subList(skip, messages.size());
+            GrowingBinaryOutput output = GrowingBinaryOutput.create(256);
+            new MessageHistory(channel, historyId, firstSequence + skip, 0, latestSequence, added).write(output); // the server reports the oldest sequence number
+            cache.append(firstSequence + skip, added.size(), this.encrypt(channel, firstSequence + skip, output.getSizedOutput()));
+            cache.evict(this.maxChannelBytes);
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.error("Failed to cache messages of #{}", channel.getValue(), e);
+        }
+    }
+
+    /**
+     * Reads the newest cached messages of a channel
+     *
+     * @param channel the channel to read
+     * @param limit   the maximum number of messages to read
+     * @return the messages, or null if none are cached
+     */
+    private @Nullable MessageHistory read(Identifier channel, int limit) {
+        if (!this.channels.containsKey(channel) && !Files.exists(this.getLogFile(channel))) return null; // never cached
+        ChannelCache cache = this.get(channel);
+        if (cache == null) return null;
+        try {
+            List<ChannelCache.Chunk> chunks = cache.readLatest(limit);
+            if (chunks.isEmpty()) return null;
+            List<Message> messages = new ArrayList<>();
+            long historyId = 0;
+            for (ChannelCache.Chunk chunk : chunks) {
+                byte[] data = this.decrypt(channel, chunk.firstSequence(), chunk.data());
+                MessageHistory page = new MessageHistory(BinaryInput.buffer(data));
+                messages.addAll(page.getMessages());
+                historyId = page.getHistoryId(); // always the same - the cache is cleared when the history changes
+            }
+            this.historyIds.put(channel, historyId);
+            int excess = Math.max(0, messages.size() - limit);
+            int firstSequence = chunks.get(0).firstSequence() + excess;
+            messages = messages.subList(excess, messages.size());
+            return new MessageHistory(channel, historyId, firstSequence, 0, firstSequence + messages.size() - 1, messages);
+        } catch (GeneralSecurityException e) {
+            // wrong key (the password was changed) or the file was modified - either way it can't be used
+            LOGGER.warn("Discarding unreadable message cache of #{}", channel.getValue());
+            try {
+                cache.clear();
+            } catch (IOException ex) {
+                LOGGER.error("Failed to clear message cache of #{}", channel.getValue(), ex);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to read message cache of #{}", channel.getValue(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the id of the history the cached messages of a channel belong to
+     * If the channel's cache has not been read yet, the newest chunk is decrypted to find out
+     *
+     * @param channel the channel
+     * @param cache   the channel's cache
+     * @return the history id, or 0 if nothing (readable) is cached
+     */
+    private long getHistoryId(Identifier channel, ChannelCache cache) throws IOException {
+        Long historyId = this.historyIds.get(channel);
+        if (historyId != null) return historyId;
+        List<ChannelCache.Chunk> chunks = cache.readLatest(1);
+        if (chunks.isEmpty()) return 0;
+        ChannelCache.Chunk chunk = chunks.get(chunks.size() - 1);
+        try {
+            return new MessageHistory(BinaryInput.buffer(this.decrypt(channel, chunk.firstSequence(), chunk.data()))).getHistoryId();
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            return 0; // unreadable, so it will be replaced
+        }
+    }
+
+    /**
+     * Opens the cache of a channel, if it is not already open
+     *
+     * @param channel the channel
+     * @return the channel's cache, or null if it could not be opened
+     */
+    private @Nullable ChannelCache get(Identifier channel) {
+        ChannelCache cache = this.channels.get(channel);
+        if (cache == null) {
+            try {
+                Files.createDirectories(this.directory);
+                cache = new ChannelCache(this.getLogFile(channel), this.getIndexFile(channel));
+                this.channels.put(channel, cache);
+            } catch (IOException e) {
+                LOGGER.error("Failed to open message cache of #{}", channel.getValue(), e);
+            }
+        }
+        return cache;
+    }
+
+    private Path getLogFile(Identifier channel) {
+        return this.directory.resolve(channel.getValue() + ".log");
+    }
+
+    private Path getIndexFile(Identifier channel) {
+        return this.directory.resolve(channel.getValue() + ".idx");
+    }
+
+    /**
+     * Encrypts a chunk
+     * The channel and sequence number are authenticated, so that chunks cannot be moved around undetected
+     *
+     * @return the nonce, followed by the encrypted data
+     */
+    private byte[] encrypt(Identifier channel, int firstSequence, byte[] data) throws GeneralSecurityException {
+        byte[] nonce = new byte[NONCE_BYTES];
+        CryptoHelper.secureRandom().nextBytes(nonce);
+        this.cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_BITS, nonce));
+        this.cipher.updateAAD(associatedData(channel, firstSequence));
+        byte[] output = Arrays.copyOf(nonce, NONCE_BYTES + this.cipher.getOutputSize(data.length));
+        this.cipher.doFinal(data, 0, data.length, output, NONCE_BYTES);
+        return output;
+    }
+
+    private byte[] decrypt(Identifier channel, int firstSequence, byte[] data) throws GeneralSecurityException {
+        this.cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_BITS, data, 0, NONCE_BYTES));
+        this.cipher.updateAAD(associatedData(channel, firstSequence));
+        return this.cipher.doFinal(data, NONCE_BYTES, data.length - NONCE_BYTES);
+    }
+
+    private static byte[] associatedData(Identifier channel, int firstSequence) {
+        byte[] name = channel.getValue().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(name.length + 4).put(name).putInt(firstSequence).array();
+    }
+
+    /**
+     * A newly received message that has not been written yet
+     *
+     * @param channel   the channel the message was sent to
+     * @param historyId the id of the history the message belongs to
+     * @param sequence  the sequence number of the message
+     * @param message   the message
+     */
+    private record Pending(Identifier channel, long historyId, int sequence, Message message) {
+        /**
+         * @return whether this message directly follows the given one (so they can be written in the same chunk)
+         */
+        private boolean follows(Pending previous) {
+            return this.historyId == previous.historyId && this.sequence == previous.sequence + 1;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.PacketPipeline;
+import io.github.marcus8448.chat.core.api.network.packet.PacketType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.PrivateKey;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Signs and sends messages in the background, so that the UI never waits on a private key operation or the network
+ * Messages are signed on one thread and written on another, and are always sent in the order they were queued
+ */
+public class MessageSender {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * The signing thread
+     */
+    private final ExecutorService signer = Executors.newSingleThreadExecutor(r -> createThread(r, "Message Signer"));
+    /**
+     * The writing thread
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> createThread(r, "Message Writer"));
+    /**
+     * Signature for the signing of messages (RSA or Ed25519, depending on the account)
+     * Only accessed on the signing thread
+     */
+    private Signature signature;
+    /**
+     * Runs the callbacks on the application thread
+     */
+    private final Executor callbacks;
+    /**
+     * The connection to send messages through
+     */
+    private volatile PacketPipeline connection;
+
+    /**
+     * Creates a new message sender
+     *
+     * @param callbacks runs the completion and failure callbacks on the application thread
+     */
+    public MessageSender(Executor callbacks) {
+        this.callbacks = callbacks;
+    }
+
+    private static Thread createThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true); // don't keep the app open
+        return thread;
+    }
+
+    /**
+     * Sets the connection and signing key of the active account
+     *
+     * @param connection the connection to the server
+     * @param privateKey the key to sign messages with
+     */
+    public void initialize(PacketPipeline connection, PrivateKey privateKey) {
+        this.connection = connection;
+        this.signer.execute(() -> {
+            try {
+                this.signature = CryptoHelper.createSignature(privateKey);
+                this.signature.initSign(privateKey);
+            } catch (InvalidKeyException e) {
+                this.signature = null; // messages fail (through their callback) rather than being signed with the wrong key
+                LOGGER.fatal("Failed to initialize signature", e);
+            }
+        });
+    }
+
+    /**
+     * Queues a message to be signed and sent
+     *
+     * @param type      the type of packet to send
+     * @param contents  passes the contents of the message to the signature (called on the signing thread)
+     * @param packet    creates the packet from the signature
+     * @param onSent    called once the packet has been written
+     * @param onFailure called if the message could not be signed or sent
+     * @param <Data>    the type of packet
+     */
+    public <Data extends NetworkedData> void send(PacketType<Data> type, Contents contents, Function<byte[], Data> packet, Runnable onSent, Consumer<Exception> onFailure) {
+        this.signer.execute(() -> {
+            Data data;
+            try {
+                if (this.signature == null) throw new SignatureException("No signing key");
+                contents.update(this.signature);
+                data = packet.apply(this.signature.sign());
+            } catch (SignatureException | RuntimeException e) {
+                // always report the failure, so that the message is not left pending forever
+                LOGGER.error("Failed to sign message", e);
+                this.callbacks.execute(() -> onFailure.accept(e));
+                return;
+            }
+            this.writer.execute(() -> {
+                try {
+                    this.connection.send(type, data);
+                    this.callbacks.execute(onSent);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Failed to send message", e);
+                    this.callbacks.execute(() -> onFailure.accept(e));
+                }
+            });
+        });
+    }
+
+    /**
+     * The signed contents of a message
+     */
+    @FunctionalInterface
+    public interface Contents {
+        /**
+         * Passes the contents to a signature
+         *
+         * @param signature the signature to update
+         * @throws SignatureException if the signature could not be updated
+         */
+        void update(Signature signature) throws SignatureException;
+    }
+
+    /**
+     * Stops the signing and writing threads (queued messages are dropped)
+     */
+    public void shutdown() {
+        this.signer.shutdownNow();
+        this.writer.shutdownNow();
+    }
+}
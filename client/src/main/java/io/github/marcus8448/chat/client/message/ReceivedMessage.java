@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import io.github.marcus8448.chat.client.parse.MarkdownParser;
+import io.github.marcus8448.chat.client.parse.StyledRun;
+import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.message.MessageType;
+import io.github.marcus8448.chat.core.api.message.TextMessage;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A message received by the client, along with the result of checking its signature
+ * Signatures are checked once when a message is received, rather than every time it is displayed
+ * Until the check is done the message is {@link Verification#PENDING}, and it is then replaced by the checked message
+ * Text messages are also parsed once, rather than every time they are displayed
+ *
+ * @param message      the message
+ * @param verification whether the message was really written by its author
+ * @param runs         the formatted text of the message, or {@code null} if it is not a text message
+ */
+public record ReceivedMessage(Message message, Verification verification, @Nullable List<StyledRun> runs) {
+    /**
+     * @param message a message that has not been checked yet
+     * @return the message, waiting to be checked
+     */
+    @Contract("_ -> new")
+    public static @NotNull ReceivedMessage pending(Message message) {
+        return new ReceivedMessage(message, Verification.PENDING, parse(message));
+    }
+
+    /**
+     * @param message a message that is being sent by this client
+     * @return the placeholder of the message
+     */
+    @Contract("_ -> new")
+    public static @NotNull ReceivedMessage sending(Message message) {
+        return new ReceivedMessage(message, Verification.SENDING, parse(message));
+    }
+
+    /**
+     * Checks the signature of a message
+     *
+     * @param pending the message to check
+     * @return the message, with the result of the check
+     */
+    @Contract("_ -> new")
+    public static @NotNull ReceivedMessage verify(ReceivedMessage pending) {
+        return new ReceivedMessage(pending.message, pending.message.verifySignature() ? Verification.VALID : Verification.INVALID, pending.runs);
+    }
+
+    /**
+     * @return the formatted text of the message, or null if it is not a text message
+     */
+    private static @Nullable List<StyledRun> parse(Message message) {
+        return message.getType() == MessageType.TEXT ? MarkdownParser.tokenize(((TextMessage) message).getMessage()) : null;
+    }
+
+    /**
+     * @return whether the signature of the message is still being checked
+     */
+    public boolean isPending() {
+        return this.verification == Verification.PENDING;
+    }
+
+    /**
+     * @return whether the message is being sent by this client
+     */
+    public boolean isSending() {
+        return this.verification == Verification.SENDING;
+    }
+
+    /**
+     * @return whether the signature of the message is valid
+     */
+    public boolean isVerified() {
+        return this.verification == Verification.VALID;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+import io.github.marcus8448.chat.core.api.message.Message;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Checks message signatures on a pool of worker threads
+ * Results are handed to the JavaFX application thread through an update queue, so a burst of messages is applied in one pulse
+ *
+ * @see io.github.marcus8448.chat.client.util.FxUpdateQueue
+ */
+public class SignatureVerifier {
+    /**
+     * The worker threads
+     */
+    private final ExecutorService workers;
+    /**
+     * Runs the callbacks on the application thread
+     */
+    private final Executor publisher;
+
+    /**
+     * Creates a new verifier
+     *
+     * @param threads   the number of worker threads
+     * @param publisher runs the callbacks on the application thread
+     */
+    public SignatureVerifier(int threads, Executor publisher) {
+        this.publisher = publisher;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Signature Verifier #" + count.incrementAndGet());
+            thread.setDaemon(true); // don't keep the app open
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a message to have its signature checked
+     *
+     * @param message  the message to check
+     * @param callback receives the checked message, on the application thread
+     * @return the message, waiting to be checked
+     */
+    public ReceivedMessage verify(Message message, Consumer<ReceivedMessage> callback) {
+        ReceivedMessage pending = ReceivedMessage.pending(message);
+        this.workers.execute(() -> {
+            ReceivedMessage verified = ReceivedMessage.verify(pending);
+            this.publisher.execute(() -> callback.accept(verified));
+        });
+        return pending;
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        this.workers.shutdownNow();
+    }
+}
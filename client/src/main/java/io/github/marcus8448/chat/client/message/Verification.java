@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.message;
+
+/**
+ * The result of checking a message's signature
+ */
+public enum Verification {
+    /**
+     * The signature has not been checked yet
+     */
+    PENDING,
+    /**
+     * The message is being sent by this client, and has not been signed or received back from the server yet
+     */
+    SENDING,
+    /**
+     * The signature matches the contents and the author's key
+     */
+    VALID,
+    /**
+     * The signature does not match, so the message may not have been written by its author
+     */
+    INVALID
+}
@@ -19,102 +19,144 @@
 import javafx.scene.text.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Quick and dirty Markdown parser
+ * Text is split into styled runs in linear time, and the runs are rendered separately (so they can be kept with the message)
  */
 public class MarkdownParser {
+    private static final byte NONE = 0;
+    private static final byte BOLD = 1;
+    private static final byte ITALIC = 2;
+    private static final byte STRIKETHROUGH = 3;
+
+    /**
+     * Fonts for each combination of bold and italics, shared by all rendered text
+     * Index: bit 0 = bold, bit 1 = italic
+     */
+    private static final Font[] FONTS = new Font[4];
+
     /**
      * Parses text as markdown and appends it to the given TextFlow
      *
      * @param text the text to parse
+     * @see #tokenize(String)
+     */
+    public static void parseMarkdown(TextFlow flow, String text) {
+        render(flow, tokenize(text));
+    }
+
+    /**
+     * Splits markdown-formatted text into styled runs
+     *
+     * @param text the text to parse
+     * @return the runs of the text, in order (immutable)
      * @implNote Only supports bold (**), italic (*), and strikethrough (~~)
      * @implNote If the text consists of only formatting chars, there's a chance that it will just remove all content
      */
-    public static void parseMarkdown(TextFlow flow, String text) {
-        flow.getChildren().clear();
+    public static List<StyledRun> tokenize(String text) {
         char[] arr = text.toCharArray();
-        List<Integer> bold = new ArrayList<>(); // indices of bold format (**)
-        List<Integer> italics = new ArrayList<>(); // indices of italics format (*)
-        List<Integer> strikethrough = new ArrayList<>(); // indices of strikethrough format (~~)
+        byte[] markers = new byte[arr.length]; // the formatting that starts at each index (if any)
+        int[] counts = new int[4]; // the number of markers of each type
+        int[] last = {-1, -1, -1, -1}; // the index of the last marker of each type
         for (int i = 0, len = arr.length; i < len; i++) {
             char c = arr[i]; // the character at this position
             boolean hasNext = i + 1 < arr.length; // whether there is another character after this one
             if (c == '\\') i++; // skip this char and the next one
+            byte marker = NONE;
             if (c == '*') { // check if it is a star character
-                if (hasNext && arr[i + 1] == '*') { // if there is a second star, it's bold
-                    bold.add(i);
-                    i++; // skip the second star
-                } else { // no second star, so italics
-                    italics.add(i);
-                }
-            } else if (c == '~') { // check if it's a tilde
-                if (hasNext && arr[i + 1] == '~') { // two tildes = strikethrough
-                    strikethrough.add(i);
-                    i++; // skip the second tilde
-                }
+                marker = hasNext && arr[i + 1] == '*' ? BOLD : ITALIC; // if there is a second star, it's bold
+            } else if (c == '~' && hasNext && arr[i + 1] == '~') { // two tildes = strikethrough
+                marker = STRIKETHROUGH;
+            }
+            if (marker != NONE) {
+                markers[i] = marker;
+                counts[marker]++;
+                last[marker] = i;
+                if (marker != ITALIC) i++; // skip the second star/tilde
             }
         }
-        if (bold.size() % 2 == 1) { // if there are mismatched bolds (must wrap text), just remove the last one
-            bold.remove(bold.size() - 1);
-        }
-        if (italics.size() % 2 == 1) { // if there are mismatched italics (must wrap text), just remove the last one
-            italics.remove(italics.size() - 1);
-        }
-        if (strikethrough.size() % 2 == 1) { // if there is mismatched strikethrough (must wrap text), just remove the last one
-            strikethrough.remove(strikethrough.size() - 1);
+        for (byte type = BOLD; type <= STRIKETHROUGH; type++) {
+            if (counts[type] % 2 == 1) { // if there are mismatched markers (must wrap text), just remove the last one
+                markers[last[type]] = NONE;
+                counts[type]--;
+            }
         }
 
         // check if the formatting will just emit nothing
-        if ((bold.size() * 2 + italics.size() + strikethrough.size() * 2) == text.length()
-                || (bold.isEmpty() && italics.isEmpty() && strikethrough.isEmpty())) {
-            flow.getChildren().add(new Text(text)); // just return the plaintext
-            return;
+        if ((counts[BOLD] * 2 + counts[ITALIC] + counts[STRIKETHROUGH] * 2) == text.length()
+                || (counts[BOLD] == 0 && counts[ITALIC] == 0 && counts[STRIKETHROUGH] == 0)) {
+            return List.of(new StyledRun(text, false, false, false)); // just return the plaintext
         }
 
         boolean isBold = false; // whether text is currently bold
         boolean isItalicized = false; // whether text is currently italicized
         boolean isStrikethrough = false; // whether text has strikethrough
 
+        List<StyledRun> runs = new ArrayList<>();
         StringBuilder builder = new StringBuilder(); // buffer for text
         for (int i = 0; i < arr.length; i++) { //iterate over all characters
-            if (bold.contains(i) || strikethrough.contains(i) || italics.contains(i)) { // check if there is a style change
+            byte marker = markers[i];
+            if (marker != NONE) { // check if there is a style change
                 if (!builder.isEmpty()) { // check if we have pending text
-                    append(flow, isBold, isItalicized, isStrikethrough, builder); // append the text
+                    runs.add(new StyledRun(builder.toString(), isBold, isItalicized, isStrikethrough)); // append the text
                     builder.setLength(0); // clear the builder
                 }
-                if (bold.contains(i)) { // check if we are swapping bold state
-                    isBold = !isBold;
-                    i++; // skip second star
-                } else if (strikethrough.contains(i)) { // check if we are swapping strikethrough state
-                    isStrikethrough = !isStrikethrough;
-                    i++; // skip second tilde
-                } else if (italics.contains(i)) { // check if we are swapping italics state
-                    isItalicized = !isItalicized;
+                switch (marker) {
+                    case BOLD -> {
+                        isBold = !isBold;
+                        i++; // skip second star
+                    }
+                    case STRIKETHROUGH -> {
+                        isStrikethrough = !isStrikethrough;
+                        i++; // skip second tilde
+                    }
+                    default -> isItalicized = !isItalicized;
                 }
             } else {
                 builder.append(arr[i]); // append the next character to the buffer
             }
         }
-        if (!builder.isEmpty()) { // if there is remaining text, add it to the flow
-            append(flow, isBold, isItalicized, isStrikethrough, builder);
+        if (!builder.isEmpty()) { // if there is remaining text, add it to the runs
+            runs.add(new StyledRun(builder.toString(), isBold, isItalicized, isStrikethrough));
+        }
+        return Collections.unmodifiableList(runs);
+    }
+
+    /**
+     * Replaces the contents of a TextFlow with styled runs
+     *
+     * @param flow the text flow to render to
+     * @param runs the runs to render
+     */
+    public static void render(TextFlow flow, List<StyledRun> runs) {
+        Text[] texts = new Text[runs.size()];
+        for (int i = 0; i < texts.length; i++) {
+            StyledRun run = runs.get(i);
+            Text txt = new Text(run.text());
+            txt.setStrikethrough(run.strikethrough());
+            txt.setFont(getFont(run.bold(), run.italic()));
+            texts[i] = txt;
         }
+        flow.getChildren().setAll(texts); // replace everything at once
     }
 
     /**
-     * Appends text with the given font properties to a TextFlow
+     * Gets the (shared) default font with the given properties
      *
-     * @param flow            the text flow to append to
-     * @param isBold          whether the given text should be bolded
-     * @param isItalicized    whether the given text should be italicized
-     * @param isStrikethrough whether the given text should have strikethrough
-     * @param builder         the text
+     * @param bold   whether the font is bold
+     * @param italic whether the font is italic
+     * @return the font
      */
-    private static void append(TextFlow flow, boolean isBold, boolean isItalicized, boolean isStrikethrough, StringBuilder builder) {
-        Text txt = new Text(builder.toString());
-        txt.strikethroughProperty().set(isStrikethrough);
-        txt.setFont(Font.font(Font.getDefault().getFamily(), isBold ? FontWeight.BOLD : FontWeight.NORMAL, isItalicized ? FontPosture.ITALIC : FontPosture.REGULAR, Font.getDefault().getSize()));
-        flow.getChildren().add(txt);
+    private static Font getFont(boolean bold, boolean italic) {
+        int index = (bold ? 1 : 0) | (italic ? 2 : 0);
+        Font font = FONTS[index];
+        if (font == null) {
+            font = Font.font(Font.getDefault().getFamily(), bold ? FontWeight.BOLD : FontWeight.NORMAL, italic ? FontPosture.ITALIC : FontPosture.REGULAR, Font.getDefault().getSize());
+            FONTS[index] = font;
+        }
+        return font;
     }
 }
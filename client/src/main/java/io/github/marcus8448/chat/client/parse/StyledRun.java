@@ -0,0 +1,28 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.parse;
+
+/**
+ * A piece of text that is displayed with a single style
+ *
+ * @param text          the text
+ * @param bold          whether the text is bold
+ * @param italic        whether the text is italicized
+ * @param strikethrough whether the text has strikethrough
+ */
+public record StyledRun(String text, boolean bold, boolean italic, boolean strikethrough) {
+}
@@ -17,28 +17,30 @@
 package io.github.marcus8448.chat.client.ui;
 
 import io.github.marcus8448.chat.client.Client;
+import io.github.marcus8448.chat.client.message.ReceivedMessage;
 import io.github.marcus8448.chat.client.ui.cell.ChannelCell;
 import io.github.marcus8448.chat.client.ui.cell.MessageCell;
 import io.github.marcus8448.chat.client.ui.cell.UserCell;
 import io.github.marcus8448.chat.client.util.JfxUtil;
 import io.github.marcus8448.chat.core.api.Constants;
 import io.github.marcus8448.chat.core.api.account.User;
-import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
 import io.github.marcus8448.chat.core.api.misc.Identifier;
-import io.github.marcus8448.chat.core.api.network.packet.ClientPacketTypes;
-import io.github.marcus8448.chat.core.api.network.packet.client.SendImageMessage;
-import io.github.marcus8448.chat.core.api.network.packet.client.SendMessage;
 import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
@@ -48,11 +50,16 @@
 import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The main chat window.
@@ -88,14 +95,14 @@ public class ChatView {
     /**
      * Center/main content pane - messages
      */
-    private final ListView<Message> messagesList = new ListView<>(); // create the messages pane;
+    private final ListView<ReceivedMessage> messagesList = new ListView<>(); // create the messages pane;
     /**
      * Right pane - list of users
      */
     private final ListView<User> userList;
 
     private Identifier channel = Constants.BASE_CHANNEL;
-    private ListChangeListener<? super Message> listener;
+    private ListChangeListener<? super ReceivedMessage> listener;
 
     public ChatView(Client client, Stage stage) {
         this.client = client;
@@ -133,7 +140,7 @@ public ChatView(Client client, Stage stage) {
         if (!client.channels.contains(Constants.BASE_CHANNEL)) client.channels.add(Constants.BASE_CHANNEL);
         channelsList.getSelectionModel().select(Constants.BASE_CHANNEL);
         this.channelsList.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
-            client.messages.get(this.channel).removeListener(listener);
+            client.messages.get(this.channel).getMessages().removeListener(listener);
 
             if (newValue == null) {
                 channelsList.getSelectionModel().select(Constants.BASE_CHANNEL);
@@ -142,17 +149,8 @@ public ChatView(Client client, Stage stage) {
                 channel = newValue;
             }
             LOGGER.info("Switching to channel: #{}", this.channel.getValue());
-            ObservableList<Message> messages = client.messages.get(this.channel);
-            messages.addListener(listener = t -> {
-                t.next();
-                if (t.getAddedSize() > 0) {
-                    Platform.runLater(() -> {
-                        if (this.client.messages.size() > 0) {
-                            messagesList.scrollTo(this.client.messages.size() - 1);
-                        }
-                    });
-                }
-            });
+            ObservableList<ReceivedMessage> messages = client.messages.get(this.channel).getMessages();
+            messages.addListener(listener = this::autoScroll);
             messagesList.setItems(messages);
 
         });
@@ -187,20 +185,12 @@ public ChatView(Client client, Stage stage) {
         VBox.setVgrow(channelsList, Priority.ALWAYS);
         VBox.setVgrow(addChannel, Priority.NEVER);
 
-        ObservableList<Message> messages = this.client.messages.get(this.channel);
-        listener = t -> { // autoscroll to bottom
-            t.next();
-            if (t.getAddedSize() > 0) {
-                Platform.runLater(() -> {
-                    if (this.client.messages.size() > 0) {
-                        messagesList.scrollTo(this.client.messages.size() - 1);
-                    }
-                });
-            }
-        };
+        ObservableList<ReceivedMessage> messages = this.client.messages.get(this.channel).getMessages();
+        listener = this::autoScroll; // autoscroll to bottom
         messages.addListener(listener);
         messagesList.setItems(messages);
         messagesList.setCellFactory(l -> new MessageCell(messagesList, this.client)); // see message cell
+        messagesList.setOnScroll(this::onScroll); // load evicted messages when scrolled to the top or bottom
 
         // create and set up the input area
         messageBox.setPromptText("Type your message here");
@@ -275,13 +265,8 @@ public ChatView(Client client, Stage stage) {
                 boolean anyConsumed = false;
                 for (File file : e.getDragboard().getFiles()) {
                     if (file.exists()) {
-                        Image image;
-                        try {
-                            image = new Image(new FileInputStream(file)); // parse image
-                            this.sendImage(image); //send it
-                            anyConsumed = true;
-                        } catch (FileNotFoundException ignored) {
-                        }
+                        this.sendImage(file); // load and send it
+                        anyConsumed = true;
                     }
                 }
                 // we used the files
@@ -290,23 +275,143 @@ public ChatView(Client client, Stage stage) {
         });
     }
 
-    private void sendImage(Image dragView) { // todo: send raw image, not pixels
-        if (this.sendButton.isDisabled()) return; // if we can't send, don't bother
-        int width = (int) dragView.getWidth();
-        int height = (int) dragView.getHeight();
-        int[] pixels = new int[width * height];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                // read pixels (oh no)
-                pixels[y * width + x] = dragView.getPixelReader().getArgb(x, y) | 0xFF000000;
+    /**
+     * Scrolls to the newest message when messages are added
+     * If older messages were added (to the top of the list) the current position is kept instead
+     * Messages being replaced by their checked versions never move the list
+     *
+     * @param change the change to the message list
+     */
+    private void autoScroll(ListChangeListener.Change<? extends ReceivedMessage> change) {
+        while (change.next()) {
+            if (change.getAddedSize() == 0 || isVerification(change)) continue;
+            boolean prepended = change.getFrom() == 0 && change.getList().size() > change.getAddedSize();
+            int index = prepended ? change.getAddedSize() : change.getList().size() - 1;
+            Platform.runLater(() -> messagesList.scrollTo(index));
+            return;
+        }
+    }
+
+    /**
+     * @param change the change to the message list
+     * @return whether the change only replaced messages with their checked versions
+     */
+    private static boolean isVerification(ListChangeListener.Change<? extends ReceivedMessage> change) {
+        if (!change.wasReplaced() || change.getAddedSize() != change.getRemovedSize()) return false;
+        List<? extends ReceivedMessage> added = change.getAddedSubList();
+        List<? extends ReceivedMessage> removed = change.getRemoved();
+        for (int i = 0; i < added.size(); i++) {
+            if (added.get(i).message() != removed.get(i).message()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Requests older (or evicted newer) messages if the user is trying to scroll past the loaded messages
+     *
+     * @param event the scroll event
+     */
+    private void onScroll(ScrollEvent event) {
+        if (event.getDeltaY() == 0) return;
+        boolean up = event.getDeltaY() > 0;
+        for (Node node : this.messagesList.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL) {
+                if (up ? bar.getValue() > bar.getMin() : bar.getValue() < bar.getMax()) return; // not at the end yet
             }
         }
+        if (up) {
+            this.client.requestOlderMessages(this.channel);
+        } else {
+            this.client.requestNewerMessages(this.channel);
+        }
+    }
 
+    /**
+     * Sends an image file as a message
+     * The image is decoded (and scaled down, if it is too large), re-encoded as PNG and hashed in the background
+     *
+     * @param file the image file
+     */
+    private void sendImage(File file) {
+        if (this.sendButton.isDisabled()) return; // if we can't send, don't bother
+        Identifier channel = this.channel;
+        int maxSize = this.client.config.getMaxImageSize();
+        this.leftStatus.setText("Loading image...");
+        CompletableFuture.supplyAsync(() -> readImage(file, maxSize)).whenComplete((image, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                LOGGER.error("Failed to load image {}", file, ex);
+                this.leftStatus.setText("Failed to load image");
+                return;
+            }
+            this.leftStatus.setText("");
+            //send the image (signed and sent in the background)
+            this.client.sendImage(channel, image.width(), image.height(), image.data(), image.hash(), () -> this.leftStatus.setText(""),
+                    e -> this.leftStatus.setText("Failed to send image"));
+        }));
+    }
+
+    /**
+     * Decodes an image file and encodes it as a PNG
+     *
+     * @param file    the image file
+     * @param maxSize the maximum width and height of the image (0 for no limit)
+     * @return the encoded image
+     */
+    private static LoadedImage readImage(File file, int maxSize) {
+        maxSize = maxSize <= 0 ? Short.MAX_VALUE : Math.min(maxSize, Short.MAX_VALUE); // dimensions are sent as shorts
         try {
-            //send the image
-            this.client.connection.send(ClientPacketTypes.SEND_IMAGE_MESSAGE, new SendImageMessage(this.channel, width, height, pixels, client.signMessage(pixels)));
+            Boolean oversized = exceedsSize(file, maxSize);
+            Image image;
+            try (InputStream stream = new FileInputStream(file)) {
+                // scale it down to fit while decoding (keeping the aspect ratio)
+                image = oversized == Boolean.TRUE ? new Image(stream, maxSize, maxSize, true, true) : new Image(stream);
+            }
+            if (oversized == null && (image.getWidth() > maxSize || image.getHeight() > maxSize)) {
+                // the size could not be read up front, so decode it again, scaled down to fit
+                try (InputStream stream = new FileInputStream(file)) {
+                    image = new Image(stream, maxSize, maxSize, true, true);
+                }
+            }
+            if (image.isError()) throw new IOException("Invalid image", image.getException());
+
+            int width = (int) image.getWidth();
+            int height = (int) image.getHeight();
+            int[] pixels = new int[width * height];
+            // copy every pixel at once, rather than one at a time
+            image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+
+            // images are sent without transparency
+            BufferedImage buffered = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            buffered.setRGB(0, 0, width, height, pixels, 0, width);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            if (!ImageIO.write(buffered, "png", output)) throw new IOException("No PNG encoder available");
+            if (output.size() > EncodedImageMessage.MAX_DATA_SIZE) throw new IOException("Image is too large");
+            byte[] data = output.toByteArray();
+            return new LoadedImage(width, height, data, EncodedImageMessage.hash(data));
         } catch (IOException e) {
-            LOGGER.fatal("Failed to send image message", e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the dimensions of an image from its header, without decoding it
+     *
+     * @param file    the image file
+     * @param maxSize the maximum width and height of the image
+     * @return whether the image is larger than the maximum size, or {@code null} if the format is not known to ImageIO
+     */
+    private static @Nullable Boolean exceedsSize(File file, int maxSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return reader.getWidth(0) > maxSize || reader.getHeight(0) > maxSize;
+            } finally {
+                reader.dispose();
+            }
         }
     }
 
@@ -320,12 +425,12 @@ private void sendMessage() {
             return;
         }
 
-        try {
-            this.client.connection.send(ClientPacketTypes.SEND_MESSAGE, new SendMessage(this.channel, message, this.client.signMessage(message)));
-            this.messageBox.setText("");
-        } catch (Exception e) {
-            LOGGER.fatal("Failed to send message", e);
-        }
+        this.messageBox.setText("");
+        // signed and sent in the background
+        this.client.sendMessage(this.channel, message, () -> this.leftStatus.setText(""), e -> {
+            this.leftStatus.setText("Failed to send message");
+            if (this.messageBox.getText().isEmpty()) this.messageBox.setText(message); // let the user try again
+        });
     }
 
     /**
@@ -352,4 +457,15 @@ public void refresh() {
         this.userList.refresh();
         this.messagesList.refresh();
     }
+
+    /**
+     * An image, encoded and ready to send
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param data   the encoded (PNG) image
+     * @param hash   the SHA-256 hash of the encoded image
+     */
+    private record LoadedImage(int width, int height, byte[] data, byte[] hash) {
+    }
 }
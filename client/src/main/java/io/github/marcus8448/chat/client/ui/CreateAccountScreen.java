@@ -24,8 +24,12 @@
 import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
 import io.github.marcus8448.chat.core.api.misc.Identifier;
 import io.github.marcus8448.chat.core.api.misc.Result;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.geometry.Insets;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
@@ -40,8 +44,6 @@
 import javax.crypto.SecretKey;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -71,6 +73,18 @@ public class CreateAccountScreen {
      * Displays the reason why an account could not be created
      */
     private final Label failureReason = new Label();
+    /**
+     * Whether to use an Ed25519 key instead of a RSA key
+     */
+    private final CheckBox ed25519 = new CheckBox("Use an Ed25519 key (faster, much smaller signatures)");
+    /**
+     * Displays the progress of key generation
+     */
+    private final Label progress = new Label();
+    /**
+     * The create account button - disabled while keys are being generated
+     */
+    private final Button create = new Button("Create Account");
     /**
      * The current stage
      */
@@ -85,20 +99,22 @@ public CreateAccountScreen(Client client, Stage stage) {
         double len = JfxUtil.getTextWidth("Username");
         vBox.getChildren().add(JfxUtil.createInputRow(new Label("Username"), this.username, "example", len));
         vBox.getChildren().add(JfxUtil.createInputRow(new Label("Password"), this.passwordField, "password", len));
+        this.ed25519.setPadding(new Insets(6));
+        vBox.getChildren().add(this.ed25519);
 
         JfxUtil.setupFailureLabel(this.failureReason);
         vBox.getChildren().add(this.failureReason);
+        vBox.getChildren().add(this.progress);
 
         vBox.getChildren().add(JfxUtil.createSpacing());
 
         Button cancel = new Button("Cancel"); // cancel button
-        Button create = new Button("Create Account"); // create account button
         JfxUtil.buttonPressCallback(cancel, stage::close); // close the account creation window
-        JfxUtil.buttonPressCallback(create, this::createAccount); // create the account
+        JfxUtil.buttonPressCallback(this.create, this::createAccount); // create the account
 
         JfxUtil.unescapedEnterCallback(this.passwordField, this::createAccount);
 
-        vBox.getChildren().add(JfxUtil.createButtonRow(cancel, null, create));
+        vBox.getChildren().add(JfxUtil.createButtonRow(cancel, null, this.create));
 
         // create the scene, set up the stage
         Scene scene = new Scene(vBox);
@@ -111,6 +127,7 @@ public CreateAccountScreen(Client client, Stage stage) {
      * Try to create an account
      */
     private void createAccount() {
+        if (this.create.isDisabled()) return; // already generating keys
         // maybe i've been doing too much rust...
         Result<Identifier, String> res = Identifier.parse(this.username.getText()); // validate username
         if (res.isError()) { // check if invalid
@@ -144,12 +161,53 @@ private void createAccount() {
             return;
         }
 
+        if (this.ed25519.isSelected()) {
+            // Ed25519 keys are generated almost instantly
+            KeyPair keyPair = CryptoHelper.generateEd25519KeyPair();
+            LOGGER.info("Generated Ed25519 keypair (id: {})", CryptoHelper.sha256Hash(keyPair.getPublic().getEncoded()));
+            this.finishAccount(username, keyPair, aesCipher);
+            return;
+        }
+
+        // generating a RSA keypair (4096 bits) takes a few seconds, so do it in the background
+        // the generator does not report how far along it is, so show the elapsed time instead
         LOGGER.info("Generating RSA keypair");
-        KeyPair keyPair = CryptoHelper.RSA_KEY_GENERATOR.generateKeyPair(); // Generate a RSA keypair (4096 bits)
-        LOGGER.info("Keypair generation done (id: {})", CryptoHelper.sha256Hash(keyPair.getPublic().getEncoded()));
+        this.create.setDisable(true);
+        this.failureReason.setText("");
+        long start = System.nanoTime();
+        AnimationTimer timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                progress.setText("Generating keys... (%ds)".formatted((now - start) / 1_000_000_000L));
+            }
+        };
+        timer.start();
+        CryptoHelper.generateRsaKeyPairAsync().whenComplete((keyPair, ex) -> Platform.runLater(() -> {
+            timer.stop();
+            this.progress.setText("");
+            this.create.setDisable(false);
+            if (ex != null) {
+                this.failureReason.setText("Failed to generate keys.");
+                LOGGER.error("RSA key generation failed", ex);
+                return;
+            }
+            LOGGER.info("Keypair generation done in {}ms (id: {})", (System.nanoTime() - start) / 1_000_000, CryptoHelper.sha256Hash(keyPair.getPublic().getEncoded()));
+            if (!this.stage.isShowing()) return; // creation was cancelled
+            this.finishAccount(username, keyPair, aesCipher);
+        }));
+    }
+
+    /**
+     * Saves the new account, once its keys have been generated
+     *
+     * @param username  the username of the account
+     * @param keyPair   the account's keys
+     * @param aesCipher encrypts the account data with the user's password
+     */
+    private void finishAccount(Identifier username, KeyPair keyPair, Cipher aesCipher) {
         try {
             // create and add the new account
-            this.client.config.addAccount(new Account(username, (RSAPublicKey) keyPair.getPublic(), new AccountData((RSAPrivateKey) keyPair.getPrivate(), new HashMap<>(), new HashMap<>(), new ArrayList<>()).encrypt(aesCipher)));
+            this.client.config.addAccount(new Account(username, keyPair.getPublic(), new AccountData(keyPair.getPrivate(), new HashMap<>(), new HashMap<>(), new ArrayList<>()).encrypt(aesCipher)));
         } catch (IllegalBlockSizeException | BadPaddingException e) {
             this.failureReason.setText("Failed to finalize account.");
             LOGGER.fatal("Account data encryption failed", e);
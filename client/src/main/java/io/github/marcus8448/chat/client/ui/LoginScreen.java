@@ -23,6 +23,7 @@
 import io.github.marcus8448.chat.client.util.JfxUtil;
 import io.github.marcus8448.chat.core.api.Constants;
 import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.Handshake;
 import io.github.marcus8448.chat.core.api.network.PacketPipeline;
 import io.github.marcus8448.chat.core.api.network.packet.ClientPacketTypes;
 import io.github.marcus8448.chat.core.api.network.packet.Packet;
@@ -30,7 +31,6 @@
 import io.github.marcus8448.chat.core.api.network.packet.client.Authenticate;
 import io.github.marcus8448.chat.core.api.network.packet.client.Hello;
 import io.github.marcus8448.chat.core.api.network.packet.server.AuthenticationRequest;
-import io.github.marcus8448.chat.core.api.network.packet.server.AuthenticationSuccess;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -53,7 +53,9 @@
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.security.InvalidKeyException;
-import java.security.interfaces.RSAPublicKey;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.List;
 
@@ -256,7 +258,7 @@ private void login() {
             return;
         }
 
-        RSAPublicKey publicKey = account.publicKey();
+        PublicKey publicKey = account.publicKey();
         Cipher aesCipher = CryptoHelper.createAesCipher();
         try {
             aesCipher.init(Cipher.DECRYPT_MODE, passKey);
@@ -291,7 +293,7 @@ private void login() {
      * @param publicKey   the user's public key
      * @param accountData the data associated with the account
      */
-    private void connectToServer(InetSocketAddress address, Account account, SecretKey aesKey, RSAPublicKey publicKey, AccountData accountData) {
+    private void connectToServer(InetSocketAddress address, Account account, SecretKey aesKey, PublicKey publicKey, AccountData accountData) {
         PacketPipeline connect;
         try {
             Socket socket = new Socket();
@@ -300,13 +302,14 @@ private void connectToServer(InetSocketAddress address, Account account, SecretK
 
             // create a pipeline for the connection
             connect = PacketPipeline.createNetwork(Constants.PACKET_HEADER, socket);
-            // send initial packet
-            connect.send(ClientPacketTypes.HELLO, new Hello(Constants.BRAND, Constants.VERSION, publicKey));
+            // send initial packet, with a new ephemeral key for deriving the session key
+            KeyPair exchange = CryptoHelper.generateX25519KeyPair();
+            connect.send(ClientPacketTypes.HELLO, new Hello(Constants.BRAND, Constants.VERSION, publicKey, exchange.getPublic()));
 
             // get the server's response
             Packet<AuthenticationRequest> packet = connect.receivePacket();
 
-            RSAPublicKey serverKey = packet.data().getServerKey();
+            PublicKey serverKey = packet.data().getServerKey();
 
             // manage server keys
             String keyHash = CryptoHelper.sha256Hash(serverKey.getEncoded());
@@ -314,7 +317,7 @@ private void connectToServer(InetSocketAddress address, Account account, SecretK
             String host = address.getHostString() + ":" + address.getPort();
 
             // verify that the server is the correct one
-            RSAPublicKey expectedKey = accountData.knownServers().get(host);
+            PublicKey expectedKey = accountData.knownServers().get(host);
             if (expectedKey == null) {
                 LOGGER.info("Awaiting key confirmation");
                 Alert alert = new Alert(Alert.AlertType.WARNING, "Please verify that the server's key is correct\n\n" + keyHash + "\n\nDo you wish to connect?", ButtonType.NO, ButtonType.YES);
@@ -338,34 +341,30 @@ private void connectToServer(InetSocketAddress address, Account account, SecretK
                 accountData.knownServers().put(host, serverKey);
             }
 
+            // check that the exchange key really belongs to the server
+            if (!Handshake.verifyExchangeKey(serverKey, packet.data().getExchangeKey(), packet.data().getExchangeSignature())) {
+                LOGGER.error("Server exchange key is not signed by the server");
+                this.failureReason.setText("Invalid server response");
+                return;
+            }
+
             //setup encryption for server connection
             LOGGER.info("Initializing ciphers");
-            Cipher cipher = CryptoHelper.createRsaCipher();
-            cipher.init(Cipher.DECRYPT_MODE, accountData.privateKey());
-            byte[] encodedKey = cipher.doFinal(packet.data().getAuthData());
-            cipher.init(Cipher.ENCRYPT_MODE, serverKey);
-            byte[] output = cipher.doFinal(encodedKey);
-
-            // get the server connection session key
-            LOGGER.info("Decoding session key");
-            SecretKey sessionKey;
-            try {
-                sessionKey = CryptoHelper.decodeAesKey(encodedKey);
-            } catch (InvalidKeySpecException e) {
-                throw new IllegalStateException(e);
-            }
+            byte[] transcript = Handshake.transcript(packet.data().getAuthData(), exchange.getPublic(), packet.data().getExchangeKey());
+            SecretKey sessionKey = Handshake.deriveSessionKey(exchange.getPrivate(), packet.data().getExchangeKey(), transcript);
+            // prove our identity by signing the transcript (works with both RSA and Ed25519 keys)
+            byte[] signature = CryptoHelper.sign(accountData.privateKey(), transcript);
 
             LOGGER.info("Authenticating...");
             // send the client's data to the server
-            connect.send(ClientPacketTypes.AUTHENTICATE, new Authenticate(account.username(), output));
+            connect.send(ClientPacketTypes.AUTHENTICATE, new Authenticate(account.username(), signature));
 
             Packet<?> response = connect.receivePacket();
             // check the server's response
             if (response.type() == ServerPacketTypes.AUTHENTICATION_SUCCESS) {
                 LOGGER.info("Successfully authenticated to the server");
-                AuthenticationSuccess success = response.getAs(ServerPacketTypes.AUTHENTICATION_SUCCESS);
                 // initialize the client with the new account data and connection info
-                this.client.initialize(connect.encryptWith(sessionKey), aesKey, serverKey, publicKey, accountData, success.getUsers(), account.username(), address);
+                this.client.initialize(connect.encryptWith(sessionKey), aesKey, serverKey, publicKey, accountData, account.username(), address);
                 this.client.saveAccountData();
                 this.stage.close();
                 // OPEN the main window
@@ -383,7 +382,7 @@ private void connectToServer(InetSocketAddress address, Account account, SecretK
         } catch (IOException e) {
             LOGGER.error("Communication I/O error", e);
             this.failureReason.setText("Failed to connect to server: " + e.getMessage());
-        } catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException e) {
+        } catch (InvalidKeyException | SignatureException e) {
             LOGGER.error("Generic connection crypto failure", e);
             this.failureReason.setText("Encryption failure: " + e.getMessage());
         }
@@ -17,9 +17,11 @@
 package io.github.marcus8448.chat.client.ui.cell;
 
 import io.github.marcus8448.chat.client.Client;
+import io.github.marcus8448.chat.client.message.ReceivedMessage;
 import io.github.marcus8448.chat.client.parse.MarkdownParser;
+import io.github.marcus8448.chat.client.util.ImageCache;
 import io.github.marcus8448.chat.client.util.JfxUtil;
-import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
 import io.github.marcus8448.chat.core.api.message.ImageMessage;
 import io.github.marcus8448.chat.core.api.message.Message;
 import io.github.marcus8448.chat.core.api.message.MessageType;
@@ -39,18 +41,34 @@
 import javafx.scene.text.FontWeight;
 import javafx.scene.text.TextFlow;
 
+import java.io.ByteArrayInputStream;
 import java.nio.IntBuffer;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 
 /**
  * Graphical representation of a message
  */
-public class MessageCell extends ListCell<Message> {
+public class MessageCell extends ListCell<ReceivedMessage> {
     /**
      * Background to use when a message signature is invalid
      */
     private static final Background NOT_VERIFIED_BG = Background.fill(JfxUtil.NOT_VERIFIED_COLOUR);
+    /**
+     * Background to use while a message signature is being checked
+     */
+    private static final Background VERIFYING_BG = Background.fill(JfxUtil.VERIFYING_COLOUR);
+    private static final HexFormat HEX_FORMAT = HexFormat.of();
+    /**
+     * Tooltip shown over image previews
+     * Previews are generated by the server and are not signed, so they are not necessarily what the author sent
+     */
+    private static final Tooltip PREVIEW_TOOLTIP = new Tooltip("Unverified preview (generated by the server)\nClick to load the full image");
+    /**
+     * Border drawn around image previews, to mark them as unverified
+     */
+    private static final Border PREVIEW_BORDER = new Border(new BorderStroke(JfxUtil.NOT_VERIFIED_COLOUR, BorderStrokeStyle.DASHED, CornerRadii.EMPTY, BorderWidths.DEFAULT));
 
     private static final Font AUTHOR_FONT = Font.font(Font.getDefault().getFamily(), FontWeight.NORMAL, FontPosture.REGULAR, Font.getDefault().getSize() + 2);
 
@@ -83,7 +101,7 @@ public class MessageCell extends ListCell<Message> {
      */
     private final TextFlow textMessageContents = new TextFlow();
 
-    public MessageCell(ListView<Message> centerContent, Client client) {
+    public MessageCell(ListView<ReceivedMessage> centerContent, Client client) {
         super();
         this.client = client;
         this.setEditable(false);
@@ -112,35 +130,60 @@ public MessageCell(ListView<Message> centerContent, Client client) {
     }
 
     @Override
-    protected void updateItem(Message item, boolean empty) {
-        super.updateItem(item, empty);
-        if (!empty && item != null) { // check if there is any item
+    protected void updateItem(ReceivedMessage received, boolean empty) {
+        super.updateItem(received, empty);
+        if (!empty && received != null) { // check if there is any item
+            Message item = received.message();
             this.authorName.setBackground(Background.EMPTY); // reset signature verification background
             if (item.getType() == MessageType.TEXT) { // check if this is a text message
                 this.vBox.getChildren().remove(this.imageContents); // remove image contents (if exists)
                 //add text message contents if it doesn't already exist
                 if (!this.vBox.getChildren().contains(this.textMessageContents))
                     this.vBox.getChildren().add(this.textMessageContents);
-                // parse the text as markdown and insert it into the flow
-                MarkdownParser.parseMarkdown(this.textMessageContents, ((TextMessage) item).getMessage());
-            } else if (item.getType() == MessageType.IMAGE) {
+                // insert the (already parsed) text into the flow
+                MarkdownParser.render(this.textMessageContents, received.runs());
+            } else { // image message
                 this.vBox.getChildren().remove(this.textMessageContents); // remove text message contents from display
                 // delete any remaining text contents
                 this.textMessageContents.getChildren().clear();
                 // add image content if it doesn't already exist
                 if (!this.vBox.getChildren().contains(this.imageContents))
                     this.vBox.getChildren().add(this.imageContents);
-                Image image = new WritableImage(new PixelBuffer<>(((ImageMessage) item).width(), ((ImageMessage) item).height(), IntBuffer.wrap(((ImageMessage) item).image()), PixelFormat.getIntArgbPreInstance())); // load the image
-                // set the image data
-                this.imageContents.setBackground(new Background(new BackgroundImage(image, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT, BackgroundPosition.DEFAULT, BackgroundSize.DEFAULT)));
-                this.imageContents.setPrefWidth(image.getWidth());
-                this.imageContents.setPrefHeight(image.getHeight());
+                this.clearImage();
+                if (item.getType() == MessageType.ENCODED_IMAGE) {
+                    EncodedImageMessage image = (EncodedImageMessage) item;
+                    if (image.previewHash() != null && !this.isImageAvailable(image.hash())) {
+                        // show the preview first - the full image is only downloaded when it is clicked
+                        double scale = Math.min((double) EncodedImageMessage.PREVIEW_SIZE / image.width(), (double) EncodedImageMessage.PREVIEW_SIZE / image.height());
+                        this.imageContents.setPrefWidth(image.width() * scale); // reserve space for the preview while it is loaded
+                        this.imageContents.setPrefHeight(image.height() * scale);
+                        this.imageContents.setBorder(PREVIEW_BORDER); // only the full image is checked against the signed hash
+                        Tooltip.install(this.imageContents, PREVIEW_TOOLTIP);
+                        this.imageContents.setOnMouseClicked(e -> {
+                            this.clearImage();
+                            this.loadImage(received, image.hash());
+                        });
+                        this.loadImage(received, image.previewHash());
+                    } else {
+                        this.imageContents.setPrefWidth(image.width()); // reserve space for the image while it is loaded
+                        this.imageContents.setPrefHeight(image.height());
+                        this.loadImage(received, image.hash());
+                    }
+                } else {
+                    this.setImage(this.client.getImageCache().get(item, () -> wrapImage((ImageMessage) item))); // load the image
+                }
             }
             this.authorName.setText(this.client.getName(item.getAuthor())); // set the author text
             this.authorName.setOnMouseClicked(this::openAuthor); // set click handler
             this.setContextMenu(contextMenu); // set the content menu (since active)
-            String hash = CryptoHelper.sha256Hash(item.getAuthor().getPublicKey().getEncoded()); //get the key id of the author
-            if (item.verifySignature()) { // check that the message signature is valid
+            String hash = item.getAuthor().getFingerprint(); //get the key id of the author
+            if (received.isSending()) { // our own message, on its way to the server
+                this.authorName.setBackground(VERIFYING_BG); // set the grey background
+                this.authorName.setTooltip(new Tooltip("Sending..."));
+            } else if (received.isPending()) { // the signature is still being checked
+                this.authorName.setBackground(VERIFYING_BG); // set the grey background
+                this.authorName.setTooltip(new Tooltip("Verifying: " + hash));
+            } else if (received.isVerified()) { // check that the message signature is valid (checked when it was received)
                 if (this.client.isTrusted(item.getAuthor())) { // check if the author is trusted
                     this.authorName.setTooltip(new Tooltip(item.getAuthor().getLongIdName())); // set the tooltip to be the full id
                 } else {
@@ -157,19 +200,84 @@ protected void updateItem(Message item, boolean empty) {
             // remove all contents
             this.vBox.getChildren().remove(this.imageContents);
             this.vBox.getChildren().remove(this.textMessageContents);
-            this.imageContents.setBackground(Background.EMPTY);
+            this.clearImage();
             this.textMessageContents.getChildren().clear();
 
             this.setContextMenu(null); // remove context menu
         }
     }
 
+    /**
+     * Downloads an image (only if it hasn't been already) and displays it, unless the cell was reused in the meantime
+     *
+     * @param received the message the image belongs to
+     * @param hash     the hash of the image (or its preview)
+     */
+    private void loadImage(ReceivedMessage received, byte[] hash) {
+        String key = HEX_FORMAT.formatHex(hash);
+        ImageCache.CachedImage cached = this.client.getImageCache().getIfPresent(key);
+        if (cached != null) { // already decoded
+            this.setImage(cached);
+            return;
+        }
+        this.client.loadImage(hash, data -> {
+            if (this.getItem() == received) this.setImage(this.client.getImageCache().get(key, () -> decodeImage(data)));
+        });
+    }
+
+    /**
+     * @param hash the hash of an encoded image
+     * @return whether the image can be displayed without downloading it
+     */
+    private boolean isImageAvailable(byte[] hash) {
+        return this.client.getImageCache().getIfPresent(HEX_FORMAT.formatHex(hash)) != null || this.client.getLoadedImage(hash) != null;
+    }
+
+    /**
+     * Removes the displayed image and any preview click handler (and unverified marking)
+     */
+    private void clearImage() {
+        this.imageContents.setBackground(Background.EMPTY);
+        this.imageContents.setBorder(Border.EMPTY);
+        this.imageContents.setOnMouseClicked(null);
+        Tooltip.uninstall(this.imageContents, PREVIEW_TOOLTIP);
+    }
+
+    /**
+     * Displays an image in the image pane
+     *
+     * @param image the (cached) image to display
+     */
+    private void setImage(ImageCache.CachedImage image) {
+        this.imageContents.setBackground(image.background());
+        this.imageContents.setPrefWidth(image.image().getWidth());
+        this.imageContents.setPrefHeight(image.image().getHeight());
+    }
+
+    /**
+     * @param data an encoded (PNG) image
+     * @return the decoded image
+     */
+    private static Image decodeImage(byte[] data) {
+        return new Image(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Creates an image backed directly by the pixels of a raw image message, so that the pixels are not copied
+     *
+     * @param message the raw image message
+     * @return the image
+     */
+    private static Image wrapImage(ImageMessage message) {
+        return new WritableImage(new PixelBuffer<>(message.width(), message.height(), IntBuffer.wrap(message.image()), PixelFormat.getIntArgbPreInstance()));
+    }
+
     /**
      * Copies the author's ID to the clipboard
      */
     private void copyAuthorId() {
         Map<DataFormat, Object> data = new HashMap<>();
-        data.put(DataFormat.PLAIN_TEXT, CryptoHelper.sha256Hash(this.getItem().getAuthor().getPublicKey().getEncoded()));
+        data.put(DataFormat.PLAIN_TEXT, this.getItem().message().getAuthor().getFingerprint());
         Clipboard.getSystemClipboard().setContent(data);
     }
 
@@ -178,7 +286,7 @@ private void copyAuthorId() {
      */
     private void copyAuthorName() {
         Map<DataFormat, Object> data = new HashMap<>();
-        data.put(DataFormat.PLAIN_TEXT, this.getItem().getAuthor().getName());
+        data.put(DataFormat.PLAIN_TEXT, this.getItem().message().getAuthor().getName());
         Clipboard.getSystemClipboard().setContent(data);
     }
 
@@ -187,10 +295,21 @@ private void copyAuthorName() {
      */
     private void copyContents() {
         Map<DataFormat, Object> data = new HashMap<>();
-        if (this.getItem().getType() == MessageType.TEXT) {
-            data.put(DataFormat.PLAIN_TEXT, ((TextMessage) this.getItem()).getMessage());
+        if (this.getItem().message().getType() == MessageType.TEXT) {
+            data.put(DataFormat.PLAIN_TEXT, ((TextMessage) this.getItem().message()).getMessage());
+        } else if (this.getItem().message().getType() == MessageType.ENCODED_IMAGE) {
+            byte[] hash = ((EncodedImageMessage) this.getItem().message()).hash();
+            String key = HEX_FORMAT.formatHex(hash);
+            ImageCache.CachedImage image = this.client.getImageCache().getIfPresent(key);
+            if (image == null) {
+                byte[] encoded = this.client.getLoadedImage(hash);
+                if (encoded == null) return; // not downloaded yet
+                image = this.client.getImageCache().get(key, () -> decodeImage(encoded));
+            }
+            data.put(DataFormat.IMAGE, image.image());
         } else {
-            data.put(DataFormat.IMAGE, ((ImageMessage) this.getItem()).image());
+            Message message = this.getItem().message();
+            data.put(DataFormat.IMAGE, this.client.getImageCache().get(message, () -> wrapImage((ImageMessage) message)).image());
         }
         Clipboard.getSystemClipboard().setContent(data);
     }
@@ -199,13 +318,13 @@ private void copyContents() {
      * Opens a window describing the author of the message
      */
     private void openAuthor(MouseEvent unused) {
-        Message item = this.getItem();
-        if (item == null) return;
+        if (this.getItem() == null) return;
+        Message item = this.getItem().message();
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("User Information");
         alert.setHeaderText(item.getAuthor().getName());
         alert.setContentText("Nickname: " + (this.client.isTrusted(item.getAuthor()) ? this.client.getName(item.getAuthor()) : "N/A") + '\n'
-                + "Key ID: " + CryptoHelper.sha256Hash(item.getAuthor().getPublicKey().getEncoded()));
+                + "Key ID: " + item.getAuthor().getFingerprint());
         alert.show();
     }
 }
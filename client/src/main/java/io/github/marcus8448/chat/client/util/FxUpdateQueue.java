@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.util;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Collects updates posted from any thread, and runs them on the JavaFX application thread once per pulse (frame)
+ * Unlike {@link javafx.application.Platform#runLater(Runnable)} per update, a flood of updates costs at most one frame's worth of work
+ * Changes made by the updates can be batched, and applied in bulk after each pulse
+ */
+public class FxUpdateQueue implements Executor {
+    /**
+     * The maximum time spent running updates in a single pulse (the rest wait for the next pulse)
+     */
+    private static final long MAX_PULSE_NANOS = 8_000_000;
+
+    /**
+     * Updates that have not been run yet
+     */
+    private final Queue<Runnable> updates = new ConcurrentLinkedQueue<>();
+    /**
+     * Run after each pulse that ran any updates
+     */
+    private final Runnable afterUpdates;
+    /**
+     * Runs the updates every pulse
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            FxUpdateQueue.this.runUpdates();
+        }
+    };
+
+    /**
+     * Creates a new update queue
+     *
+     * @param afterUpdates run after each pulse that ran any updates (e.g. to apply batched changes)
+     */
+    public FxUpdateQueue(Runnable afterUpdates) {
+        this.afterUpdates = afterUpdates;
+    }
+
+    /**
+     * Queues an update to be run on the next pulse
+     * Updates are run in the order they were posted
+     *
+     * @param update the update
+     */
+    @Override
+    public void execute(Runnable update) {
+        this.updates.add(update);
+    }
+
+    /**
+     * Starts running updates. Must be called on the application thread
+     */
+    public void start() {
+        this.timer.start();
+    }
+
+    /**
+     * Stops running updates. Must be called on the application thread
+     */
+    public void stop() {
+        this.timer.stop();
+    }
+
+    private void runUpdates() {
+        if (this.updates.isEmpty()) return;
+        long deadline = System.nanoTime() + MAX_PULSE_NANOS;
+        Runnable update;
+        while ((update = this.updates.poll()) != null) {
+            update.run();
+            if (System.nanoTime() > deadline) break; // keep the UI responsive
+        }
+        this.afterUpdates.run();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.client.util;
+
+import javafx.scene.image.Image;
+import javafx.scene.layout.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps decoded images (and their backgrounds) so that they are not decoded again every time a cell is rebound
+ * Images are kept up to a byte budget (4 bytes per pixel), least recently used first
+ * Should only be accessed from the application thread
+ */
+public class ImageCache {
+    /**
+     * The maximum number of (decoded) bytes kept across all images
+     */
+    private final long maxBytes;
+    /**
+     * Map of key (image hash or message) -> decoded image, ordered from least to most recently used
+     */
+    private final LinkedHashMap<Object, CachedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The number of (decoded) bytes kept across all images
+     */
+    private long totalBytes = 0;
+
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a decoded image, decoding it if it is not cached
+     *
+     * @param key     the key of the image - the hash of an encoded image, or the message of a raw image
+     * @param decoder decodes the image
+     * @return the decoded image
+     */
+    public CachedImage get(Object key, Supplier<Image> decoder) {
+        CachedImage cached = this.images.get(key);
+        if (cached == null) {
+            Image image = decoder.get();
+            cached = new CachedImage(image, new Background(new BackgroundImage(image, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT, BackgroundPosition.DEFAULT, BackgroundSize.DEFAULT)));
+            if (!image.isError()) { // try again next time if the image is broken
+                this.images.put(key, cached);
+                this.totalBytes += sizeOf(image);
+                this.evict(key);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @param key the key of the image
+     * @return the decoded image, or {@code null} if it is not cached
+     */
+    public @Nullable CachedImage getIfPresent(Object key) {
+        return this.images.get(key);
+    }
+
+    /**
+     * Removes all images
+     */
+    public void clear() {
+        this.images.clear();
+        this.totalBytes = 0;
+    }
+
+    /**
+     * Removes the least recently used images until the cache fits its budget
+     *
+     * @param keep the image that was just added (never removed, even if it alone exceeds the budget)
+     */
+    private void evict(Object keep) {
+        Iterator<Map.Entry<Object, CachedImage>> iterator = this.images.entrySet().iterator();
+        while (this.totalBytes > this.maxBytes && iterator.hasNext()) {
+            Map.Entry<Object, CachedImage> entry = iterator.next();
+            if (entry.getKey().equals(keep)) continue;
+            this.totalBytes -= sizeOf(entry.getValue().image());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the approximate memory used by a decoded image
+     */
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    }
+
+    /**
+     * A decoded image, and a background that displays it
+     *
+     * @param image      the decoded image
+     * @param background a background containing the image
+     */
+    public record CachedImage(Image image, Background background) {
+    }
+}
@@ -86,6 +86,10 @@ public Account fromString(String string) {
      * Colour to use for unverified messages
      */
     public static final Paint NOT_VERIFIED_COLOUR = Paint.valueOf("#e87474");
+    /**
+     * Colour to use for messages that are still being verified
+     */
+    public static final Paint VERIFYING_COLOUR = Paint.valueOf("#d8d8d8");
     @ApiStatus.Internal
     private static final Text TEXT_HOLDER = new Text();
 
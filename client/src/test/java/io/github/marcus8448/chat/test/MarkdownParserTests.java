@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.test;
+
+import io.github.marcus8448.chat.client.parse.MarkdownParser;
+import io.github.marcus8448.chat.client.parse.StyledRun;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MarkdownParserTests {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The size of the pathological inputs (60KB)
+     */
+    private static final int LARGE_INPUT = 60 * 1024;
+
+    @Test
+    void testPlainText() {
+        assertEquals(List.of(new StyledRun("hello world", false, false, false)), MarkdownParser.tokenize("hello world"));
+    }
+
+    @Test
+    void testFormatting() {
+        assertEquals(List.of(
+                new StyledRun("a ", false, false, false),
+                new StyledRun("bold", true, false, false),
+                new StyledRun(" ", false, false, false),
+                new StyledRun("italic", false, true, false),
+                new StyledRun(" ", false, false, false),
+                new StyledRun("struck", false, false, true)
+        ), MarkdownParser.tokenize("a **bold** *italic* ~~struck~~"));
+    }
+
+    @Test
+    void testUnmatchedMarker() {
+        assertEquals(List.of(
+                new StyledRun("italic", false, true, false),
+                new StyledRun(" *", false, false, false)
+        ), MarkdownParser.tokenize("*italic* *"));
+    }
+
+    @Test
+    void testEscapedMarker() {
+        assertEquals(List.of(new StyledRun("\\*not italic*", false, false, false)), MarkdownParser.tokenize("\\*not italic*"));
+    }
+
+    @Test
+    void testPathologicalInputs() {
+        List<StyledRun> italics = MarkdownParser.tokenize("*a".repeat(LARGE_INPUT / 2));
+        assertEquals(LARGE_INPUT / 2, italics.size());
+        for (int i = 0; i < italics.size(); i++) {
+            assertEquals(new StyledRun("a", false, i % 2 == 0, false), italics.get(i));
+        }
+
+        List<StyledRun> bold = MarkdownParser.tokenize("**a".repeat(LARGE_INPUT / 3));
+        assertEquals(LARGE_INPUT / 3, bold.size());
+        for (int i = 0; i < bold.size(); i++) {
+            assertEquals(new StyledRun("a", i % 2 == 0, false, false), bold.get(i));
+        }
+
+        String escapes = "\\*".repeat(LARGE_INPUT / 2);
+        assertEquals(List.of(new StyledRun(escapes, false, false, false)), MarkdownParser.tokenize(escapes));
+    }
+
+    /**
+     * Not part of the normal test run (see the benchmark task)
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkPathologicalInputs() {
+        benchmark("stars", "*".repeat(LARGE_INPUT));
+        benchmark("tildes", "~".repeat(LARGE_INPUT));
+        benchmark("alternating italics", "*a".repeat(LARGE_INPUT / 2));
+        benchmark("alternating bold", "**a".repeat(LARGE_INPUT / 3));
+        benchmark("mixed", "**a*b~~c".repeat(LARGE_INPUT / 8));
+        benchmark("escapes", "\\*".repeat(LARGE_INPUT / 2));
+    }
+
+    /**
+     * Tokenizes a large input several times, and logs the average time taken
+     */
+    private static void benchmark(String name, String text) {
+        MarkdownParser.tokenize(text); // warm up
+        long start = System.nanoTime();
+        int runs = 0;
+        for (int i = 0; i < 10; i++) {
+            runs = MarkdownParser.tokenize(text).size();
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0 / 10;
+        LOGGER.info("{} ({} chars, {} runs): {}ms", name, text.length(), runs, String.format("%.3f", millis));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.test;
+
+import io.github.marcus8448.chat.client.message.MessageCache;
+import io.github.marcus8448.chat.core.api.account.User;
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.message.MessageAuthor;
+import io.github.marcus8448.chat.core.api.message.TextMessage;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageCacheTests {
+    private static final Identifier CHANNEL = Identifier.create("general");
+    private static final long HISTORY_ID = 1234;
+    private static final MessageAuthor AUTHOR = new User(-1, Identifier.create("tester"), CryptoHelper.generateEd25519KeyPair().getPublic(), null);
+
+    private Path directory;
+    private SecretKey key;
+
+    @BeforeEach
+    void initialize() throws IOException {
+        this.directory = Files.createTempDirectory("chat-cache");
+        this.key = CryptoHelper.generateAesKey();
+    }
+
+    @Test
+    void testReload() throws Exception {
+        this.writePages(1024 * 1024, 3, 10);
+        assertMessages(0, 30, this.load(1024 * 1024));
+    }
+
+    @Test
+    void testTruncatedLog() throws Exception {
+        this.writePages(1024 * 1024, 3, 10);
+        truncate(this.directory.resolve("general.log"), 5); // the last chunk was only partially written
+
+        MessageCache cache = new MessageCache(this.directory, this.key, 1024 * 1024);
+        assertMessages(0, 20, load(cache));
+        cache.add(CHANNEL, HISTORY_ID, 20, 29, messages(20, 10)); // the lost chunk can be cached again
+        assertMessages(0, 30, load(cache));
+        cache.close();
+    }
+
+    @Test
+    void testTruncatedIndex() throws Exception {
+        this.writePages(1024 * 1024, 3, 10);
+        truncate(this.directory.resolve("general.idx"), 3); // an index entry was only partially written
+        assertMessages(0, 30, this.load(1024 * 1024));
+    }
+
+    @Test
+    void testOutdatedIndex() throws Exception {
+        this.writePages(1024 * 1024, 3, 10);
+        truncate(this.directory.resolve("general.idx"), 16); // the last index entry was never written
+        assertMessages(0, 30, this.load(1024 * 1024));
+    }
+
+    @Test
+    void testEmptyIndex() throws Exception {
+        this.writePages(1024 * 1024, 3, 10);
+        truncate(this.directory.resolve("general.idx"), Files.size(this.directory.resolve("general.idx"))); // eviction was interrupted
+        assertMessages(0, 30, this.load(1024 * 1024));
+    }
+
+    @Test
+    void testEviction() throws Exception {
+        this.writePages(4096, 40, 5);
+        assertTrue(Files.size(this.directory.resolve("general.log")) <= 4096);
+        MessageHistory page = this.load(4096);
+        assertNotNull(page);
+        assertTrue(page.getFirstSequence() > 0); // the oldest messages were evicted
+        assertMessages(page.getFirstSequence(), 200 - page.getFirstSequence(), page); // the newest messages are kept
+        assertMessages(page.getFirstSequence(), 200 - page.getFirstSequence(), this.load(4096)); // and the index matches the log
+    }
+
+    /**
+     * Caches some pages of messages (one chunk each), and closes the cache
+     */
+    private void writePages(long maxBytes, int pages, int size) throws Exception {
+        MessageCache cache = new MessageCache(this.directory, this.key, maxBytes);
+        for (int i = 0; i < pages; i++) {
+            cache.add(CHANNEL, HISTORY_ID, i * size, pages * size - 1, messages(i * size, size));
+        }
+        load(cache); // wait for the writes to finish
+        cache.close();
+    }
+
+    /**
+     * Opens the cache again and reads the channel's messages
+     */
+    private MessageHistory load(long maxBytes) throws Exception {
+        MessageCache cache = new MessageCache(this.directory, this.key, maxBytes);
+        MessageHistory page = load(cache);
+        cache.close();
+        return page;
+    }
+
+    private static MessageHistory load(MessageCache cache) throws Exception {
+        CompletableFuture<List<MessageHistory>> future = new CompletableFuture<>();
+        cache.load(List.of(CHANNEL), 1000, future::complete);
+        List<MessageHistory> pages = future.get(10, TimeUnit.SECONDS);
+        return pages.isEmpty() ? null : pages.get(0);
+    }
+
+    private static List<Message> messages(int first, int count) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            messages.add(Message.text(i * 1000L, AUTHOR, "message " + i, new byte[64]));
+        }
+        return messages;
+    }
+
+    private static void assertMessages(int first, int count, MessageHistory page) {
+        assertNotNull(page);
+        assertEquals(HISTORY_ID, page.getHistoryId());
+        assertEquals(first, page.getFirstSequence());
+        assertEquals(count, page.getMessages().size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("message " + (first + i), ((TextMessage) page.getMessages().get(i)).getMessage());
+        }
+    }
+
+    private static void truncate(Path file, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+}
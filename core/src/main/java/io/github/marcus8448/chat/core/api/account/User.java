@@ -21,28 +21,45 @@
 import io.github.marcus8448.chat.core.api.misc.Identifier;
 import org.jetbrains.annotations.Nullable;
 
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 
 /**
  * A client connected to a chat server
  *
- * @param sessionId the unique integer id identifying this client - changes upon disconnect/reconnect
- * @param username  the username of the user - can be changed at anytime
- * @param key       the public key (RSA) of the user - the permanent ID of the user
- * @param icon      the user's profile picture (NYI)
+ * @param sessionId   the unique integer id identifying this client - changes upon disconnect/reconnect
+ * @param username    the username of the user - can be changed at anytime
+ * @param key         the public key (RSA or Ed25519) of the user - the permanent ID of the user
+ *                    (null if it has not been fetched yet - presence updates only carry the fingerprint)
+ * @param icon        the user's profile picture (NYI)
+ * @param fingerprint the SHA-256 hash of the user's public key - computed once on creation
  */
-public record User(int sessionId, Identifier username, RSAPublicKey key,
-                   byte @Nullable [] icon) implements MessageAuthor {
+public record User(int sessionId, Identifier username, @Nullable PublicKey key,
+                   byte @Nullable [] icon, String fingerprint) implements MessageAuthor {
+    public User(int sessionId, Identifier username, PublicKey key, byte @Nullable [] icon) {
+        this(sessionId, username, key, icon, CryptoHelper.sha256Hash(key.getEncoded()));
+    }
+
+    /**
+     * @param key the user's public key (which must match the fingerprint)
+     * @return a copy of this user, with the given key
+     */
+    public User withKey(PublicKey key) {
+        return new User(this.sessionId, this.username, key, this.icon, this.fingerprint);
+    }
+
     @Override
     public String getShortIdName() {
-        String hash = CryptoHelper.sha256Hash(this.key.getEncoded());
-        return this.username() + " [" + hash.substring(0, 32) + "]";
+        return this.username() + " [" + this.fingerprint.substring(0, 32) + "]";
     }
 
     @Override
     public String getLongIdName() {
-        String hash = CryptoHelper.sha256Hash(this.key.getEncoded());
-        return this.username() + " [" + hash + "]";
+        return this.username() + " [" + this.fingerprint + "]";
+    }
+
+    @Override
+    public String getFingerprint() {
+        return this.fingerprint;
     }
 
     @Override
@@ -51,7 +68,7 @@ public String getName() {
     }
 
     @Override
-    public RSAPublicKey getPublicKey() {
+    public @Nullable PublicKey getPublicKey() {
         return this.key;
     }
 }
@@ -28,68 +28,438 @@
 import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Helper class for cryptographic operations
- * May not be 100% thread safe.
+ * Primitives that are not thread safe (digests, ciphers, signatures, key factories) are pooled,
+ * so every method here may be called from any thread.
+ * Nothing is created until it is first used, so loading this class never touches the system entropy pool.
  */
 public class CryptoHelper {
     /**
-     * Generates AES keys
+     * System property that selects the {@link SecureRandom} algorithm used for key generation.
+     * Defaults to a non-blocking DRBG (seeded once); {@code strong} selects {@link SecureRandom#getInstanceStrong()},
+     * which may block on low-entropy systems
      */
-    public static final KeyGenerator AES_KEY_GENERATOR;
+    public static final String SECURE_RANDOM_PROPERTY = "chat.secureRandom";
     /**
-     * Generates RSA key pairs (private/public)
+     * RSA key size, in bits
      */
-    public static final KeyPairGenerator RSA_KEY_GENERATOR;
+    public static final int RSA_KEY_SIZE = 4096;
     /**
-     * Reconstructs RSA key pairs from encoded form
+     * Algorithm name of Ed25519 identity keys
      */
-    public static final KeyFactory RSA_KEY_FACTORY;
+    public static final String ED25519 = "Ed25519";
     /**
-     * Generates keys based on a password and a salt
-     * Used to encrypt sensitive config data
+     * Algorithm name of (ephemeral) key agreement keys
      */
-    private static final SecretKeyFactory PBKDF2_SECRET_KEY_FACTORY;
+    public static final String X25519 = "X25519";
+    /**
+     * DER encoding of the Ed25519 algorithm identifier (OID 1.3.101.112), as found in X.509 and PKCS#8 encoded keys
+     */
+    private static final byte[] ED25519_OID = {0x06, 0x03, 0x2B, 0x65, 0x70};
+    /**
+     * The maximum number of idle instances kept by each pool
+     */
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
     /**
      * Calculates the SHA-256 digest of arbitrary byte arrays
-     * Used for key IDs
+     * Used for key IDs and image hashes
      */
-    private static final MessageDigest SHA256_DIGEST = createSha256Digest();
+    public static final CryptoPool<MessageDigest> SHA256_DIGESTS = new CryptoPool<>(CryptoHelper::createSha256Digest, MessageDigest::reset, POOL_SIZE);
+    /**
+     * SHA256withRSA signatures
+     * Must be initialized (initSign/initVerify) after being acquired
+     */
+    public static final CryptoPool<Signature> RSA_SIGNATURES = new CryptoPool<>(CryptoHelper::createRsaSignature, signature -> {
+    }, POOL_SIZE);
+    /**
+     * Ed25519 signatures
+     * Must be initialized (initSign/initVerify) after being acquired
+     */
+    public static final CryptoPool<Signature> ED25519_SIGNATURES = new CryptoPool<>(CryptoHelper::createEd25519Signature, signature -> {
+    }, POOL_SIZE);
+    /**
+     * RSA ciphers
+     * Must be initialized after being acquired
+     */
+    public static final CryptoPool<Cipher> RSA_CIPHERS = new CryptoPool<>(CryptoHelper::createRsaCipher, cipher -> {
+    }, POOL_SIZE);
+    /**
+     * Reconstructs RSA keys from encoded form
+     */
+    private static final CryptoPool<KeyFactory> RSA_KEY_FACTORIES = new CryptoPool<>(CryptoHelper::createRsaKeyFactory, factory -> {
+    }, POOL_SIZE);
+    /**
+     * Reconstructs Ed25519 keys from encoded form
+     */
+    private static final CryptoPool<KeyFactory> ED25519_KEY_FACTORIES = new CryptoPool<>(CryptoHelper::createEd25519KeyFactory, factory -> {
+    }, POOL_SIZE);
+    /**
+     * Reconstructs X25519 keys from encoded form
+     */
+    private static final CryptoPool<KeyFactory> X25519_KEY_FACTORIES = new CryptoPool<>(() -> createKeyFactory(X25519), factory -> {
+    }, POOL_SIZE);
+    /**
+     * X25519 key agreements
+     * Must be initialized with a private key after being acquired
+     */
+    private static final CryptoPool<KeyAgreement> X25519_KEY_AGREEMENTS = new CryptoPool<>(CryptoHelper::createX25519KeyAgreement, agreement -> {
+    }, POOL_SIZE);
+    /**
+     * HMAC-SHA256 instances, for HKDF
+     * Must be initialized with a key after being acquired
+     */
+    private static final CryptoPool<Mac> HMAC_SHA256 = new CryptoPool<>(CryptoHelper::createHmacSha256, Mac::reset, POOL_SIZE);
+    /**
+     * Generates AES (256-bit) keys
+     */
+    private static final CryptoPool<KeyGenerator> AES_KEY_GENERATORS = new CryptoPool<>(CryptoHelper::createAesKeyGenerator, generator -> {
+    }, POOL_SIZE);
 
-    static {
+    /**
+     * @return the shared source of randomness for key generation, created on first use
+     */
+    public static SecureRandom secureRandom() {
+        return SecureRandomHolder.INSTANCE;
+    }
+
+    /**
+     * Generates a new RSA key pair on the calling thread
+     * This is slow (can take several seconds), so prefer {@link #generateRsaKeyPairAsync()} on UI threads.
+     *
+     * @return a new RSA key pair
+     */
+    public static KeyPair generateRsaKeyPair() {
         try {
-            AES_KEY_GENERATOR = KeyGenerator.getInstance("AES");
-            AES_KEY_GENERATOR.init(256, SecureRandom.getInstanceStrong());
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(RSA_KEY_SIZE, secureRandom());
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
 
-            RSA_KEY_FACTORY = KeyFactory.getInstance("RSA");
-            RSA_KEY_GENERATOR = KeyPairGenerator.getInstance("RSA");
-            RSA_KEY_GENERATOR.initialize(4096, SecureRandom.getInstanceStrong());
+    /**
+     * Generates a new Ed25519 key pair
+     * Unlike RSA, this is fast enough to do on any thread.
+     *
+     * @return a new Ed25519 key pair
+     */
+    public static KeyPair generateEd25519KeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(ED25519);
+            generator.initialize(255, secureRandom());
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
 
-            PBKDF2_SECRET_KEY_FACTORY = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+    /**
+     * Generates a new X25519 key pair, for key agreement
+     *
+     * @return a new X25519 key pair
+     */
+    public static KeyPair generateX25519KeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(X25519);
+            generator.initialize(255, secureRandom());
+            return generator.generateKeyPair();
         } catch (NoSuchAlgorithmException e) {
             throw new UnsupportedOperationException(e);
         }
     }
 
+    /**
+     * Decodes an X.509 encoded X25519 public key
+     *
+     * @param bytes the encoded key
+     * @return the decoded key
+     */
+    public static PublicKey decodeX25519PublicKey(byte[] bytes) throws InvalidKeySpecException {
+        KeyFactory factory = X25519_KEY_FACTORIES.acquire();
+        try {
+            return factory.generatePublic(new X509EncodedKeySpec(bytes));
+        } finally {
+            X25519_KEY_FACTORIES.release(factory);
+        }
+    }
+
+    /**
+     * Performs an X25519 key agreement
+     *
+     * @param privateKey our private key
+     * @param publicKey  the other party's public key
+     * @return the 32-byte shared secret
+     */
+    public static byte[] x25519(PrivateKey privateKey, PublicKey publicKey) throws InvalidKeyException {
+        KeyAgreement agreement = X25519_KEY_AGREEMENTS.acquire();
+        try {
+            agreement.init(privateKey);
+            agreement.doPhase(publicKey, true);
+            return agreement.generateSecret();
+        } finally {
+            X25519_KEY_AGREEMENTS.release(agreement);
+        }
+    }
+
+    /**
+     * Derives key material with HKDF-SHA256 (RFC 5869)
+     *
+     * @param salt   non-secret random value (may be empty)
+     * @param ikm    input keying material, such as a shared secret
+     * @param info   context that binds the output to its use
+     * @param length the number of bytes to output (at most 8160)
+     * @return the derived key material
+     */
+    public static byte[] hkdfSha256(byte[] salt, byte[] ikm, byte[] info, int length) {
+        if (length > 255 * 32) throw new IllegalArgumentException("HKDF output too long: " + length);
+        Mac mac = HMAC_SHA256.acquire();
+        try {
+            // extract
+            mac.init(new SecretKeySpec(salt.length == 0 ? new byte[32] : salt, "HmacSHA256"));
+            byte[] prk = mac.doFinal(ikm);
+            // expand
+            mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+            byte[] output = new byte[length];
+            byte[] block = new byte[0];
+            for (int i = 0, pos = 0; pos < length; i++) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) (i + 1));
+                block = mac.doFinal();
+                int len = Math.min(block.length, length - pos);
+                System.arraycopy(block, 0, output, pos, len);
+                pos += len;
+            }
+            return output;
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            HMAC_SHA256.release(mac);
+        }
+    }
+
+    /**
+     * Calculates the HMAC-SHA256 of the given data
+     *
+     * @param key  the MAC key
+     * @param data the data to authenticate (concatenated)
+     * @return the 32-byte MAC
+     */
+    public static byte[] hmacSha256(byte[] key, byte[]... data) {
+        Mac mac = HMAC_SHA256.acquire();
+        try {
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            for (byte[] bytes : data) {
+                mac.update(bytes);
+            }
+            return mac.doFinal();
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            HMAC_SHA256.release(mac);
+        }
+    }
+
+    /**
+     * Generates a new RSA key pair on a background thread
+     *
+     * @return a future that is completed with the key pair
+     */
+    public static CompletableFuture<KeyPair> generateRsaKeyPairAsync() {
+        return CompletableFuture.supplyAsync(CryptoHelper::generateRsaKeyPair, r -> {
+            Thread thread = new Thread(r, "RSA Key Generator");
+            thread.setDaemon(true); // don't keep the app open
+            thread.start();
+        });
+    }
+
+    /**
+     * Calculates the SHA-256 digest of the given data
+     *
+     * @param data the data to hash
+     * @return the 32-byte digest
+     */
+    public static byte[] sha256(byte[] data) {
+        MessageDigest digest = SHA256_DIGESTS.acquire();
+        try {
+            return digest.digest(data);
+        } finally {
+            SHA256_DIGESTS.release(digest);
+        }
+    }
+
     public static String sha256Hash(byte[] key) {
-        return Utils.toHexString(SHA256_DIGEST.digest(key)).toUpperCase(Locale.ROOT);
+        return Utils.toHexString(sha256(key)).toUpperCase(Locale.ROOT);
     }
 
     public static RSAPrivateCrtKey decodeRsaPrivateKey(byte[] bytes) throws InvalidKeySpecException {
-        return (RSAPrivateCrtKey) RSA_KEY_FACTORY.generatePrivate(new PKCS8EncodedKeySpec(bytes));
+        KeyFactory factory = RSA_KEY_FACTORIES.acquire();
+        try {
+            return (RSAPrivateCrtKey) factory.generatePrivate(new PKCS8EncodedKeySpec(bytes));
+        } finally {
+            RSA_KEY_FACTORIES.release(factory);
+        }
     }
 
     public static RSAPublicKey decodeRsaPublicKey(byte[] bytes) throws InvalidKeySpecException {
-        return (RSAPublicKey) RSA_KEY_FACTORY.generatePublic(new X509EncodedKeySpec(bytes));
+        return decodeRsaPublicKey(new X509EncodedKeySpec(bytes));
+    }
+
+    public static RSAPublicKey decodeRsaPublicKey(KeySpec spec) throws InvalidKeySpecException {
+        KeyFactory factory = RSA_KEY_FACTORIES.acquire();
+        try {
+            return (RSAPublicKey) factory.generatePublic(spec);
+        } finally {
+            RSA_KEY_FACTORIES.release(factory);
+        }
+    }
+
+    /**
+     * Decodes an X.509 encoded identity key (RSA or Ed25519)
+     *
+     * @param bytes the encoded key
+     * @return the decoded key
+     */
+    public static PublicKey decodePublicKey(byte[] bytes) throws InvalidKeySpecException {
+        if (!isEd25519(bytes)) return decodeRsaPublicKey(bytes);
+        KeyFactory factory = ED25519_KEY_FACTORIES.acquire();
+        try {
+            return factory.generatePublic(new X509EncodedKeySpec(bytes));
+        } finally {
+            ED25519_KEY_FACTORIES.release(factory);
+        }
+    }
+
+    /**
+     * Decodes a PKCS#8 encoded identity key (RSA or Ed25519)
+     *
+     * @param bytes the encoded key
+     * @return the decoded key
+     */
+    public static PrivateKey decodePrivateKey(byte[] bytes) throws InvalidKeySpecException {
+        if (!isEd25519(bytes)) return decodeRsaPrivateKey(bytes);
+        KeyFactory factory = ED25519_KEY_FACTORIES.acquire();
+        try {
+            return factory.generatePrivate(new PKCS8EncodedKeySpec(bytes));
+        } finally {
+            ED25519_KEY_FACTORIES.release(factory);
+        }
+    }
+
+    /**
+     * Checks the algorithm identifier of an encoded key, which is within the first few bytes in both X.509 and PKCS#8
+     */
+    private static boolean isEd25519(byte[] encoded) {
+        int end = Math.min(encoded.length, 24) - ED25519_OID.length;
+        for (int i = 0; i <= end; i++) {
+            if (Arrays.equals(encoded, i, i + ED25519_OID.length, ED25519_OID, 0, ED25519_OID.length)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param key a public or private identity key
+     * @return the pool of signatures that work with the given key
+     */
+    public static CryptoPool<Signature> signatures(Key key) {
+        return ED25519.equalsIgnoreCase(key.getAlgorithm()) || "EdDSA".equalsIgnoreCase(key.getAlgorithm()) ? ED25519_SIGNATURES : RSA_SIGNATURES;
+    }
+
+    /**
+     * Signs the given data with a pooled signature
+     *
+     * @param key  the private key to sign with (RSA or Ed25519)
+     * @param data the data to sign
+     * @return the signature
+     */
+    public static byte[] sign(PrivateKey key, byte[]... data) throws InvalidKeyException, SignatureException {
+        CryptoPool<Signature> pool = signatures(key);
+        Signature signature = pool.acquire();
+        try {
+            signature.initSign(key);
+            for (byte[] bytes : data) {
+                signature.update(bytes);
+            }
+            return signature.sign();
+        } finally {
+            pool.release(signature);
+        }
+    }
+
+    /**
+     * Verifies a signature with a pooled signature
+     *
+     * @param key    the public key to verify with (RSA or Ed25519)
+     * @param signed the signature to check
+     * @param data   the data that was signed
+     * @return whether the signature is valid
+     */
+    public static boolean verify(PublicKey key, byte[] signed, byte[]... data) {
+        CryptoPool<Signature> pool = signatures(key);
+        Signature signature = pool.acquire();
+        try {
+            signature.initVerify(key);
+            for (byte[] bytes : data) {
+                signature.update(bytes);
+            }
+            return signature.verify(signed);
+        } catch (InvalidKeyException | SignatureException e) {
+            return false;
+        } finally {
+            pool.release(signature);
+        }
+    }
+
+    /**
+     * Generates a new random AES key
+     *
+     * @return a new 256-bit AES key
+     */
+    public static SecretKey generateAesKey() {
+        KeyGenerator generator = AES_KEY_GENERATORS.acquire();
+        try {
+            return generator.generateKey();
+        } finally {
+            AES_KEY_GENERATORS.release(generator);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts a single block of data with RSA, using a pooled cipher
+     *
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key  the key to use
+     * @param data the data to process
+     * @return the processed data
+     */
+    public static byte[] rsa(int mode, Key key, byte[] data) throws InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        Cipher cipher = RSA_CIPHERS.acquire();
+        try {
+            cipher.init(mode, key);
+            return cipher.doFinal(data);
+        } finally {
+            RSA_CIPHERS.release(cipher);
+        }
     }
 
     @Contract("_, _ -> new")
     public static @NotNull SecretKey generateUserPassKey(char[] password, String username) throws InvalidKeySpecException {
-        return decodeAesKey(CryptoHelper.PBKDF2_SECRET_KEY_FACTORY.generateSecret(new PBEKeySpec(password, username.getBytes(StandardCharsets.UTF_8), 65536, 256)).getEncoded());
+        SecretKeyFactory factory; // not used often enough to warrant a pool
+        try {
+            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+        return decodeAesKey(factory.generateSecret(new PBEKeySpec(password, username.getBytes(StandardCharsets.UTF_8), 65536, 256)).getEncoded());
     }
 
     public static Cipher createAesCipher() {
@@ -100,6 +470,20 @@ public static Cipher createAesCipher() {
         }
     }
 
+    /**
+     * Creates an authenticated AES cipher (GCM mode)
+     * Each encryption must be initialized with a new random nonce
+     *
+     * @return a new cipher instance
+     */
+    public static Cipher createAesGcmCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
     public static Cipher createRsaCipher() {
         try {
             return Cipher.getInstance("RSA");
@@ -116,6 +500,74 @@ public static Signature createRsaSignature() {
         }
     }
 
+    /**
+     * Creates a signature instance that works with the given key
+     *
+     * @param key a public or private identity key
+     * @return a new signature instance
+     */
+    public static Signature createSignature(Key key) {
+        return signatures(key) == ED25519_SIGNATURES ? createEd25519Signature() : createRsaSignature();
+    }
+
+    private static KeyFactory createKeyFactory(String algorithm) {
+        try {
+            return KeyFactory.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static KeyAgreement createX25519KeyAgreement() {
+        try {
+            return KeyAgreement.getInstance(X25519);
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static Mac createHmacSha256() {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static Signature createEd25519Signature() {
+        try {
+            return Signature.getInstance(ED25519);
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static KeyFactory createEd25519KeyFactory() {
+        try {
+            return KeyFactory.getInstance(ED25519);
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static KeyFactory createRsaKeyFactory() {
+        try {
+            return KeyFactory.getInstance("RSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static KeyGenerator createAesKeyGenerator() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256, secureRandom());
+            return generator;
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
     private static MessageDigest createSha256Digest() {
         try {
             return MessageDigest.getInstance("SHA256");
@@ -124,8 +576,30 @@ private static MessageDigest createSha256Digest() {
         }
     }
 
+    private static SecureRandom createSecureRandom() {
+        String algorithm = System.getProperty(SECURE_RANDOM_PROPERTY, "DRBG");
+        try {
+            if (algorithm.equalsIgnoreCase("strong")) {
+                return SecureRandom.getInstanceStrong();
+            } else if (algorithm.equalsIgnoreCase("DRBG")) {
+                // seeded once from the system, then never blocks
+                return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+            }
+            return SecureRandom.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new UnsupportedOperationException("Unknown secure random algorithm: " + algorithm, e);
+        }
+    }
+
     @Contract(value = "_ -> new", pure = true)
     public static @NotNull SecretKey decodeAesKey(byte[] encodedKey) throws InvalidKeySpecException {
         return new SecretKeySpec(encodedKey, "AES");
     }
+
+    /**
+     * Lazily creates the secure random instance (on first access of the holder class)
+     */
+    private static final class SecureRandomHolder {
+        private static final SecureRandom INSTANCE = createSecureRandom();
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.crypto;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A pool of reusable cryptographic primitives (digests, ciphers, signatures...), which are not thread safe themselves.
+ * Instances are created on demand, so acquiring never blocks. Released instances are reset and kept for reuse,
+ * up to a maximum number of idle instances.
+ *
+ * @param <T> the type of primitive
+ */
+public final class CryptoPool<T> {
+    /**
+     * Instances that are ready to be reused
+     */
+    private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+    /**
+     * Approximate number of idle instances (queue size is O(n))
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+    /**
+     * Creates new instances when no idle instance is available
+     */
+    private final Supplier<T> factory;
+    /**
+     * Returns an instance to its initial state before it is reused
+     */
+    private final Consumer<T> reset;
+    /**
+     * The maximum number of idle instances to keep
+     */
+    private final int maxIdle;
+
+    /**
+     * Creates a new pool
+     *
+     * @param factory creates new instances
+     * @param reset   resets an instance once it is released
+     * @param maxIdle the maximum number of idle instances to keep
+     */
+    public CryptoPool(Supplier<T> factory, Consumer<T> reset, int maxIdle) {
+        this.factory = factory;
+        this.reset = reset;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes an instance from the pool, creating one if none are idle.
+     * The instance must be released once the caller is done with it.
+     *
+     * @return an instance that is exclusively owned by the caller
+     */
+    public @NotNull T acquire() {
+        T instance = this.idle.poll();
+        if (instance == null) return this.factory.get();
+        this.idleCount.decrementAndGet();
+        return instance;
+    }
+
+    /**
+     * Resets an instance and returns it to the pool.
+     * The caller must not use the instance afterwards.
+     *
+     * @param instance the instance to release
+     */
+    public void release(@NotNull T instance) {
+        this.reset.accept(instance);
+        if (this.idleCount.incrementAndGet() <= this.maxIdle) {
+            this.idle.offer(instance);
+        } else {
+            this.idleCount.decrementAndGet(); // pool is full, let it be collected
+        }
+    }
+}
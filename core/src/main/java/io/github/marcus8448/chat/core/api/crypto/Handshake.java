@@ -0,0 +1,163 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.crypto;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SignatureException;
+
+/**
+ * The key agreement shared by both sides of the login handshake.
+ * <p>
+ * The client sends an ephemeral X25519 key in its hello. The server replies with a random challenge and its current
+ * X25519 exchange key, which is signed by the server's identity key (and rotated periodically, so the server does not
+ * need a private key operation per login). Both sides derive the session key from the X25519 shared secret with HKDF,
+ * and the client proves its identity by signing the {@link #transcript(byte[], PublicKey, PublicKey) transcript}.
+ * <p>
+ * After logging in, the server issues a session ticket and a resumption secret. A reconnecting client can present the
+ * ticket with a fresh nonce and a {@link #resumeBinder(byte[], byte[], byte[]) binder} (proving that it knows the secret),
+ * and both sides derive a new session key from the secret, without any asymmetric crypto.
+ */
+public final class Handshake {
+    /**
+     * Length of the authentication challenge, in bytes
+     */
+    public static final int CHALLENGE_LENGTH = 32;
+    /**
+     * HKDF context for session keys
+     */
+    private static final byte[] SESSION_KEY_INFO = "chat session key v1".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Prefix of the data signed by the server's identity key, so the signature cannot be reused elsewhere
+     */
+    private static final byte[] EXCHANGE_KEY_CONTEXT = "chat exchange key v1".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Prefix of the data authenticated by a resumption binder
+     */
+    private static final byte[] RESUME_BINDER_CONTEXT = "chat resume binder v1".getBytes(StandardCharsets.UTF_8);
+    /**
+     * HKDF context for resumed session keys
+     */
+    private static final byte[] RESUMED_KEY_INFO = "chat resumed session key v1".getBytes(StandardCharsets.UTF_8);
+
+    private Handshake() {
+    }
+
+    /**
+     * Builds the data that the client signs to authenticate, binding the challenge to both exchange keys
+     *
+     * @param challenge      the server's random challenge
+     * @param clientExchange the client's ephemeral X25519 key
+     * @param serverExchange the server's X25519 key
+     * @return the transcript of the handshake
+     */
+    @Contract(pure = true)
+    public static byte @NotNull [] transcript(byte[] challenge, PublicKey clientExchange, PublicKey serverExchange) {
+        byte[] client = clientExchange.getEncoded();
+        byte[] server = serverExchange.getEncoded();
+        byte[] transcript = new byte[challenge.length + client.length + server.length];
+        System.arraycopy(challenge, 0, transcript, 0, challenge.length);
+        System.arraycopy(client, 0, transcript, challenge.length, client.length);
+        System.arraycopy(server, 0, transcript, challenge.length + client.length, server.length);
+        return transcript;
+    }
+
+    /**
+     * Derives the AES session key
+     *
+     * @param privateKey our X25519 private key
+     * @param publicKey  the other side's X25519 public key
+     * @param transcript the transcript of the handshake
+     * @return the 256-bit AES session key
+     */
+    public static @NotNull SecretKey deriveSessionKey(PrivateKey privateKey, PublicKey publicKey, byte[] transcript) throws InvalidKeyException {
+        byte[] shared = CryptoHelper.x25519(privateKey, publicKey);
+        return new SecretKeySpec(CryptoHelper.hkdfSha256(transcript, shared, SESSION_KEY_INFO, 32), "AES");
+    }
+
+    /**
+     * Signs the server's exchange key with its identity key
+     *
+     * @param identity    the server's private identity key
+     * @param exchangeKey the server's X25519 key
+     * @return the signature
+     */
+    public static byte[] signExchangeKey(PrivateKey identity, PublicKey exchangeKey) throws InvalidKeyException, SignatureException {
+        return CryptoHelper.sign(identity, EXCHANGE_KEY_CONTEXT, exchangeKey.getEncoded());
+    }
+
+    /**
+     * Checks that the server's exchange key was signed by its identity key
+     *
+     * @param identity    the server's public identity key
+     * @param exchangeKey the server's X25519 key
+     * @param signature   the signature sent by the server
+     * @return whether the exchange key belongs to the server
+     */
+    public static boolean verifyExchangeKey(PublicKey identity, PublicKey exchangeKey, byte[] signature) {
+        return CryptoHelper.verify(identity, signature, EXCHANGE_KEY_CONTEXT, exchangeKey.getEncoded());
+    }
+
+    /**
+     * Proves that the client knows the resumption secret of a session ticket
+     *
+     * @param secret the resumption secret sent with the ticket
+     * @param ticket the (opaque) session ticket
+     * @param nonce  the client's fresh random nonce
+     * @return the binder
+     */
+    public static byte[] resumeBinder(byte[] secret, byte[] ticket, byte[] nonce) {
+        return CryptoHelper.hmacSha256(secret, RESUME_BINDER_CONTEXT, nonce, ticket);
+    }
+
+    /**
+     * Checks a binder sent by a resuming client
+     *
+     * @param secret the resumption secret stored in the ticket
+     * @param ticket the session ticket
+     * @param nonce  the client's nonce
+     * @param binder the binder sent by the client
+     * @return whether the client knows the resumption secret
+     */
+    public static boolean verifyResumeBinder(byte[] secret, byte[] ticket, byte[] nonce, byte[] binder) {
+        return MessageDigest.isEqual(resumeBinder(secret, ticket, nonce), binder);
+    }
+
+    /**
+     * Derives the AES session key of a resumed session
+     * Both nonces are fresh, so every resumption gets a different key
+     *
+     * @param secret      the resumption secret
+     * @param clientNonce the client's nonce
+     * @param serverNonce the server's nonce
+     * @return the 256-bit AES session key
+     */
+    public static @NotNull SecretKey deriveResumedSessionKey(byte[] secret, byte[] clientNonce, byte[] serverNonce) {
+        byte[] salt = new byte[clientNonce.length + serverNonce.length];
+        System.arraycopy(clientNonce, 0, salt, 0, clientNonce.length);
+        System.arraycopy(serverNonce, 0, salt, clientNonce.length, serverNonce.length);
+        return new SecretKeySpec(CryptoHelper.hkdfSha256(salt, secret, RESUMED_KEY_INFO, 32), "AES");
+    }
+}
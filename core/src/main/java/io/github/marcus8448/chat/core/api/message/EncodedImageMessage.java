@@ -0,0 +1,152 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.message;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.CryptoPool;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * A message that contains an image stored in an encoded container (such as PNG)
+ * The message only references the image by the SHA-256 hash of the encoded bytes - the bytes themselves are stored once
+ * on the server and fetched by clients (if they don't already have them) when the image is displayed
+ * Large images may also have a downscaled preview (generated by the server), which is loaded before the full image
+ *
+ * @param timestamp when the message was received on the server
+ * @param author    who sent the message
+ * @param width     the width of the decoded image, so that space can be reserved before decoding
+ * @param height    the height of the decoded image
+ * @param hash        the SHA-256 hash of the encoded image
+ * @param previewHash the SHA-256 hash of the encoded preview, or {@code null} if there is no preview
+ * @param signature   the signature of the author over the hash (and so the encoded bytes) - previews are not signed
+ */
+public record EncodedImageMessage(long timestamp, MessageAuthor author, int width, int height, byte[] hash,
+                                  byte @Nullable [] previewHash, byte[] signature) implements Message {
+    /**
+     * The largest encoded image that will be accepted (8 MiB)
+     */
+    public static final int MAX_DATA_SIZE = 8 * 1024 * 1024;
+    /**
+     * The length of an image hash (SHA-256)
+     */
+    public static final int HASH_LENGTH = 32;
+    /**
+     * The maximum width and height of a preview
+     */
+    public static final int PREVIEW_SIZE = 256;
+
+    /**
+     * Computes the hash that identifies an encoded image
+     *
+     * @param data the encoded image
+     * @return the SHA-256 hash of the image
+     */
+    public static byte[] hash(byte[] data) {
+        return CryptoHelper.sha256(data);
+    }
+
+    /**
+     * Reads length-prefixed image data, rejecting images that are too large
+     *
+     * @param input the input to read from
+     * @return the encoded image
+     * @throws IOException if the data is too large or could not be read
+     */
+    public static byte[] readData(BinaryInput input) throws IOException {
+        int len = input.readVarInt();
+        if (len < 0 || len > MAX_DATA_SIZE) throw new IOException("Invalid image size: " + len);
+        return input.readByteArray(len);
+    }
+
+    /**
+     * Writes length-prefixed image data
+     * The length is a varint, as encoded images can easily be larger than a short-prefixed array allows
+     *
+     * @param output the output to write to
+     * @param data   the encoded image
+     * @throws IOException if the data could not be written
+     */
+    public static void writeData(BinaryOutput output, byte[] data) throws IOException {
+        output.writeVarInt(data.length);
+        output.writeByteArray(data.length, data);
+    }
+
+    /**
+     * Reads an optional image hash
+     *
+     * @param input the input to read from
+     * @return the hash, or {@code null} if there is none
+     * @throws IOException if the hash could not be read
+     */
+    public static byte @Nullable [] readOptionalHash(BinaryInput input) throws IOException {
+        return input.readBoolean() ? input.readByteArray(HASH_LENGTH) : null;
+    }
+
+    /**
+     * Writes an optional image hash
+     *
+     * @param output the output to write to
+     * @param hash   the hash, or {@code null} if there is none
+     * @throws IOException if the hash could not be written
+     */
+    public static void writeOptionalHash(BinaryOutput output, byte @Nullable [] hash) throws IOException {
+        output.writeBoolean(hash != null);
+        if (hash != null) output.writeByteArray(HASH_LENGTH, hash);
+    }
+
+    @Override
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    @Override
+    public MessageAuthor getAuthor() {
+        return this.author;
+    }
+
+    @Override
+    public byte[] getSignature() {
+        return this.signature;
+    }
+
+    @Override
+    public boolean verifySignature() {
+        CryptoPool<Signature> pool = CryptoHelper.signatures(this.getAuthor().getPublicKey()); // RSA or Ed25519, depending on the author
+        Signature signature = pool.acquire(); // take a signature instance from the pool
+        try {
+            signature.initVerify(this.getAuthor().getPublicKey()); // initialize the instance with the author's key
+            signature.update(this.hash); // the signature covers the hash, so the image itself is not needed
+            return signature.verify(this.getSignature()); // verify the contents
+        } catch (InvalidKeyException | SignatureException e) {
+            return false; // the verification failed so return false.
+        } finally {
+            pool.release(signature);
+        }
+    }
+
+    @Override
+    public MessageType getType() {
+        return MessageType.ENCODED_IMAGE;
+    }
+}
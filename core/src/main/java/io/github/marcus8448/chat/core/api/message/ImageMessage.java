@@ -16,6 +16,9 @@
 
 package io.github.marcus8448.chat.core.api.message;
 
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.CryptoPool;
+
 import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.Signature;
@@ -33,6 +36,30 @@
  */
 public record ImageMessage(long timestamp, MessageAuthor author, int width, int height, int[] image,
                            byte[] signature) implements Message {
+    /**
+     * The number of pixels passed to a signature at once
+     */
+    private static final int SIGNATURE_BUFFER_PIXELS = 4096;
+
+    /**
+     * Passes the pixels of an image to a signature (for signing or verification) as big-endian bytes
+     * The pixels are fed through a small buffer, rather than copying the whole image to a byte array
+     *
+     * @param signature the signature to update
+     * @param image     the pixels of the image
+     * @throws SignatureException if the signature is not initialized
+     */
+    public static void updateSignature(Signature signature, int[] image) throws SignatureException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIGNATURE_BUFFER_PIXELS * 4);
+        for (int i = 0; i < image.length; i += SIGNATURE_BUFFER_PIXELS) {
+            int pixels = Math.min(SIGNATURE_BUFFER_PIXELS, image.length - i);
+            buffer.clear();
+            buffer.asIntBuffer().put(image, i, pixels);
+            buffer.limit(pixels * 4);
+            signature.update(buffer);
+        }
+    }
+
     @Override
     public long getTimestamp() {
         return this.timestamp;
@@ -50,15 +77,16 @@ public byte[] getSignature() {
 
     @Override
     public boolean verifySignature() {
-        Signature signature = RSA_SIGNATURE.get(); // get the global RSA signature instance
+        CryptoPool<Signature> pool = CryptoHelper.signatures(this.getAuthor().getPublicKey()); // RSA or Ed25519, depending on the author
+        Signature signature = pool.acquire(); // take a signature instance from the pool
         try {
             signature.initVerify(this.getAuthor().getPublicKey()); // initialize the instance with the author's key
-            byte[] bytes = new byte[this.width * this.height * 4]; // so inefficient, but whatever
-            ByteBuffer.wrap(bytes).asIntBuffer().put(this.image);
-            signature.update(bytes); // set the data to be the message contents
+            updateSignature(signature, this.image); // set the data to be the message contents
             return signature.verify(this.getSignature()); // verify the contents
         } catch (InvalidKeyException | SignatureException e) {
             return false; // the verification failed so return false.
+        } finally {
+            pool.release(signature);
         }
     }
 
@@ -16,22 +16,15 @@
 
 package io.github.marcus8448.chat.core.api.message;
 
-import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
 import io.github.marcus8448.chat.core.impl.message.InsecureTextMessage;
 import io.github.marcus8448.chat.core.impl.message.TextMessageImpl;
-import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
-import java.security.Signature;
-
 /**
  * Represents a message
  */
 public interface Message {
-    @ApiStatus.Internal
-    ThreadLocal<Signature> RSA_SIGNATURE = ThreadLocal.withInitial(CryptoHelper::createRsaSignature);
-
     @Contract(value = "_, _, _, _ -> new", pure = true)
     static @NotNull TextMessage text(long timestamp, MessageAuthor author, String contents, byte[] signature) {
         return new TextMessageImpl(timestamp, author, contents, signature);
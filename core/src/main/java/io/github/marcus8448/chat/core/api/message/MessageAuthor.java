@@ -17,10 +17,9 @@
 package io.github.marcus8448.chat.core.api.message;
 
 import io.github.marcus8448.chat.core.impl.account.SystemAccount;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 
 /**
  * Represents the source of a message
@@ -29,14 +28,14 @@
  */
 public interface MessageAuthor {
     /**
-     * Creates a new system (server) author type
+     * Returns the system (server) author type
+     * The author is reused as long as the server's key is the same
      *
      * @param key the public key of the server
      * @return an author that represents the server the client is connected to
      */
-    @Contract("_ -> new")
-    static @NotNull MessageAuthor system(RSAPublicKey key) {
-        return new SystemAccount(key);
+    static @NotNull MessageAuthor system(PublicKey key) {
+        return SystemAccount.of(key);
     }
 
     /**
@@ -55,7 +54,12 @@ public interface MessageAuthor {
     String getName();
 
     /**
-     * @return the unique public key representing the author
+     * @return the unique public key representing the author (null if the key of a user has not been fetched yet)
      */
-    RSAPublicKey getPublicKey();
+    PublicKey getPublicKey();
+
+    /**
+     * @return the SHA-256 hash of the author's public key (upper-case hex), computed once per author
+     */
+    String getFingerprint();
 }
@@ -27,7 +27,11 @@ public enum MessageType {
     /**
      * A message containing an image
      */
-    IMAGE(ImageMessage.class);
+    IMAGE(ImageMessage.class),
+    /**
+     * A message containing an encoded image (e.g. PNG), relayed by the server without decoding
+     */
+    ENCODED_IMAGE(EncodedImageMessage.class);
 
     /**
      * The class that represents this type
@@ -18,6 +18,7 @@
 
 import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
 import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
 import io.github.marcus8448.chat.core.api.network.packet.Packet;
 import io.github.marcus8448.chat.core.api.network.packet.PacketType;
 import io.github.marcus8448.chat.core.impl.network.NetworkPacketPipeline;
@@ -68,6 +69,16 @@ public interface PacketPipeline extends Closeable {
      */
     <Data extends NetworkedData> void send(PacketType<Data> type, Data networkedData) throws IOException;
 
+    /**
+     * Sends an already serialized packet through the pipeline
+     *
+     * @param packet the packet to send
+     */
+    @SuppressWarnings("unchecked") // the data is written as-is, so the type of the data does not matter
+    default void send(EncodedPacket packet) throws IOException {
+        this.send((PacketType<EncodedPacket>) packet.getType(), packet);
+    }
+
     /**
      * Blocks until a packet is received
      *
@@ -40,6 +40,10 @@ static BinaryInput buffer(byte[] bytes) {
         return new FixedBinaryInput(bytes);
     }
 
+    static BinaryInput buffer(byte[] bytes, int offset) {
+        return new FixedBinaryInput(bytes, offset);
+    }
+
     int readByte() throws IOException;
 
     int readInt() throws IOException;
@@ -48,6 +52,16 @@ static BinaryInput buffer(byte[] bytes) {
 
     long readLong() throws IOException;
 
+    /**
+     * @see BinaryOutput#writeVarInt(int)
+     */
+    int readVarInt() throws IOException;
+
+    /**
+     * @see BinaryOutput#writeVarLong(long)
+     */
+    long readVarLong() throws IOException;
+
     boolean readBoolean() throws IOException;
 
     byte[] readByteArray() throws IOException;
@@ -48,6 +48,19 @@ public interface BinaryOutput extends Closeable {
 
     BinaryOutput writeLong(long l) throws IOException;
 
+    /**
+     * Writes an integer using 1-5 bytes (7 bits per byte, low bits first)
+     * Small non-negative values are cheaper to write than with {@link #writeInt(int)}
+     */
+    BinaryOutput writeVarInt(int i) throws IOException;
+
+    /**
+     * Writes a long using 1-10 bytes (7 bits per byte, low bits first)
+     *
+     * @see #writeVarInt(int)
+     */
+    BinaryOutput writeVarLong(long l) throws IOException;
+
     BinaryOutput writeBoolean(boolean b) throws IOException;
 
     BinaryOutput writeByteArray(byte @NotNull [] bytes) throws IOException;
@@ -18,8 +18,16 @@
 
 import io.github.marcus8448.chat.core.api.network.packet.client.Authenticate;
 import io.github.marcus8448.chat.core.api.network.packet.client.Hello;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestImage;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestKeys;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeChannels;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeSession;
+import io.github.marcus8448.chat.core.api.network.packet.client.SearchMessages;
+import io.github.marcus8448.chat.core.api.network.packet.client.SendEncodedImageMessage;
 import io.github.marcus8448.chat.core.api.network.packet.client.SendImageMessage;
 import io.github.marcus8448.chat.core.api.network.packet.client.SendMessage;
+import io.github.marcus8448.chat.core.api.network.packet.client.SyncPresence;
 import io.github.marcus8448.chat.core.api.network.packet.common.ChannelList;
 
 /**
@@ -52,6 +60,49 @@ public interface ClientPacketTypes {
      */
     PacketType<ChannelList> LEAVE_CHANNELS = PacketType.create(ChannelList::new);
 
+    /**
+     * Requests the messages sent before a sequence number (newest first, up to the limit)
+     *
+     * @see RequestHistory
+     */
+    PacketType<RequestHistory> REQUEST_HISTORY_BEFORE = PacketType.create(RequestHistory::new);
+    /**
+     * Requests the messages sent after a sequence number (oldest first, up to the limit)
+     *
+     * @see RequestHistory
+     */
+    PacketType<RequestHistory> REQUEST_HISTORY_SINCE = PacketType.create(RequestHistory::new);
+    /**
+     * @see ResumeChannels
+     */
+    PacketType<ResumeChannels> RESUME_CHANNELS = PacketType.create(ResumeChannels::new);
+    /**
+     * @see SearchMessages
+     */
+    PacketType<SearchMessages> SEARCH_MESSAGES = PacketType.create(SearchMessages::new);
+    /**
+     * @see SendEncodedImageMessage
+     */
+    PacketType<SendEncodedImageMessage> SEND_ENCODED_IMAGE_MESSAGE = PacketType.create(SendEncodedImageMessage::new);
+    /**
+     * @see RequestImage
+     */
+    PacketType<RequestImage> REQUEST_IMAGE = PacketType.create(RequestImage::new);
+    /**
+     * Sent instead of {@link #HELLO} by a client that holds a session ticket
+     *
+     * @see ResumeSession
+     */
+    PacketType<ResumeSession> RESUME_SESSION = PacketType.create(ResumeSession::new);
+    /**
+     * @see SyncPresence
+     */
+    PacketType<SyncPresence> SYNC_PRESENCE = PacketType.create(SyncPresence::new);
+    /**
+     * @see RequestKeys
+     */
+    PacketType<RequestKeys> REQUEST_KEYS = PacketType.create(RequestKeys::new);
+
     static void initialize() {
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet;
+
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.io.GrowingBinaryOutput;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * A packet whose data has already been serialized
+ * Can be sent any number of times (to any number of connections) without being encoded again
+ *
+ * @see io.github.marcus8448.chat.core.api.network.PacketPipeline#send(EncodedPacket)
+ */
+public final class EncodedPacket implements NetworkedData {
+    /**
+     * The type of the encoded packet
+     */
+    private final PacketType<?> type;
+    /**
+     * The serialized packet data (not including the packet id)
+     */
+    private final byte[] data;
+
+    private EncodedPacket(PacketType<?> type, byte[] data) {
+        this.type = type;
+        this.data = data;
+    }
+
+    /**
+     * Serializes the given packet
+     *
+     * @param type   the type of packet
+     * @param data   the packet body
+     * @param <Data> the type of packet body
+     * @return the encoded packet
+     */
+    @Contract("_, _ -> new")
+    public static <Data extends NetworkedData> @NotNull EncodedPacket encode(PacketType<Data> type, Data data) {
+        GrowingBinaryOutput output = GrowingBinaryOutput.create(data.getLength() == -1 ? 128 : Math.max(data.getLength(), 1));
+        try {
+            data.write(output);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // in-memory output, should never happen
+        }
+        return new EncodedPacket(type, output.getSizedOutput());
+    }
+
+    /**
+     * Wraps packet data that was serialized elsewhere (e.g. assembled from pre-encoded parts)
+     *
+     * @param type the type of packet
+     * @param data the serialized packet body, in the format of the packet type
+     * @return the encoded packet
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull EncodedPacket wrap(PacketType<?> type, byte[] data) {
+        return new EncodedPacket(type, data);
+    }
+
+    /**
+     * @return the type of the encoded packet
+     */
+    public PacketType<?> getType() {
+        return this.type;
+    }
+
+    /**
+     * Deserializes the packet data
+     *
+     * @return the decoded packet
+     */
+    public Packet<?> decode() throws IOException {
+        return this.decode(this.type);
+    }
+
+    private <Data extends NetworkedData> Packet<Data> decode(PacketType<Data> type) throws IOException {
+        return new Packet<>(type, type.create(BinaryInput.buffer(this.data)));
+    }
+
+    @Override
+    public int getLength() {
+        return this.data.length;
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeByteArray(this.data.length, this.data);
+    }
+}
@@ -45,13 +45,9 @@ public interface ServerPacketTypes {
      */
     PacketType<SystemMessage> SYSTEM_MESSAGE = PacketType.create(SystemMessage::new);
     /**
-     * @see UserConnect
+     * @see PresenceUpdate
      */
-    PacketType<UserConnect> USER_CONNECT = PacketType.create(UserConnect::new);
-    /**
-     * @see UserDisconnect
-     */
-    PacketType<UserDisconnect> USER_DISCONNECT = PacketType.create(UserDisconnect::new);
+    PacketType<PresenceUpdate> PRESENCE_UPDATE = PacketType.create(PresenceUpdate::new);
     /**
      * @see io.github.marcus8448.chat.core.api.network.packet.common.ChannelList
      */
@@ -61,6 +57,42 @@ public interface ServerPacketTypes {
      */
     PacketType<ChannelList> REMOVE_CHANNELS = PacketType.create(ChannelList::new);
     PacketType<AddImageMessage> ADD_IMAGE_MESSAGE = PacketType.create(AddImageMessage::new);
+    /**
+     * @see MessageHistory
+     */
+    PacketType<MessageHistory> MESSAGE_HISTORY = PacketType.create(MessageHistory::new);
+    /**
+     * @see SearchResults
+     */
+    PacketType<SearchResults> SEARCH_RESULTS = PacketType.create(SearchResults::new);
+    /**
+     * @see AddEncodedImageMessage
+     */
+    PacketType<AddEncodedImageMessage> ADD_ENCODED_IMAGE_MESSAGE = PacketType.create(AddEncodedImageMessage::new);
+    /**
+     * @see ImageData
+     */
+    PacketType<ImageData> IMAGE_DATA = PacketType.create(ImageData::new);
+    /**
+     * @see SessionTicket
+     */
+    PacketType<SessionTicket> SESSION_TICKET = PacketType.create(SessionTicket::new);
+    /**
+     * Followed by {@link #AUTHENTICATION_SUCCESS}
+     *
+     * @see SessionResumed
+     */
+    PacketType<SessionResumed> SESSION_RESUMED = PacketType.create(SessionResumed::new);
+    /**
+     * The session ticket was not accepted - the client should continue with a full login ({@link ClientPacketTypes#HELLO})
+     *
+     * @see AuthenticationFailure
+     */
+    PacketType<AuthenticationFailure> RESUME_REJECTED = PacketType.create(AuthenticationFailure::new);
+    /**
+     * @see UserKeys
+     */
+    PacketType<UserKeys> USER_KEYS = PacketType.create(UserKeys::new);
 
     static void initialize() {
     }
@@ -39,32 +39,34 @@ public class Authenticate implements NetworkedData {
      */
     private final Identifier username;
     /**
-     * The data sent in the {@link AuthenticationRequest}, but
-     * encrypted with the server's key.
+     * Signature of the handshake transcript (the challenge sent in the {@link AuthenticationRequest} and both exchange keys),
+     * made with the client's identity key (RSA or Ed25519)
+     *
+     * @see io.github.marcus8448.chat.core.api.crypto.Handshake#transcript
      */
-    private final byte[] data;
+    private final byte[] signature;
 
-    public Authenticate(Identifier username, byte[] data) {
+    public Authenticate(Identifier username, byte[] signature) {
         this.username = username;
-        this.data = data;
+        this.signature = signature;
     }
 
     public Authenticate(BinaryInput input) throws IOException {
         this.username = Identifier.create(input.readString());
-        this.data = input.readByteArray();
+        this.signature = input.readByteArray();
     }
 
     @Override
     public void write(BinaryOutput output) throws IOException {
         output.writeString(this.username.getValue());
-        output.writeByteArray(this.data);
+        output.writeByteArray(this.signature);
     }
 
     public Identifier getUsername() {
         return username;
     }
 
-    public byte[] getData() {
-        return data;
+    public byte[] getSignature() {
+        return signature;
     }
 }
@@ -23,7 +23,7 @@
 import io.github.marcus8448.chat.core.api.network.packet.server.AuthenticationRequest;
 
 import java.io.IOException;
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 
 /**
@@ -42,21 +42,27 @@ public class Hello implements NetworkedData {
      */
     private final String version;
     /**
-     * The RSA public key of the client
+     * The public key (RSA or Ed25519) of the client
      */
-    private final RSAPublicKey key;
+    private final PublicKey key;
+    /**
+     * The client's ephemeral X25519 key, for deriving the session key
+     */
+    private final PublicKey exchangeKey;
 
-    public Hello(String brand, String version, RSAPublicKey key) {
+    public Hello(String brand, String version, PublicKey key, PublicKey exchangeKey) {
         this.brand = brand;
         this.version = version;
         this.key = key;
+        this.exchangeKey = exchangeKey;
     }
 
     public Hello(BinaryInput input) throws IOException {
         this.brand = input.readString();
         this.version = input.readString();
         try {
-            this.key = CryptoHelper.decodeRsaPublicKey(input.readByteArray());
+            this.key = CryptoHelper.decodePublicKey(input.readByteArray());
+            this.exchangeKey = CryptoHelper.decodeX25519PublicKey(input.readByteArray());
         } catch (InvalidKeySpecException e) {
             throw new IllegalStateException(e);
         }
@@ -67,12 +73,17 @@ public void write(BinaryOutput output) throws IOException {
         output.writeString(this.brand);
         output.writeString(this.version);
         output.writeByteArray(this.key.getEncoded());
+        output.writeByteArray(this.exchangeKey.getEncoded());
     }
 
-    public RSAPublicKey getKey() {
+    public PublicKey getKey() {
         return key;
     }
 
+    public PublicKey getExchangeKey() {
+        return exchangeKey;
+    }
+
     public String getBrand() {
         return brand;
     }
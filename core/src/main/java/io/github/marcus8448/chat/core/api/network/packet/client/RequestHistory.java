@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory;
+
+import java.io.IOException;
+
+/**
+ * Requests a page of a channel's message history, relative to a message sequence number
+ * Used for both "before" and "since" requests (the packet type determines the direction)
+ *
+ * @see MessageHistory The server's response
+ */
+public class RequestHistory implements NetworkedData {
+    /**
+     * Sequence number that represents the newest message in a channel
+     * (all messages are "before" it)
+     */
+    public static final int LATEST = -1;
+    /**
+     * The maximum number of messages the server will send in one response
+     */
+    public static final int MAX_LIMIT = 100;
+
+    private final Identifier channel;
+    /**
+     * The (exclusive) sequence number to fetch messages relative to
+     */
+    private final int sequence;
+    /**
+     * The maximum number of messages to fetch
+     */
+    private final int limit;
+
+    public RequestHistory(Identifier channel, int sequence, int limit) {
+        this.channel = channel;
+        this.sequence = sequence;
+        this.limit = limit;
+    }
+
+    public RequestHistory(BinaryInput input) throws IOException {
+        this.channel = input.readIdentifier();
+        this.sequence = input.readInt();
+        this.limit = Math.min(input.readVarInt(), MAX_LIMIT);
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeIdentifier(this.channel);
+        output.writeInt(this.sequence);
+        output.writeVarInt(this.limit);
+    }
+
+    public Identifier getChannel() {
+        return channel;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
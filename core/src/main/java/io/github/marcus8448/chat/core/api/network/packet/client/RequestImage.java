@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+
+import java.io.IOException;
+
+/**
+ * Requests the contents of an encoded image that the client does not have yet
+ *
+ * @see io.github.marcus8448.chat.core.api.network.packet.server.ImageData The server's response
+ */
+public class RequestImage implements NetworkedData {
+    /**
+     * The hash of the image to send
+     */
+    private final byte[] hash;
+
+    public RequestImage(BinaryInput input) throws IOException {
+        this.hash = input.readByteArray(EncodedImageMessage.HASH_LENGTH);
+    }
+
+    public RequestImage(byte[] hash) {
+        this.hash = hash;
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeByteArray(EncodedImageMessage.HASH_LENGTH, this.hash);
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.UserKeys;
+
+import java.io.IOException;
+import java.util.HexFormat;
+
+/**
+ * Requests the public keys of users (by fingerprint)
+ *
+ * @see UserKeys The server's response
+ */
+public class RequestKeys implements NetworkedData {
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    /**
+     * The fingerprints of the keys to send
+     */
+    private final String[] fingerprints;
+
+    public RequestKeys(String[] fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    public RequestKeys(BinaryInput input) throws IOException {
+        this.fingerprints = new String[input.readVarInt()];
+        for (int i = 0; i < this.fingerprints.length; i++) {
+            this.fingerprints[i] = HEX.formatHex(input.readByteArray(32));
+        }
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeVarInt(this.fingerprints.length);
+        for (String fingerprint : this.fingerprints) {
+            output.writeByteArray(32, HEX.parseHex(fingerprint));
+        }
+    }
+
+    public String[] getFingerprints() {
+        return fingerprints;
+    }
+}
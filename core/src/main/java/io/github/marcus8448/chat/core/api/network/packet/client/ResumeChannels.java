@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+
+import java.io.IOException;
+
+/**
+ * Sent by the client after (re)connecting to join its channels and catch up on the messages it has missed
+ * The server replies with the channels joined, followed by the missed messages of each channel
+ */
+public class ResumeChannels implements NetworkedData {
+    /**
+     * The channels to join (and catch up on)
+     */
+    private final Identifier[] channels;
+    /**
+     * The sequence number of the last message received in each channel (or -1 if none have been received)
+     */
+    private final int[] lastSequences;
+    /**
+     * The id of the history each last sequence number belongs to (or 0 if none have been received)
+     *
+     * @see io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory#getHistoryId()
+     */
+    private final long[] historyIds;
+
+    public ResumeChannels(Identifier[] channels, int[] lastSequences, long[] historyIds) {
+        this.channels = channels;
+        this.lastSequences = lastSequences;
+        this.historyIds = historyIds;
+        if (this.channels.length > 50 || this.channels.length != this.lastSequences.length || this.channels.length != this.historyIds.length) throw new UnsupportedOperationException();
+    }
+
+    public ResumeChannels(BinaryInput input) throws IOException {
+        int len = input.readByte();
+        if (len > 50) throw new UnsupportedOperationException();
+        this.channels = new Identifier[len];
+        this.lastSequences = new int[len];
+        this.historyIds = new long[len];
+        for (int i = 0; i < len; i++) {
+            this.channels[i] = input.readIdentifier();
+            this.lastSequences[i] = input.readInt();
+            this.historyIds[i] = input.readLong();
+        }
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeByte(this.channels.length);
+        for (int i = 0; i < this.channels.length; i++) {
+            output.writeIdentifier(this.channels[i]);
+            output.writeInt(this.lastSequences[i]);
+            output.writeLong(this.historyIds[i]);
+        }
+    }
+
+    public Identifier[] getChannels() {
+        return channels;
+    }
+
+    public int[] getLastSequences() {
+        return lastSequences;
+    }
+
+    public long[] getHistoryIds() {
+        return historyIds;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.SessionResumed;
+import io.github.marcus8448.chat.core.api.network.packet.server.SessionTicket;
+
+import java.io.IOException;
+
+/**
+ * Sent by a reconnecting client instead of {@link Hello}, to resume a previous session with a ticket
+ * Nothing is encrypted yet
+ *
+ * @see SessionTicket Where the ticket comes from
+ * @see SessionResumed The server's response (success)
+ */
+public class ResumeSession implements NetworkedData {
+    /**
+     * The client brand
+     */
+    private final String brand;
+    /**
+     * The client's version
+     */
+    private final String version;
+    /**
+     * The session ticket issued by the server
+     */
+    private final byte[] ticket;
+    /**
+     * Fresh random bytes, so that the new session key is different from any other
+     */
+    private final byte[] nonce;
+    /**
+     * Proof that the client knows the ticket's resumption secret
+     *
+     * @see io.github.marcus8448.chat.core.api.crypto.Handshake#resumeBinder
+     */
+    private final byte[] binder;
+
+    public ResumeSession(String brand, String version, byte[] ticket, byte[] nonce, byte[] binder) {
+        this.brand = brand;
+        this.version = version;
+        this.ticket = ticket;
+        this.nonce = nonce;
+        this.binder = binder;
+    }
+
+    public ResumeSession(BinaryInput input) throws IOException {
+        this.brand = input.readString();
+        this.version = input.readString();
+        this.ticket = input.readByteArray();
+        this.nonce = input.readByteArray();
+        this.binder = input.readByteArray();
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeString(this.brand);
+        output.writeString(this.version);
+        output.writeByteArray(this.ticket);
+        output.writeByteArray(this.nonce);
+        output.writeByteArray(this.binder);
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public byte[] getTicket() {
+        return ticket;
+    }
+
+    public byte[] getNonce() {
+        return nonce;
+    }
+
+    public byte[] getBinder() {
+        return binder;
+    }
+}
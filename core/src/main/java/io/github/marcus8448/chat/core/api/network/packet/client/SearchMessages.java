@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.SearchResults;
+
+import java.io.IOException;
+
+/**
+ * Searches a channel's (text) messages for the given words
+ * Results are returned newest first, one page at a time
+ *
+ * @see SearchResults The server's response
+ */
+public class SearchMessages implements NetworkedData {
+    /**
+     * The maximum length of a query
+     */
+    public static final int MAX_QUERY_LENGTH = 256;
+    /**
+     * The maximum number of results the server will send in one response
+     */
+    public static final int MAX_LIMIT = 50;
+
+    private final Identifier channel;
+    /**
+     * The words to search for (all must be present in a message)
+     */
+    private final String query;
+    /**
+     * Only messages with a sequence number lower than this are returned (-1 for no bound)
+     * Used to get the next page of results
+     */
+    private final int before;
+    /**
+     * The maximum number of results to return
+     */
+    private final int limit;
+
+    public SearchMessages(Identifier channel, String query, int before, int limit) {
+        this.channel = channel;
+        this.query = query;
+        this.before = before;
+        this.limit = limit;
+        if (this.query.length() > MAX_QUERY_LENGTH) throw new UnsupportedOperationException();
+    }
+
+    public SearchMessages(BinaryInput input) throws IOException {
+        this.channel = input.readIdentifier();
+        this.query = input.readString();
+        this.before = input.readInt();
+        this.limit = Math.min(input.readVarInt(), MAX_LIMIT);
+        if (this.query.length() > MAX_QUERY_LENGTH) throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeIdentifier(this.channel);
+        output.writeString(this.query);
+        output.writeInt(this.before);
+        output.writeVarInt(this.limit);
+    }
+
+    public Identifier getChannel() {
+        return channel;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public int getBefore() {
+        return before;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
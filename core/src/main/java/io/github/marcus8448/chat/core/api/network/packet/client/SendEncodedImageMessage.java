@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+
+import java.io.IOException;
+
+/**
+ * Sent by the client to send an encoded (e.g. PNG) image to a channel
+ * The server stores the image by its hash, and only the hash is propagated to other clients
+ *
+ * @see io.github.marcus8448.chat.core.api.network.packet.server.AddEncodedImageMessage The server's expected response to ALL clients
+ */
+public class SendEncodedImageMessage implements NetworkedData {
+    private final Identifier channel;
+    private final int width;
+    private final int height;
+    /**
+     * The encoded image
+     */
+    private final byte[] data;
+    /**
+     * The signature of the hash of the encoded image
+     */
+    private final byte[] signature;
+
+    public SendEncodedImageMessage(BinaryInput input) throws IOException {
+        this.channel = input.readIdentifier();
+        this.width = input.readShort();
+        this.height = input.readShort();
+        this.data = EncodedImageMessage.readData(input);
+        this.signature = input.readByteArray();
+    }
+
+    public SendEncodedImageMessage(Identifier channel, int width, int height, byte[] data, byte[] signature) {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.data = data;
+        this.signature = signature;
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeIdentifier(this.channel);
+        output.writeShort(this.width);
+        output.writeShort(this.height);
+        EncodedImageMessage.writeData(output, this.data);
+        output.writeByteArray(this.signature);
+    }
+
+    public Identifier getChannel() {
+        return channel;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public byte[] getSignature() {
+        return signature;
+    }
+}
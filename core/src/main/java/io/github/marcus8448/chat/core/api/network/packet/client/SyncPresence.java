@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.client;
+
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.PresenceUpdate;
+
+import java.io.IOException;
+
+/**
+ * Sent after login, to get the changes to the online user list since the version the client last saw
+ * (or the whole list, if the client has no list or the server no longer has the changes)
+ *
+ * @see PresenceUpdate The server's response
+ */
+public class SyncPresence implements NetworkedData {
+    /**
+     * The epoch of the client's user list (0 if it has none)
+     */
+    private final long epoch;
+    /**
+     * The version of the client's user list (-1 if it has none)
+     */
+    private final int version;
+
+    public SyncPresence(long epoch, int version) {
+        this.epoch = epoch;
+        this.version = version;
+    }
+
+    public SyncPresence(BinaryInput input) throws IOException {
+        this.epoch = input.readLong();
+        this.version = input.readInt();
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeLong(this.epoch);
+        output.writeInt(this.version);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
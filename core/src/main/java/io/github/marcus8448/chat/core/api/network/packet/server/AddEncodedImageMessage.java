@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Propagates a new encoded image message to the connected client(s)
+ *
+ * @see io.github.marcus8448.chat.core.api.network.packet.client.SendEncodedImageMessage
+ */
+public class AddEncodedImageMessage implements NetworkedData {
+    private final Identifier channel;
+    /**
+     * The position of the message in the channel's history
+     */
+    private final int sequence;
+    /**
+     * When the message was received on the server
+     */
+    private final long timestamp;
+    /**
+     * The session ID of the author
+     */
+    private final int authorId;
+    private final int width;
+    private final int height;
+    /**
+     * The hash of the encoded image (the image itself is requested separately, if needed)
+     */
+    private final byte[] hash;
+    /**
+     * The hash of the downscaled preview of the image, if there is one
+     */
+    private final byte @Nullable [] previewHash;
+    /**
+     * The checksum verifying the authenticity of the message (was from the author)
+     */
+    private final byte[] signature;
+
+    public AddEncodedImageMessage(BinaryInput input) throws IOException {
+        this.channel = input.readIdentifier();
+        this.sequence = input.readInt();
+        this.timestamp = input.readLong();
+        this.authorId = input.readInt();
+        this.width = input.readShort();
+        this.height = input.readShort();
+        this.hash = input.readByteArray(EncodedImageMessage.HASH_LENGTH);
+        this.previewHash = EncodedImageMessage.readOptionalHash(input);
+        this.signature = input.readByteArray();
+    }
+
+    public AddEncodedImageMessage(Identifier channel, int sequence, long timestamp, int authorId, int width, int height, byte[] hash, byte @Nullable [] previewHash, byte[] signature) {
+        this.channel = channel;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.authorId = authorId;
+        this.width = width;
+        this.height = height;
+        this.hash = hash;
+        this.previewHash = previewHash;
+        this.signature = signature;
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeIdentifier(this.channel);
+        output.writeInt(this.sequence);
+        output.writeLong(this.timestamp);
+        output.writeInt(this.authorId);
+        output.writeShort(this.width);
+        output.writeShort(this.height);
+        output.writeByteArray(EncodedImageMessage.HASH_LENGTH, this.hash);
+        EncodedImageMessage.writeOptionalHash(output, this.previewHash);
+        output.writeByteArray(this.signature);
+    }
+
+    public Identifier getChannel() {
+        return channel;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getAuthorId() {
+        return authorId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public byte @Nullable [] getPreviewHash() {
+        return previewHash;
+    }
+
+    public byte[] getSignature() {
+        return signature;
+    }
+}
@@ -30,6 +30,10 @@
  */
 public class AddImageMessage implements NetworkedData {
     private final Identifier channel;
+    /**
+     * The position of the message in the channel's history
+     */
+    private final int sequence;
     /**
      * WHen the message was received on the server
      */
@@ -51,6 +55,7 @@ public class AddImageMessage implements NetworkedData {
 
     public AddImageMessage(BinaryInput input) throws IOException {
         this.channel = input.readIdentifier();
+        this.sequence = input.readInt();
         this.timestamp = input.readLong();
         this.authorId = input.readInt();
         this.width = input.readShort();
@@ -59,8 +64,9 @@ public AddImageMessage(BinaryInput input) throws IOException {
         this.signature = input.readByteArray();
     }
 
-    public AddImageMessage(Identifier channel, long timestamp, int authorId, int width, int height, int[] contents, byte[] signature) {
+    public AddImageMessage(Identifier channel, int sequence, long timestamp, int authorId, int width, int height, int[] contents, byte[] signature) {
         this.channel = channel;
+        this.sequence = sequence;
         this.timestamp = timestamp;
         this.authorId = authorId;
         this.width = width;
@@ -72,6 +78,7 @@ public AddImageMessage(Identifier channel, long timestamp, int authorId, int wid
     @Override
     public void write(BinaryOutput output) throws IOException {
         output.writeIdentifier(this.channel);
+        output.writeInt(this.sequence);
         output.writeLong(this.timestamp);
         output.writeInt(this.authorId);
         output.writeShort(this.width);
@@ -84,6 +91,10 @@ public Identifier getChannel() {
         return channel;
     }
 
+    public int getSequence() {
+        return sequence;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
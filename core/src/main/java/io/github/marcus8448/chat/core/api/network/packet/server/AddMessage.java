@@ -31,6 +31,10 @@
  */
 public class AddMessage implements NetworkedData {
     private final Identifier channel;
+    /**
+     * The position of the message in the channel's history
+     */
+    private final int sequence;
     /**
      * WHen the message was received on the server
      */
@@ -50,14 +54,16 @@ public class AddMessage implements NetworkedData {
 
     public AddMessage(BinaryInput input) throws IOException {
         this.channel = input.readIdentifier();
+        this.sequence = input.readInt();
         this.timestamp = input.readLong();
         this.authorId = input.readInt();
         this.contents = input.readString();
         this.signature = input.readByteArray();
     }
 
-    public AddMessage(Identifier channel, long timestamp, int authorId, String contents, byte[] signature) {
+    public AddMessage(Identifier channel, int sequence, long timestamp, int authorId, String contents, byte[] signature) {
         this.channel = channel;
+        this.sequence = sequence;
         this.timestamp = timestamp;
         this.authorId = authorId;
         this.contents = contents;
@@ -67,6 +73,7 @@ public AddMessage(Identifier channel, long timestamp, int authorId, String conte
     @Override
     public void write(BinaryOutput output) throws IOException {
         output.writeIdentifier(this.channel);
+        output.writeInt(this.sequence);
         output.writeLong(this.timestamp);
         output.writeInt(this.authorId);
         output.writeString(this.contents);
@@ -77,6 +84,10 @@ public Identifier getChannel() {
         return channel;
     }
 
+    public int getSequence() {
+        return sequence;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -22,44 +22,66 @@
 import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
 
 import java.io.IOException;
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 
 public class AuthenticationRequest implements NetworkedData {
     /**
      * The server's public key
      */
-    private final RSAPublicKey key;
+    private final PublicKey key;
     /**
-     * The encoded AES key for future communications
+     * Random challenge that the client must sign to prove its identity
      */
     private final byte[] authData;
+    /**
+     * The server's X25519 key, for deriving the session key
+     */
+    private final PublicKey exchangeKey;
+    /**
+     * Signature of the exchange key, made with the server's key
+     */
+    private final byte[] exchangeSignature;
 
-    public AuthenticationRequest(RSAPublicKey key, byte[] authData) {
+    public AuthenticationRequest(PublicKey key, byte[] authData, PublicKey exchangeKey, byte[] exchangeSignature) {
         this.key = key;
         this.authData = authData;
+        this.exchangeKey = exchangeKey;
+        this.exchangeSignature = exchangeSignature;
     }
 
     public AuthenticationRequest(BinaryInput input) throws IOException {
         try {
-            this.key = CryptoHelper.decodeRsaPublicKey(input.readByteArray());
+            this.key = CryptoHelper.decodePublicKey(input.readByteArray()); // RSA or Ed25519
+            this.authData = input.readByteArray();
+            this.exchangeKey = CryptoHelper.decodeX25519PublicKey(input.readByteArray());
         } catch (InvalidKeySpecException e) {
             throw new RuntimeException(e);
         }
-        this.authData = input.readByteArray();
+        this.exchangeSignature = input.readByteArray();
     }
 
     @Override
     public void write(BinaryOutput output) throws IOException {
         output.writeByteArray(this.key.getEncoded());
         output.writeByteArray(this.authData);
+        output.writeByteArray(this.exchangeKey.getEncoded());
+        output.writeByteArray(this.exchangeSignature);
     }
 
-    public RSAPublicKey getServerKey() {
+    public PublicKey getServerKey() {
         return key;
     }
 
     public byte[] getAuthData() {
         return authData;
     }
+
+    public PublicKey getExchangeKey() {
+        return exchangeKey;
+    }
+
+    public byte[] getExchangeSignature() {
+        return exchangeSignature;
+    }
 }
@@ -16,62 +16,28 @@
 
 package io.github.marcus8448.chat.core.api.network.packet.server;
 
-import io.github.marcus8448.chat.core.api.account.User;
-import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
-import io.github.marcus8448.chat.core.api.misc.Identifier;
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
 import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
 import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
 
 import java.io.IOException;
-import java.security.interfaces.RSAPublicKey;
-import java.security.spec.InvalidKeySpecException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 
 /**
  * Sent upon successful authentication of a client
+ * The online users are sent afterwards (encrypted), once the client asks for them
  *
  * @see AuthenticationFailure
  * @see io.github.marcus8448.chat.core.api.network.packet.client.Authenticate
+ * @see io.github.marcus8448.chat.core.api.network.packet.client.SyncPresence
  */
 public class AuthenticationSuccess implements NetworkedData {
-    private final List<User> users;
-
-    public AuthenticationSuccess(Collection<User> users) {
-        this.users = new ArrayList<>(users); //copy
+    public AuthenticationSuccess() {
     }
 
     public AuthenticationSuccess(BinaryInput input) throws IOException {
-        int len = input.readShort();
-        this.users = new ArrayList<>(len);
-        for (int i = 0; i < len; i++) {
-            int sessionId = input.readInt();
-            RSAPublicKey key = null;
-            try {
-                key = CryptoHelper.decodeRsaPublicKey(input.readByteArray());
-            } catch (InvalidKeySpecException e) {
-                throw new RuntimeException(e);
-            }
-            Identifier username = Identifier.create(input.readString());
-//            byte[] icon = input.readByteArray();
-            this.users.add(new User(sessionId, username, key, null));
-        }
     }
 
     @Override
     public void write(BinaryOutput output) throws IOException {
-        output.writeShort(this.users.size());
-        for (User user : this.users) {
-            output.writeInt(user.sessionId());
-            output.writeByteArray(user.key().getEncoded());
-            output.writeString(user.username().getValue());
-//            output.writeByteArray(user.icon());
-        }
-    }
-
-    public List<User> getUsers() {
-        return users;
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+
+import java.io.IOException;
+
+/**
+ * The contents of an encoded image, sent in response to a request
+ *
+ * @see io.github.marcus8448.chat.core.api.network.packet.client.RequestImage
+ */
+public class ImageData implements NetworkedData {
+    /**
+     * The hash of the image
+     */
+    private final byte[] hash;
+    /**
+     * The encoded image, or an empty array if the server does not have it
+     */
+    private final byte[] data;
+
+    public ImageData(BinaryInput input) throws IOException {
+        this.hash = input.readByteArray(EncodedImageMessage.HASH_LENGTH);
+        this.data = EncodedImageMessage.readData(input);
+    }
+
+    public ImageData(byte[] hash, byte[] data) {
+        this.hash = hash;
+        this.data = data;
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeByteArray(EncodedImageMessage.HASH_LENGTH, this.hash);
+        EncodedImageMessage.writeData(output, this.data);
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
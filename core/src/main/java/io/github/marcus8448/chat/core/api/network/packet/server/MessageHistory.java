@@ -0,0 +1,256 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.account.User;
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.message.*;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
+import io.github.marcus8448.chat.core.impl.account.SystemAccount;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A contiguous page of a channel's messages, sent in response to a history request
+ * Authors are written once per page (and referenced by index) and timestamps are written as deltas
+ * Authors of historical messages may no longer be online, so they do not have a session id (-1)
+ *
+ * @see RequestHistory
+ */
+public class MessageHistory implements NetworkedData {
+    private final Identifier channel;
+    /**
+     * The id of the server's history (random, and different every time the server starts)
+     * Sequence numbers from a history with a different id refer to unrelated messages
+     */
+    private final long historyId;
+    /**
+     * The sequence number of the first message in the page
+     * Each following message has a sequence number one greater than the last
+     */
+    private final int firstSequence;
+    /**
+     * The sequence number of the oldest message the server still has (older messages have been dropped)
+     */
+    private final int oldestSequence;
+    /**
+     * The sequence number of the newest message in the channel when the page was created
+     */
+    private final int latestSequence;
+    /**
+     * The messages, ordered from oldest to newest
+     */
+    private final List<Message> messages;
+
+    public MessageHistory(Identifier channel, long historyId, int firstSequence, int oldestSequence, int latestSequence, List<Message> messages) {
+        this.channel = channel;
+        this.historyId = historyId;
+        this.firstSequence = firstSequence;
+        this.oldestSequence = oldestSequence;
+        this.latestSequence = latestSequence;
+        this.messages = messages;
+    }
+
+    public MessageHistory(BinaryInput input) throws IOException {
+        this.channel = input.readIdentifier();
+        this.historyId = input.readLong();
+        this.firstSequence = input.readVarInt();
+        this.oldestSequence = input.readVarInt();
+        this.latestSequence = input.readInt();
+
+        // read the author table
+        MessageAuthor[] authors = new MessageAuthor[input.readVarInt()];
+        for (int i = 0; i < authors.length; i++) {
+            boolean system = input.readBoolean();
+            Identifier username = system ? null : Identifier.create(input.readString());
+            PublicKey key;
+            try {
+                key = CryptoHelper.decodePublicKey(input.readByteArray());
+            } catch (InvalidKeySpecException e) {
+                throw new RuntimeException(e);
+            }
+            authors[i] = system ? MessageAuthor.system(key) : new User(-1, username, key, null);
+        }
+
+        int len = input.readVarInt();
+        this.messages = new ArrayList<>(len);
+        long timestamp = 0;
+        MessageAuthor author = null;
+        for (int i = 0; i < len; i++) {
+            MessageType type = MessageType.values()[input.readByte()];
+            timestamp += decodeZigZag(input.readVarLong()); // stored as the difference from the previous message
+            int authorRef = input.readVarInt();
+            if (authorRef != 0) author = authors[authorRef - 1]; // 0 = same author as the previous message
+            this.messages.add(switch (type) {
+                case TEXT -> {
+                    String contents = input.readString();
+                    yield Message.text(timestamp, author, contents, input.readByteArray());
+                }
+                case IMAGE -> {
+                    int width = input.readShort();
+                    int height = input.readShort();
+                    int[] image = input.readIntArray(width * height);
+                    yield new ImageMessage(timestamp, author, width, height, image, input.readByteArray());
+                }
+                case ENCODED_IMAGE -> {
+                    int width = input.readShort();
+                    int height = input.readShort();
+                    byte[] hash = input.readByteArray(EncodedImageMessage.HASH_LENGTH);
+                    byte[] previewHash = EncodedImageMessage.readOptionalHash(input);
+                    yield new EncodedImageMessage(timestamp, author, width, height, hash, previewHash, input.readByteArray());
+                }
+            });
+        }
+    }
+
+    /**
+     * Maps signed values to unsigned ones (0, -1, 1, -2, ...) so that small negative deltas stay small
+     */
+    private static long encodeZigZag(long l) {
+        return l << 1 ^ l >> 63;
+    }
+
+    private static long decodeZigZag(long l) {
+        return l >>> 1 ^ -(l & 1);
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        writeHeader(output, this.channel, this.historyId, this.firstSequence, this.oldestSequence, this.latestSequence);
+
+        // collect the authors of the page, so that each one is only written once
+        Map<MessageAuthor, Integer> authorIds = new HashMap<>();
+        List<MessageAuthor> authors = new ArrayList<>();
+        for (Message message : this.messages) {
+            if (authorIds.putIfAbsent(message.getAuthor(), authors.size()) == null) {
+                authors.add(message.getAuthor());
+            }
+        }
+
+        output.writeVarInt(authors.size());
+        for (MessageAuthor author : authors) {
+            writeAuthor(output, author);
+        }
+
+        output.writeVarInt(this.messages.size());
+        long timestamp = 0;
+        MessageAuthor author = null;
+        for (Message message : this.messages) {
+            int authorRef = 0;
+            if (!message.getAuthor().equals(author)) {
+                author = message.getAuthor();
+                authorRef = authorIds.get(author) + 1;
+            }
+            writeMessageHeader(output, message, timestamp, authorRef);
+            timestamp = message.getTimestamp();
+            writeContents(output, message);
+        }
+    }
+
+    /**
+     * Writes the start of a page, before the author table
+     * The static write methods let pages be assembled from parts that were encoded ahead of time
+     *
+     * @see #write(BinaryOutput)
+     */
+    public static void writeHeader(BinaryOutput output, Identifier channel, long historyId, int firstSequence, int oldestSequence, int latestSequence) throws IOException {
+        output.writeIdentifier(channel);
+        output.writeLong(historyId);
+        output.writeVarInt(firstSequence);
+        output.writeVarInt(oldestSequence);
+        output.writeInt(latestSequence);
+    }
+
+    /**
+     * Writes an entry of the author table
+     */
+    public static void writeAuthor(BinaryOutput output, MessageAuthor author) throws IOException {
+        boolean system = author instanceof SystemAccount;
+        output.writeBoolean(system);
+        if (!system) output.writeString(author.getName());
+        output.writeByteArray(author.getPublicKey().getEncoded());
+    }
+
+    /**
+     * Writes the part of a message that depends on the message before it in the page
+     *
+     * @param previousTimestamp the timestamp of the previous message in the page (0 for the first message)
+     * @param authorRef         the index of the author in the author table + 1, or 0 if it is the previous message's author
+     */
+    public static void writeMessageHeader(BinaryOutput output, Message message, long previousTimestamp, int authorRef) throws IOException {
+        output.writeByte(message.getType().ordinal());
+        output.writeVarLong(encodeZigZag(message.getTimestamp() - previousTimestamp));
+        output.writeVarInt(authorRef);
+    }
+
+    /**
+     * Writes the part of a message that does not depend on the rest of the page (its contents and signature)
+     */
+    public static void writeContents(BinaryOutput output, Message message) throws IOException {
+        switch (message.getType()) {
+            case TEXT -> output.writeString(((TextMessage) message).getMessage());
+            case IMAGE -> {
+                ImageMessage image = (ImageMessage) message;
+                output.writeShort(image.width());
+                output.writeShort(image.height());
+                output.writeIntArray(image.width() * image.height(), image.image());
+            }
+            case ENCODED_IMAGE -> {
+                EncodedImageMessage image = (EncodedImageMessage) message;
+                output.writeShort(image.width());
+                output.writeShort(image.height());
+                output.writeByteArray(EncodedImageMessage.HASH_LENGTH, image.hash());
+                EncodedImageMessage.writeOptionalHash(output, image.previewHash());
+            }
+        }
+        output.writeByteArray(message.getSignature());
+    }
+
+    public Identifier getChannel() {
+        return channel;
+    }
+
+    public long getHistoryId() {
+        return historyId;
+    }
+
+    public int getFirstSequence() {
+        return firstSequence;
+    }
+
+    public int getOldestSequence() {
+        return oldestSequence;
+    }
+
+    public int getLatestSequence() {
+        return latestSequence;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+}
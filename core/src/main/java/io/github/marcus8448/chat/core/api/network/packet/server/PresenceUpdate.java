@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.account.User;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestKeys;
+import io.github.marcus8448.chat.core.api.network.packet.client.SyncPresence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A change to the list of online users
+ * <p>
+ * The server's user list is versioned: every join or leave increments the version. An update either replaces the
+ * whole list ({@link #isFull() full}), or moves a client that has version {@link #getFromVersion()} to
+ * {@link #getVersion()}. Users are sent without their public keys - only the fingerprint, which clients use to
+ * look up (or {@link RequestKeys request}) the key when they need it.
+ *
+ * @see SyncPresence
+ */
+public class PresenceUpdate implements NetworkedData {
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    /**
+     * Identifies the server's user list (changes when the server restarts, as session ids are reused)
+     */
+    private final long epoch;
+    /**
+     * The version that this update applies to (ignored for full updates)
+     */
+    private final int fromVersion;
+    /**
+     * The version after this update
+     */
+    private final int version;
+    /**
+     * Whether this update replaces the whole user list
+     */
+    private final boolean full;
+    /**
+     * The users that joined (or all online users, for full updates) - without keys
+     */
+    private final List<User> joined;
+    /**
+     * The session ids of the users that left
+     */
+    private final int[] left;
+
+    public PresenceUpdate(long epoch, int fromVersion, int version, boolean full, Collection<User> joined, int[] left) {
+        this.epoch = epoch;
+        this.fromVersion = fromVersion;
+        this.version = version;
+        this.full = full;
+        this.joined = new ArrayList<>(joined); //copy
+        this.left = left;
+    }
+
+    public PresenceUpdate(BinaryInput input) throws IOException {
+        this.epoch = input.readLong();
+        this.fromVersion = input.readInt();
+        this.version = input.readInt();
+        this.full = input.readBoolean();
+        int len = input.readVarInt();
+        this.joined = new ArrayList<>(len);
+        for (int i = 0; i < len; i++) {
+            int sessionId = input.readVarInt();
+            Identifier username = Identifier.create(input.readString());
+            String fingerprint = HEX.formatHex(input.readByteArray(32));
+            this.joined.add(new User(sessionId, username, null, null, fingerprint));
+        }
+        this.left = new int[input.readVarInt()];
+        for (int i = 0; i < this.left.length; i++) {
+            this.left[i] = input.readVarInt();
+        }
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeLong(this.epoch);
+        output.writeInt(this.fromVersion);
+        output.writeInt(this.version);
+        output.writeBoolean(this.full);
+        output.writeVarInt(this.joined.size());
+        for (User user : this.joined) {
+            output.writeVarInt(user.sessionId());
+            output.writeString(user.username().getValue());
+            output.writeByteArray(32, HEX.parseHex(user.fingerprint())); // raw SHA-256, instead of the whole key
+        }
+        output.writeVarInt(this.left.length);
+        for (int id : this.left) {
+            output.writeVarInt(id);
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getFromVersion() {
+        return fromVersion;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<User> getJoined() {
+        return joined;
+    }
+
+    public int[] getLeft() {
+        return left;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.SearchMessages;
+
+import java.io.IOException;
+
+/**
+ * A page of messages that matched a search
+ * Messages are referenced by their sequence numbers (they can be fetched through the history requests)
+ *
+ * @see SearchMessages
+ */
+public class SearchResults implements NetworkedData {
+    private final Identifier channel;
+    /**
+     * The query that was searched for
+     */
+    private final String query;
+    /**
+     * The sequence numbers of the matching messages, newest first
+     */
+    private final int[] sequences;
+    /**
+     * The value to use as {@link SearchMessages#getBefore()} to get the next page (or -1 if there are no more results)
+     */
+    private final int next;
+
+    public SearchResults(Identifier channel, String query, int[] sequences, int next) {
+        this.channel = channel;
+        this.query = query;
+        this.sequences = sequences;
+        this.next = next;
+    }
+
+    public SearchResults(BinaryInput input) throws IOException {
+        this.channel = input.readIdentifier();
+        this.query = input.readString();
+        this.sequences = new int[input.readVarInt()];
+        int sequence = 0;
+        for (int i = 0; i < this.sequences.length; i++) {
+            // first value is absolute, then the distance to the previous (larger) value
+            sequence = i == 0 ? input.readVarInt() : sequence - input.readVarInt();
+            this.sequences[i] = sequence;
+        }
+        this.next = input.readInt();
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeIdentifier(this.channel);
+        output.writeString(this.query);
+        output.writeVarInt(this.sequences.length);
+        for (int i = 0; i < this.sequences.length; i++) {
+            output.writeVarInt(i == 0 ? this.sequences[i] : this.sequences[i - 1] - this.sequences[i]);
+        }
+        output.writeInt(this.next);
+    }
+
+    public Identifier getChannel() {
+        return channel;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public int[] getSequences() {
+        return sequences;
+    }
+
+    public int getNext() {
+        return next;
+    }
+}
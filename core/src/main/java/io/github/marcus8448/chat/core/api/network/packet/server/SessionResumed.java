@@ -19,32 +19,36 @@
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
 import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
 import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeSession;
 
 import java.io.IOException;
 
 /**
- * Sent to all clients when a user disconnects from the server
+ * Sent when a client's session ticket was accepted
+ *
+ * @see ResumeSession
+ * @see io.github.marcus8448.chat.core.api.crypto.Handshake#deriveResumedSessionKey
  */
-public class UserDisconnect implements NetworkedData {
+public class SessionResumed implements NetworkedData {
     /**
-     * The session id of the disconnected user
+     * The server's fresh random bytes (for deriving the new session key)
      */
-    private final int id;
+    private final byte[] nonce;
 
-    public UserDisconnect(int id) {
-        this.id = id;
+    public SessionResumed(byte[] nonce) {
+        this.nonce = nonce;
     }
 
-    public UserDisconnect(BinaryInput input) throws IOException {
-        this.id = input.readInt();
+    public SessionResumed(BinaryInput input) throws IOException {
+        this.nonce = input.readByteArray();
     }
 
     @Override
     public void write(BinaryOutput output) throws IOException {
-        output.writeInt(this.id);
+        output.writeByteArray(this.nonce);
     }
 
-    public int getId() {
-        return id;
+    public byte[] getNonce() {
+        return nonce;
     }
 }
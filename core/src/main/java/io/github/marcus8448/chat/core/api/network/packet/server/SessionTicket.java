@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeSession;
+
+import java.io.IOException;
+
+/**
+ * Sent (encrypted) after login, so that the client can quickly resume the session if it gets disconnected
+ * Each ticket can only be used once - a new one is sent after every resumption
+ *
+ * @see ResumeSession
+ */
+public class SessionTicket implements NetworkedData {
+    /**
+     * The ticket, encrypted with a key only known to the server
+     */
+    private final byte[] ticket;
+    /**
+     * The secret that the ticket is bound to
+     */
+    private final byte[] secret;
+    /**
+     * How long the ticket can be used for, in seconds
+     */
+    private final int lifetime;
+
+    public SessionTicket(byte[] ticket, byte[] secret, int lifetime) {
+        this.ticket = ticket;
+        this.secret = secret;
+        this.lifetime = lifetime;
+    }
+
+    public SessionTicket(BinaryInput input) throws IOException {
+        this.ticket = input.readByteArray();
+        this.secret = input.readByteArray();
+        this.lifetime = input.readVarInt();
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeByteArray(this.ticket);
+        output.writeByteArray(this.secret);
+        output.writeVarInt(this.lifetime);
+    }
+
+    public byte[] getTicket() {
+        return ticket;
+    }
+
+    public byte[] getSecret() {
+        return secret;
+    }
+
+    public int getLifetime() {
+        return lifetime;
+    }
+}
@@ -28,6 +28,10 @@
  */
 public class SystemMessage implements NetworkedData {
     private final Identifier channel;
+    /**
+     * The position of the message in the channel's history
+     */
+    private final int sequence;
     /**
      * When the server sent the message
      */
@@ -41,8 +45,9 @@ public class SystemMessage implements NetworkedData {
      */
     private final byte[] signature;
 
-    public SystemMessage(Identifier channel, long timestamp, String contents, byte[] signature) {
+    public SystemMessage(Identifier channel, int sequence, long timestamp, String contents, byte[] signature) {
         this.channel = channel;
+        this.sequence = sequence;
         this.timestamp = timestamp;
         this.contents = contents;
         this.signature = signature;
@@ -50,6 +55,7 @@ public SystemMessage(Identifier channel, long timestamp, String contents, byte[]
 
     public SystemMessage(BinaryInput input) throws IOException {
         this.channel = input.readIdentifier();
+        this.sequence = input.readInt();
         this.timestamp = input.readLong();
         this.contents = input.readString();
         this.signature = input.readByteArray();
@@ -58,6 +64,7 @@ public SystemMessage(BinaryInput input) throws IOException {
     @Override
     public void write(BinaryOutput output) throws IOException {
         output.writeIdentifier(this.channel);
+        output.writeInt(this.sequence);
         output.writeLong(this.timestamp);
         output.writeString(this.contents);
         output.writeByteArray(this.signature);
@@ -67,6 +74,10 @@ public Identifier getChannel() {
         return channel;
     }
 
+    public int getSequence() {
+        return sequence;
+    }
+
     public byte[] getSignature() {
         return signature;
     }
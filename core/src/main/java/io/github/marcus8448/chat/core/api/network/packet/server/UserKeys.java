@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.core.api.network.packet.server;
+
+import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestKeys;
+
+import java.io.IOException;
+import java.util.HexFormat;
+
+/**
+ * The public keys of the requested users
+ * Keys are sent encoded - clients only decode the ones they need, and should check them against the fingerprint
+ *
+ * @see RequestKeys
+ */
+public class UserKeys implements NetworkedData {
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    /**
+     * The fingerprints of the requested keys
+     */
+    private final String[] fingerprints;
+    /**
+     * The encoded keys (empty if the server does not know the key)
+     */
+    private final byte[][] keys;
+
+    public UserKeys(String[] fingerprints, byte[][] keys) {
+        this.fingerprints = fingerprints;
+        this.keys = keys;
+    }
+
+    public UserKeys(BinaryInput input) throws IOException {
+        int len = input.readVarInt();
+        this.fingerprints = new String[len];
+        this.keys = new byte[len][];
+        for (int i = 0; i < len; i++) {
+            this.fingerprints[i] = HEX.formatHex(input.readByteArray(32));
+            this.keys[i] = input.readByteArray();
+        }
+    }
+
+    @Override
+    public void write(BinaryOutput output) throws IOException {
+        output.writeVarInt(this.fingerprints.length);
+        for (int i = 0; i < this.fingerprints.length; i++) {
+            output.writeByteArray(32, HEX.parseHex(this.fingerprints[i]));
+            output.writeByteArray(this.keys[i]);
+        }
+    }
+
+    public String[] getFingerprints() {
+        return fingerprints;
+    }
+
+    public byte[][] getKeys() {
+        return keys;
+    }
+}
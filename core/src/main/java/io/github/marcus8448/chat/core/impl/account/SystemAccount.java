@@ -16,16 +16,42 @@
 
 package io.github.marcus8448.chat.core.impl.account;
 
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
 import io.github.marcus8448.chat.core.api.message.MessageAuthor;
 
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 
 /**
  * Account that represents the server/system (not a client)
  *
- * @param publicKey the server's public key
+ * @param publicKey   the server's public key
+ * @param fingerprint the SHA-256 hash of the server's public key
  */
-public record SystemAccount(RSAPublicKey publicKey) implements MessageAuthor {
+public record SystemAccount(PublicKey publicKey, String fingerprint) implements MessageAuthor {
+    /**
+     * The most recently created account, reused while the server's key stays the same
+     */
+    private static volatile SystemAccount last = null;
+
+    public SystemAccount(PublicKey publicKey) {
+        this(publicKey, CryptoHelper.sha256Hash(publicKey.getEncoded()));
+    }
+
+    /**
+     * Returns the account of the server with the given key, only hashing the key if it changed
+     *
+     * @param publicKey the server's public key
+     * @return the server's account
+     */
+    public static SystemAccount of(PublicKey publicKey) {
+        SystemAccount account = last;
+        if (account == null || !account.publicKey.equals(publicKey)) {
+            account = new SystemAccount(publicKey);
+            last = account;
+        }
+        return account;
+    }
+
     @Override
     public String getShortIdName() {
         return "SYSTEM";
@@ -42,7 +68,12 @@ public String getName() {
     }
 
     @Override
-    public RSAPublicKey getPublicKey() {
+    public PublicKey getPublicKey() {
         return this.publicKey;
     }
+
+    @Override
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
 }
@@ -16,6 +16,8 @@
 
 package io.github.marcus8448.chat.core.impl.message;
 
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.CryptoPool;
 import io.github.marcus8448.chat.core.api.message.MessageAuthor;
 import io.github.marcus8448.chat.core.api.message.TextMessage;
 
@@ -51,13 +53,16 @@ public byte[] getSignature() {
 
     @Override
     public boolean verifySignature() {
-        Signature signature = RSA_SIGNATURE.get(); // get the global RSA signature instance
+        CryptoPool<Signature> pool = CryptoHelper.signatures(this.getAuthor().getPublicKey()); // RSA or Ed25519, depending on the author
+        Signature signature = pool.acquire(); // take a signature instance from the pool
         try {
             signature.initVerify(this.getAuthor().getPublicKey()); // initialize the instance with the author's key
             signature.update(this.contents.getBytes(StandardCharsets.UTF_8)); // set the data to be the message contents
             return signature.verify(this.getSignature()); // verify the contents
         } catch (InvalidKeyException | SignatureException e) {
             return false; // the verification failed so return false.
+        } finally {
+            pool.release(signature);
         }
     }
 
@@ -18,6 +18,7 @@
 
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
 import io.github.marcus8448.chat.core.api.network.PacketPipeline;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
 import io.github.marcus8448.chat.core.api.network.packet.Packet;
 import io.github.marcus8448.chat.core.api.network.packet.PacketType;
 import org.jetbrains.annotations.NotNull;
@@ -76,6 +77,11 @@ public <Data extends NetworkedData> void send(PacketType<Data> type, Data networ
         this.peer.receive(new Packet<>(type, networkedData));
     }
 
+    @Override
+    public void send(EncodedPacket packet) throws IOException {
+        this.peer.receive(packet.decode()); // the peer expects real packet data
+    }
+
     @Override
     public <Data extends NetworkedData> Packet<Data> receivePacket() throws IOException {
         if (this.pending.isEmpty()) { // check if there are available packets
@@ -49,6 +49,28 @@ public long readLong() throws IOException {
                 | ((long) (this.readByte() & 0xFF) << 8) | ((long) (this.readByte() & 0xFF));
     }
 
+    @Override
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = this.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value; // no continuation flag, so this is the last byte
+        }
+        throw new IOException("VarInt is too long");
+    }
+
+    @Override
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = this.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("VarLong is too long");
+    }
+
     @Override
     public boolean readBoolean() throws IOException {
         return this.readByte() == 1;
@@ -64,6 +64,26 @@ public BinaryOutput writeLong(long l) throws IOException {
         return this;
     }
 
+    @Override
+    public BinaryOutput writeVarInt(int i) throws IOException {
+        while ((i & ~0x7F) != 0) { // more than 7 bits left
+            this.writeByte(i & 0x7F | 0x80); // write the low bits with the continuation flag
+            i >>>= 7;
+        }
+        this.writeByte(i);
+        return this;
+    }
+
+    @Override
+    public BinaryOutput writeVarLong(long l) throws IOException {
+        while ((l & ~0x7FL) != 0) {
+            this.writeByte((int) (l & 0x7F | 0x80));
+            l >>>= 7;
+        }
+        this.writeByte((int) l);
+        return this;
+    }
+
     @Override
     public BinaryOutput writeByteArray(byte @NotNull [] bytes) throws IOException {
         this.writeShort(bytes.length);
@@ -28,10 +28,15 @@ public class FixedBinaryInput extends BaseBinaryInput {
     /**
      * The number of bytes written to this input
      */
-    private int pos = 0;
+    private int pos;
 
     public FixedBinaryInput(byte[] bytes) {
+        this(bytes, 0);
+    }
+
+    public FixedBinaryInput(byte[] bytes, int offset) {
         this.bytes = bytes;
+        this.pos = offset;
     }
 
     @Override
@@ -103,4 +103,40 @@ void testWriteInt() throws IOException {
         assertEquals(70, this.input.readInt());
         assertEquals(-49, this.input.readInt());
     }
+
+    @Test
+    void testWriteVarInt() throws IOException {
+        this.output
+                .writeVarInt(0)
+                .writeVarInt(127)
+                .writeVarInt(128)
+                .writeVarInt(Integer.MAX_VALUE)
+                .writeVarInt(Integer.MIN_VALUE)
+                .writeVarInt(300)
+                .writeVarInt(-1);
+
+        assertEquals(0, this.input.readVarInt());
+        assertEquals(127, this.input.readVarInt());
+        assertEquals(128, this.input.readVarInt());
+        assertEquals(Integer.MAX_VALUE, this.input.readVarInt());
+        assertEquals(Integer.MIN_VALUE, this.input.readVarInt());
+        assertEquals(300, this.input.readVarInt());
+        assertEquals(-1, this.input.readVarInt());
+    }
+
+    @Test
+    void testWriteVarLong() throws IOException {
+        this.output
+                .writeVarLong(0)
+                .writeVarLong(Long.MAX_VALUE)
+                .writeVarLong(Long.MIN_VALUE)
+                .writeVarLong(1682900000000L)
+                .writeVarLong(-42);
+
+        assertEquals(0, this.input.readVarLong());
+        assertEquals(Long.MAX_VALUE, this.input.readVarLong());
+        assertEquals(Long.MIN_VALUE, this.input.readVarLong());
+        assertEquals(1682900000000L, this.input.readVarLong());
+        assertEquals(-42, this.input.readVarLong());
+    }
 }
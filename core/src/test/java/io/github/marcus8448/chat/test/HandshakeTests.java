@@ -0,0 +1,146 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.test;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.Handshake;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HandshakeTests {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final HexFormat HEX = HexFormat.of();
+    /**
+     * Shared server identity - RSA key generation is slow
+     */
+    private static final KeyPair SERVER = CryptoHelper.generateRsaKeyPair();
+
+    @Test
+    void testHkdfRfc5869() {
+        // RFC 5869, test case 1
+        byte[] ikm = HEX.parseHex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b");
+        byte[] salt = HEX.parseHex("000102030405060708090a0b0c");
+        byte[] info = HEX.parseHex("f0f1f2f3f4f5f6f7f8f9");
+        assertEquals("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf34007208d5b887185865",
+                HEX.formatHex(CryptoHelper.hkdfSha256(salt, ikm, info, 42)));
+    }
+
+    @Test
+    void testSessionKeysMatch() throws Exception {
+        KeyPair client = CryptoHelper.generateEd25519KeyPair();
+        KeyPair clientExchange = CryptoHelper.generateX25519KeyPair();
+        KeyPair serverExchange = CryptoHelper.generateX25519KeyPair();
+        byte[] exchangeSignature = Handshake.signExchangeKey(SERVER.getPrivate(), serverExchange.getPublic());
+        byte[] challenge = new byte[Handshake.CHALLENGE_LENGTH];
+        CryptoHelper.secureRandom().nextBytes(challenge);
+
+        // client
+        assertTrue(Handshake.verifyExchangeKey(SERVER.getPublic(), serverExchange.getPublic(), exchangeSignature));
+        assertFalse(Handshake.verifyExchangeKey(SERVER.getPublic(), clientExchange.getPublic(), exchangeSignature));
+        byte[] transcript = Handshake.transcript(challenge, clientExchange.getPublic(), serverExchange.getPublic());
+        SecretKey clientKey = Handshake.deriveSessionKey(clientExchange.getPrivate(), serverExchange.getPublic(), transcript);
+        byte[] signature = CryptoHelper.sign(client.getPrivate(), transcript);
+
+        // server
+        byte[] serverTranscript = Handshake.transcript(challenge, clientExchange.getPublic(), serverExchange.getPublic());
+        assertTrue(CryptoHelper.verify(client.getPublic(), signature, serverTranscript));
+        SecretKey serverKey = Handshake.deriveSessionKey(serverExchange.getPrivate(), clientExchange.getPublic(), serverTranscript);
+        assertArrayEquals(clientKey.getEncoded(), serverKey.getEncoded());
+
+        // a different challenge gives a different key, and invalidates the signature
+        challenge[0]++;
+        byte[] otherTranscript = Handshake.transcript(challenge, clientExchange.getPublic(), serverExchange.getPublic());
+        assertFalse(CryptoHelper.verify(client.getPublic(), signature, otherTranscript));
+        assertFalse(HEX.formatHex(clientKey.getEncoded()).equals(HEX.formatHex(Handshake.deriveSessionKey(serverExchange.getPrivate(), clientExchange.getPublic(), otherTranscript).getEncoded())));
+    }
+
+    @Test
+    void testResumedSessionKeysMatch() {
+        byte[] secret = new byte[32];
+        byte[] ticket = new byte[64];
+        byte[] clientNonce = new byte[Handshake.CHALLENGE_LENGTH];
+        byte[] serverNonce = new byte[Handshake.CHALLENGE_LENGTH];
+        CryptoHelper.secureRandom().nextBytes(secret);
+        CryptoHelper.secureRandom().nextBytes(ticket);
+        CryptoHelper.secureRandom().nextBytes(clientNonce);
+        CryptoHelper.secureRandom().nextBytes(serverNonce);
+
+        byte[] binder = Handshake.resumeBinder(secret, ticket, clientNonce);
+        assertTrue(Handshake.verifyResumeBinder(secret, ticket, clientNonce, binder));
+        assertFalse(Handshake.verifyResumeBinder(secret, ticket, serverNonce, binder)); // replayed with another nonce
+        assertFalse(Handshake.verifyResumeBinder(new byte[32], ticket, clientNonce, binder)); // without the secret
+
+        SecretKey client = Handshake.deriveResumedSessionKey(secret, clientNonce, serverNonce);
+        SecretKey server = Handshake.deriveResumedSessionKey(secret, clientNonce, serverNonce);
+        assertArrayEquals(client.getEncoded(), server.getEncoded());
+        assertFalse(Arrays.equals(client.getEncoded(), Handshake.deriveResumedSessionKey(secret, clientNonce, clientNonce).getEncoded()));
+    }
+
+    /**
+     * Compares the server's CPU cost per login of the previous RSA-wrapped session key against the X25519 handshake
+     * Not part of the normal test run (see the benchmark task)
+     */
+    @Test
+    @Tag("benchmark")
+    void benchmarkServerHandshake() throws Exception {
+        KeyPair client = SERVER; // the cost is the same with a separate client key, which would be slow to generate
+        KeyPair serverExchange = CryptoHelper.generateX25519KeyPair();
+        byte[] challenge = new byte[Handshake.CHALLENGE_LENGTH];
+        int logins = 100;
+
+        // previous: encrypt the session key for the client, then decrypt the client's echo with the server key
+        byte[][] echoes = new byte[logins][];
+        for (int i = 0; i < logins; i++) {
+            echoes[i] = CryptoHelper.rsa(Cipher.ENCRYPT_MODE, SERVER.getPublic(), CryptoHelper.generateAesKey().getEncoded()); // client side (untimed)
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            CryptoHelper.rsa(Cipher.ENCRYPT_MODE, client.getPublic(), CryptoHelper.generateAesKey().getEncoded());
+            CryptoHelper.rsa(Cipher.DECRYPT_MODE, SERVER.getPrivate(), echoes[i]);
+        }
+        double rsa = (System.nanoTime() - start) / 1_000_000.0 / logins;
+
+        // prepare the client's half of the new handshake (untimed)
+        KeyPair[] exchanges = new KeyPair[logins];
+        byte[][] signatures = new byte[logins][];
+        for (int i = 0; i < logins; i++) {
+            exchanges[i] = CryptoHelper.generateX25519KeyPair();
+            signatures[i] = CryptoHelper.sign(client.getPrivate(), Handshake.transcript(challenge, exchanges[i].getPublic(), serverExchange.getPublic()));
+        }
+
+        // new: verify the client's signature and derive the session key
+        start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            byte[] transcript = Handshake.transcript(challenge, exchanges[i].getPublic(), serverExchange.getPublic());
+            assertTrue(CryptoHelper.verify(client.getPublic(), signatures[i], transcript));
+            Handshake.deriveSessionKey(serverExchange.getPrivate(), exchanges[i].getPublic(), transcript);
+        }
+        double x25519 = (System.nanoTime() - start) / 1_000_000.0 / logins;
+
+        LOGGER.info("Server CPU per login: RSA-wrapped {}ms, X25519 {}ms", String.format("%.3f", rsa), String.format("%.3f", x25519));
+    }
+}
@@ -25,8 +25,9 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.interfaces.RSAPrivateCrtKey;
-import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
 
@@ -34,25 +35,33 @@ public class Main {
     private static final Logger LOGGER = LogManager.getLogger();
 
     public static void main(String[] args) throws IOException, InvalidKeySpecException {
+        long startTime = System.nanoTime();
         LOGGER.info("Loading Chat Server v{}", Constants.VERSION);
         LOGGER.info("Running on Java {} ({} version {} from {})", System.getProperty("java.version"), System.getProperty("java.vm.name"), System.getProperty("java.vm.version"), System.getProperty("java.specification.vendor"));
         File privateKeyFile = new File("server.key");
-        RSAPublicKey publicKey;
-        RSAPrivateCrtKey privateKey;
+        File publicKeyFile = new File("server.pub");
+        PublicKey publicKey;
+        PrivateKey privateKey;
         if (!privateKeyFile.exists()) {
             LOGGER.warn("No existing server keypair found. Generating...");
-            KeyPair keyPair = CryptoHelper.RSA_KEY_GENERATOR.generateKeyPair();
-            privateKey = (RSAPrivateCrtKey) keyPair.getPrivate();
-            publicKey = (RSAPublicKey) keyPair.getPublic();
+            KeyPair keyPair = CryptoHelper.generateEd25519KeyPair(); // existing RSA keys are still loaded
+            privateKey = keyPair.getPrivate();
+            publicKey = keyPair.getPublic();
             LOGGER.info("Server keypair successfully generated");
             Files.write(privateKeyFile.toPath(), privateKey.getEncoded());
+            Files.write(publicKeyFile.toPath(), publicKey.getEncoded()); // Ed25519 private keys don't include the public key
         } else {
-            privateKey = CryptoHelper.decodeRsaPrivateKey(Files.readAllBytes(privateKeyFile.toPath()));
-            publicKey = (RSAPublicKey) CryptoHelper.RSA_KEY_FACTORY.generatePublic(new RSAPublicKeySpec(privateKey.getModulus(), privateKey.getPublicExponent(), privateKey.getParams()));
+            privateKey = CryptoHelper.decodePrivateKey(Files.readAllBytes(privateKeyFile.toPath()));
+            if (privateKey instanceof RSAPrivateCrtKey rsaKey) { // older servers only saved the private key
+                publicKey = CryptoHelper.decodeRsaPublicKey(new RSAPublicKeySpec(rsaKey.getModulus(), rsaKey.getPublicExponent(), rsaKey.getParams()));
+            } else {
+                publicKey = CryptoHelper.decodePublicKey(Files.readAllBytes(publicKeyFile.toPath()));
+            }
             LOGGER.info("Server keypair loaded successfully");
         }
         LOGGER.info("Identity: {}", CryptoHelper.sha256Hash(publicKey.getEncoded()));
-        try (Server server = new Server(Constants.PORT, publicKey, privateKey)) {
+        try (Server server = new Server(Constants.PORT, publicKey, privateKey, privateKeyFile.toPath().resolveSibling("revoked_tickets.txt"))) {
+            LOGGER.info("Server started in {}ms", (System.nanoTime() - startTime) / 1_000_000);
             server.launch();
         }
     }
@@ -20,17 +20,32 @@
 import io.github.marcus8448.chat.core.api.account.User;
 import io.github.marcus8448.chat.core.api.channel.Channel;
 import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.message.MessageAuthor;
 import io.github.marcus8448.chat.core.api.misc.Cell;
 import io.github.marcus8448.chat.core.api.misc.Identifier;
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
 import io.github.marcus8448.chat.core.api.network.PacketPipeline;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
 import io.github.marcus8448.chat.core.api.network.packet.PacketType;
 import io.github.marcus8448.chat.core.api.network.packet.ServerPacketTypes;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
 import io.github.marcus8448.chat.core.api.network.packet.common.ChannelList;
 import io.github.marcus8448.chat.core.api.network.packet.server.*;
+import io.github.marcus8448.chat.server.history.ChannelHistory;
+import io.github.marcus8448.chat.server.history.ImageStore;
+import io.github.marcus8448.chat.server.history.RecentMessages;
+import io.github.marcus8448.chat.server.image.ThumbnailGenerator;
+import io.github.marcus8448.chat.server.message.SystemAnnouncer;
 import io.github.marcus8448.chat.server.network.ClientConnectionHandler;
 import io.github.marcus8448.chat.server.network.ClientLoginConnectionHandler;
+import io.github.marcus8448.chat.server.network.ExchangeKeys;
+import io.github.marcus8448.chat.server.network.HandshakeScheduler;
+import io.github.marcus8448.chat.server.network.SessionTickets;
+import io.github.marcus8448.chat.server.search.SearchIndex;
 import io.github.marcus8448.chat.server.thread.ConnectionThreadFactory;
+import io.github.marcus8448.chat.server.util.Presence;
 import io.github.marcus8448.chat.server.util.Users;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -42,29 +57,76 @@
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
-import java.security.Signature;
+import java.security.PrivateKey;
+import java.security.PublicKey;
 import java.security.SignatureException;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class Server implements Closeable {
     private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The number of recent messages replayed to clients joining a channel
+     */
+    private static final int RECENT_MESSAGES = 50;
+    /**
+     * The maximum number of missed messages sent to a resuming client (per channel)
+     * Clients that are further behind only receive the most recent messages
+     */
+    private static final int MAX_RESUME_MESSAGES = 1000;
+    /**
+     * The maximum number of bytes of history kept per channel (older messages are dropped)
+     */
+    private static final int MAX_HISTORY_BYTES = 32 * 1024 * 1024;
+    /**
+     * How long (in milliseconds) a login may wait for a handshake worker, and for each packet from the client
+     */
+    private static final int HANDSHAKE_TIMEOUT = 10 * 1000;
+    /**
+     * How long (in milliseconds) joins and leaves are collected before they are announced together
+     */
+    private static final long ANNOUNCEMENT_WINDOW = 500;
+    /**
+     * The maximum number of keys sent in response to one request
+     */
+    private static final int MAX_KEY_REQUEST = 256;
+    /**
+     * How long (in milliseconds) to wait for an image preview before recording the image without one
+     */
+    private static final long PREVIEW_TIMEOUT = 5 * 1000;
     /**
      * The main executor service
      */
     public final ExecutorService executor;
     /**
-     * This server's public RSA key
+     * This server's public key (RSA or Ed25519)
+     */
+    public final PublicKey publicKey;
+    /**
+     * This server's private key (RSA or Ed25519)
+     */
+    public final PrivateKey privateKey;
+    /**
+     * The signed X25519 key used to derive session keys during login (rotated hourly)
+     */
+    public final ExchangeKeys exchangeKeys;
+    /**
+     * Issues the tickets that let disconnected clients quickly resume their session (valid for a day)
      */
-    public final RSAPublicKey publicKey;
+    public final SessionTickets sessionTickets;
     /**
-     * This server's private RSA key
+     * The author of SYSTEM messages (this server)
      */
-    public final RSAPrivateKey privateKey;
+    private final MessageAuthor systemAuthor;
+    /**
+     * Signs and sends the join/leave announcements (in batches, off the main thread)
+     */
+    private final SystemAnnouncer announcer;
     /**
      * The current main executor thread
      */
@@ -74,9 +136,10 @@ public class Server implements Closeable {
      */
     private final ExecutorService connectionExecutor;
     /**
-     * RSA signature instance initialized with the server's private key
+     * Runs login handshakes, separately from the connections of logged-in users
+     * At most two per core run at once, and up to 256 more (4 per address) wait in line
      */
-    private final Signature rsaSignature = CryptoHelper.createRsaSignature();
+    private final HandshakeScheduler handshakes = new HandshakeScheduler(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), 256, 4, HANDSHAKE_TIMEOUT, HANDSHAKE_TIMEOUT);
     /**
      * Active client connections
      */
@@ -85,10 +148,39 @@ public class Server implements Closeable {
      * Active (online) users
      */
     private final Users users = new Users();
+    /**
+     * The versioned list of online users (keeping the last 1024 changes for reconnecting clients)
+     */
+    private final Presence presence = new Presence(1024);
     /**
      * Map of channel names -> channels
      */
     private final Map<Identifier, Channel> channels = new HashMap<>();
+    /**
+     * Map of channel names -> message history
+     */
+    private final Map<Identifier, ChannelHistory> history = new HashMap<>();
+    /**
+     * The id of this run's message history (history is not kept across restarts, so sequence numbers start over)
+     */
+    private final long historyId = CryptoHelper.secureRandom().nextLong() | 1; // never 0 (no history)
+    /**
+     * The recent messages of each channel (pre-encoded)
+     * Capped at 4MiB per channel and 64MiB in total
+     */
+    private final RecentMessages recentMessages = new RecentMessages(RECENT_MESSAGES, 4 * 1024 * 1024, 64 * 1024 * 1024);
+    /**
+     * The encoded images referenced by message history, stored once per distinct image
+     */
+    private final ImageStore imageStore = new ImageStore();
+    /**
+     * Generates previews of large images in the background
+     */
+    private final ThumbnailGenerator thumbnails = new ThumbnailGenerator(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 64);
+    /**
+     * Full-text index of all text messages
+     */
+    private final SearchIndex searchIndex = new SearchIndex();
     /**
      * The main (incoming connection) socket
      */
@@ -98,9 +190,18 @@ public class Server implements Closeable {
      */
     public volatile boolean shutdown = false;
 
-    public Server(int port, RSAPublicKey publicKey, RSAPrivateKey privateKey) throws IOException {
+    /**
+     * @param port           the port to listen on
+     * @param publicKey      the server's public identity key
+     * @param privateKey     the server's private identity key
+     * @param revocationFile the file session ticket revocations are saved to (kept next to the key files)
+     */
+    public Server(int port, PublicKey publicKey, PrivateKey privateKey, Path revocationFile) throws IOException {
         this.publicKey = publicKey;
         this.privateKey = privateKey;
+        this.exchangeKeys = new ExchangeKeys(privateKey, 60 * 60 * 1000);
+        this.sessionTickets = new SessionTickets(privateKey, 24 * 60 * 60 * 1000, revocationFile);
+        this.systemAuthor = MessageAuthor.system(publicKey);
         ExecutorService service;
         try {
             // use virtual threads if possible
@@ -111,16 +212,10 @@ public Server(int port, RSAPublicKey publicKey, RSAPrivateKey privateKey) throws
             service = Executors.newCachedThreadPool(new ConnectionThreadFactory());
             LOGGER.info("Using cached thread pool executor (JDK 19/20 preview features are not available)");
         }
-        try {
-            // initialize our signature
-            this.rsaSignature.initSign(this.privateKey);
-        } catch (InvalidKeyException e) {
-            LOGGER.fatal("Failed to initialize signature with private key.", e);
-            System.exit(0);
-        }
-
         this.connectionExecutor = service;
         this.executor = Executors.newSingleThreadExecutor(r -> this.mainThread.setValue(new Thread(r, "Server Main")));
+        this.announcer = new SystemAnnouncer(privateKey, ANNOUNCEMENT_WINDOW, (message, signature) ->
+                this.executor.execute(() -> this.sendSignedMessage(Constants.BASE_CHANNEL, message, signature)));
         this.socket = new ServerSocket(port);
         // add the default channel
         this.channels.put(Constants.BASE_CHANNEL, new Channel(Constants.BASE_CHANNEL));
@@ -134,17 +229,29 @@ public Server(int port, RSAPublicKey publicKey, RSAPrivateKey privateKey) throws
      */
     public void sendMessage(Identifier channel, String message) {
         this.assertOnThread();
-        long time = System.currentTimeMillis();
         byte[] sign;
         // sign the message
         try {
-            this.rsaSignature.update(message.getBytes(StandardCharsets.UTF_8));
-            sign = this.rsaSignature.sign();
-        } catch (SignatureException e) {
+            sign = CryptoHelper.sign(this.privateKey, message.getBytes(StandardCharsets.UTF_8));
+        } catch (InvalidKeyException | SignatureException e) {
             throw new RuntimeException(e);
         }
-        // send the message
-        this.sendToChannel(channel, ServerPacketTypes.SYSTEM_MESSAGE, new SystemMessage(channel, time, message, sign));
+        this.sendSignedMessage(channel, message, sign);
+    }
+
+    /**
+     * Send an already signed SYSTEM message to all clients listening to a channel
+     *
+     * @param channel   the channel to send to
+     * @param message   the message
+     * @param signature the server's signature of the message
+     */
+    private void sendSignedMessage(Identifier channel, String message, byte[] signature) {
+        this.assertOnThread();
+        long time = System.currentTimeMillis();
+        // record and send the message
+        int sequence = this.recordMessage(channel, Message.text(time, this.systemAuthor, message, signature));
+        this.sendToChannel(channel, EncodedPacket.encode(ServerPacketTypes.SYSTEM_MESSAGE, new SystemMessage(channel, sequence, time, message, signature)));
     }
 
     /**
@@ -164,16 +271,60 @@ protected <Data extends NetworkedData> void sendToChannel(Identifier channel, Pa
         }
     }
 
+    /**
+     * Sends an already encoded packet to all clients listening to a channel
+     *
+     * @param channel the channel to send to
+     * @param packet  the encoded packet
+     */
+    protected void sendToChannel(Identifier channel, EncodedPacket packet) {
+        Channel channel1 = this.channels.get(channel);
+        for (ClientConnectionHandler handler : this.connectionHandlers) { // iterate over all connections
+            if (channel1.getParticipants().contains(handler.getUser())) { // check if user is in the channel
+                handler.send(packet); // send packet
+            }
+        }
+    }
+
+    /**
+     * Records a new message in a channel's history, and adds it to the channel's recent messages
+     *
+     * @param channel the channel the message was sent to
+     * @param message the message
+     * @return the sequence number of the message
+     */
+    private int recordMessage(Identifier channel, Message message) {
+        ChannelHistory history = this.getHistory(channel);
+        int sequence = history.append(message);
+        this.recentMessages.append(channel, sequence, history.getOldestSequence(), message);
+        return sequence;
+    }
+
+    /**
+     * Sends the recent messages of a channel to a client that just joined it
+     *
+     * @param handler the client connection
+     * @param channel the channel joined
+     */
+    private void replayRecentMessages(ClientConnectionHandler handler, Identifier channel) {
+        // always sent (even if empty), so that the client knows which history it is looking at
+        ChannelHistory history = this.getHistory(channel);
+        handler.send(this.recentMessages.get(channel, () -> history.before(RequestHistory.LATEST, RECENT_MESSAGES)));
+    }
+
     public void launch() {
         // start the server admin system off-thread
-//        Thread thread = new Thread(this::serverAdministration);
-//        thread.start();
+        Thread thread = new Thread(this::serverAdministration, "Server Administration");
+        thread.setDaemon(true); // don't keep the server open while waiting for input
+        thread.start();
 
         while (!this.socket.isClosed() && !this.shutdown) {
             try {
                 Socket accepted = this.socket.accept();
+                accepted.setSoTimeout(HANDSHAKE_TIMEOUT); // don't let slow clients hold on to a handshake worker
                 ClientLoginConnectionHandler connectionHandler = new ClientLoginConnectionHandler(
                         this,
+                        accepted,
                         PacketPipeline.createNetwork(
                                 Constants.PACKET_HEADER,
                                 accepted
@@ -181,7 +332,10 @@ public void launch() {
                 );
                 this.executor.execute(() -> {
                     this.connectionHandlers.add(connectionHandler);
-                    this.connectionExecutor.execute(connectionHandler);
+                    if (!this.handshakes.submit(accepted.getInetAddress(), connectionHandler, connectionHandler::reject)) {
+                        LOGGER.debug("Too many pending logins, rejected connection from {}", accepted.getInetAddress());
+                        connectionHandler.shutdown();
+                    }
                 });
             } catch (Exception ignored) {
             }
@@ -194,11 +348,28 @@ public void launch() {
     private void serverAdministration() {
         Scanner scanner = new Scanner(System.in);
         while (!this.shutdown && !this.executor.isShutdown()) {
-            String[] s = scanner.nextLine().split(" ");
+            if (!scanner.hasNextLine()) {
+                LOGGER.info("No more administration commands (stdin closed)");
+                return; // e.g. running in the background
+            }
+            String[] s = scanner.nextLine().trim().split(" +");
             String command = s[0];
             switch (command) {
-                case "kick" -> {
+                case "", "kick" -> {
                 }
+                case "revoke" -> { // revoke <key fingerprint>
+                    if (s.length == 2) {
+                        this.sessionTickets.revoke(s[1].toUpperCase(Locale.ROOT));
+                        LOGGER.info("Revoked the session tickets of {}", s[1]);
+                    } else {
+                        LOGGER.error("Usage: revoke <key fingerprint>");
+                    }
+                }
+                case "images" -> this.executor.execute(() -> {
+                    LOGGER.info("Images: {} stored, {} bytes", this.imageStore.size(), this.imageStore.getTotalBytes());
+                    LOGGER.info(this.thumbnails.getMetrics());
+                });
+                case "handshakes" -> LOGGER.info(this.handshakes.getMetrics());
                 case "exit", "close", "stop" -> this.close();
                 default -> LOGGER.error("Invalid command!");
             }
@@ -216,8 +387,8 @@ public void updateConnection(ClientConnectionHandler oldHandler, ClientConnectio
         this.executor.execute(() -> { // execute on main thread
             if (this.connectionHandlers.remove(oldHandler)) { // remove the old handler
                 LOGGER.info("User " + user.getLongIdName() + " has logged in.");
-                this.sendToAll(ServerPacketTypes.USER_CONNECT, new UserConnect(user)); // notify clients of user
-                this.sendMessage(Constants.BASE_CHANNEL, user.getShortIdName() + " has joined the chat!");
+                this.sendToAll(ServerPacketTypes.PRESENCE_UPDATE, this.presence.join(user)); // notify clients of user
+                this.announcer.joined(user.getShortIdName());
                 this.channels.get(Constants.BASE_CHANNEL).addParticipant(user); // add user to base channel
 
                 // add new connection handler
@@ -243,6 +414,7 @@ private void assertOnThread() {
 
     @Override
     public void close() {
+        if (this.shutdown) return; // already closed (e.g. by the stop command)
         LOGGER.info("Server is shutting down");
         this.shutdown = true;
         List<ClientConnectionHandler> handlers = new ArrayList<>(this.connectionHandlers);
@@ -250,7 +422,11 @@ public void close() {
             handler.shutdown(); // stop all connections
         }
         this.connectionExecutor.shutdown();
+        this.handshakes.shutdown();
+        this.announcer.shutdown();
         this.executor.shutdown();
+        this.searchIndex.shutdown();
+        this.thumbnails.shutdown();
         try {
             this.socket.close(); // stop accepting incoming connections
         } catch (IOException ignored) {
@@ -261,12 +437,12 @@ public void close() {
     /**
      * @return whether the server can accept a user with the given key
      */
-    public boolean canAccept(RSAPublicKey key) {
+    public boolean canAccept(PublicKey key) {
         return this.users.canAccept(key) && !key.equals(this.publicKey);
     }
 
     /**
-     * Sends a packet to all available connections
+     * Sends a packet to all logged-in connections
      *
      * @param type   the packet type
      * @param data   the packet body
@@ -274,6 +450,7 @@ public boolean canAccept(RSAPublicKey key) {
      */
     protected <Data extends NetworkedData> void sendToAll(PacketType<Data> type, Data data) {
         for (ClientConnectionHandler handler : this.connectionHandlers) {
+            if (handler.getUser() == null) continue; // still logging in (and not expecting any other packets)
             try {
                 handler.send(type, data);
             } catch (Exception ignored) {
@@ -288,6 +465,13 @@ protected Channel getChannel(Identifier id) {
         return this.channels.get(id);
     }
 
+    /**
+     * @return the message history of the given channel
+     */
+    protected ChannelHistory getHistory(Identifier channel) {
+        return this.history.computeIfAbsent(channel, c -> new ChannelHistory(c, this.historyId, MAX_HISTORY_BYTES, message -> this.releaseImages(c, message)));
+    }
+
     /**
      * Sends a given message from a client to all subscribed clients
      *
@@ -300,8 +484,10 @@ protected Channel getChannel(Identifier id) {
     public void receiveMessage(Identifier channel, long time, User user, byte[] checksum, String message) {
         this.assertOnThread();
         if (this.getChannel(channel).contains(user)) { // verify that the user can send to this channel
-            // send the packet to the channel
-            this.sendToChannel(channel, ServerPacketTypes.ADD_MESSAGE, new AddMessage(channel, time, user.sessionId(), message, checksum));
+            // record the message and send the packet to the channel
+            int sequence = this.recordMessage(channel, Message.text(time, user, message, checksum));
+            this.searchIndex.index(channel, sequence, time, message); // indexed off-thread
+            this.sendToChannel(channel, EncodedPacket.encode(ServerPacketTypes.ADD_MESSAGE, new AddMessage(channel, sequence, time, user.sessionId(), message, checksum)));
         }
     }
 
@@ -313,7 +499,7 @@ public void receiveMessage(Identifier channel, long time, User user, byte[] chec
      * @param icon     the user's profile picture icon
      * @return a new user instance
      */
-    public @NotNull User createUser(Identifier username, RSAPublicKey key, byte @Nullable [] icon) {
+    public @NotNull User createUser(Identifier username, PublicKey key, byte @Nullable [] icon) {
         this.assertOnThread();
         return this.users.createUser(username, key, icon);
     }
@@ -338,8 +524,8 @@ public void disconnect(ClientConnectionHandler handler, User user) {
             }
 
             // tell all clients that a user left
-            this.sendToAll(ServerPacketTypes.USER_DISCONNECT, new UserDisconnect(user.sessionId()));
-            this.sendMessage(Constants.BASE_CHANNEL, user.getShortIdName() + " has left the chat.");
+            this.sendToAll(ServerPacketTypes.PRESENCE_UPDATE, this.presence.leave(user));
+            this.announcer.left(user.getShortIdName());
         }
     }
 
@@ -380,6 +566,70 @@ public void leaveChannels(ClientConnectionHandler handler, User user, Identifier
      * @param channels the channels to add
      */
     public void joinChannels(ClientConnectionHandler handler, User user, Identifier[] channels) {
+        // catch the user up on what was said before they joined
+        for (Identifier channel : this.addToChannels(handler, user, channels)) {
+            this.replayRecentMessages(handler, channel);
+        }
+    }
+
+    /**
+     * Adds a (re)connected user to the given channels, and sends them the messages they missed
+     *
+     * @param handler       the user's client connection
+     * @param user          the user
+     * @param channels      the channels to resume
+     * @param lastSequences the sequence number of the last message the user received in each channel (-1 if none)
+     * @param historyIds    the id of the history each last sequence number belongs to
+     */
+    public void resumeChannels(ClientConnectionHandler handler, User user, Identifier[] channels, int[] lastSequences, long[] historyIds) {
+        this.assertOnThread();
+        this.addToChannels(handler, user, channels);
+        for (int i = 0; i < channels.length; i++) {
+            Channel channel = this.getChannel(channels[i]);
+            if (channel != null && channel.contains(user)) {
+                if (lastSequences[i] == -1) {
+                    this.replayRecentMessages(handler, channels[i]); // nothing received yet
+                } else {
+                    this.sendMissedMessages(handler, channels[i], lastSequences[i], historyIds[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends all messages after the given sequence number to a client
+     * Always sends at least one page (so that the client knows it is up-to-date)
+     *
+     * @param handler      the client connection
+     * @param channel      the channel to catch up on
+     * @param lastSequence the sequence number of the last message the client received
+     * @param historyId    the id of the history the sequence number belongs to
+     */
+    private void sendMissedMessages(ClientConnectionHandler handler, Identifier channel, int lastSequence, long historyId) {
+        ChannelHistory history = this.getHistory(channel);
+        int latest = history.getLatestSequence();
+        if (historyId != this.historyId || lastSequence > latest || lastSequence < history.getOldestSequence() - 1 || latest - lastSequence > MAX_RESUME_MESSAGES) {
+            // the client is too far behind (or its messages are from before a restart or were dropped), so just send the newest messages
+            this.replayRecentMessages(handler, channel);
+            return;
+        }
+        int sequence = lastSequence;
+        do {
+            MessageHistory page = history.since(sequence, RequestHistory.MAX_LIMIT);
+            handler.send(ServerPacketTypes.MESSAGE_HISTORY, page);
+            sequence += page.getMessages().size();
+        } while (sequence < latest);
+    }
+
+    /**
+     * Adds a user to the given channels, and informs them of the channels joined
+     *
+     * @param handler  the user's client connection
+     * @param user     the user
+     * @param channels the channels to add
+     * @return the channels the user was actually added to
+     */
+    private List<Identifier> addToChannels(ClientConnectionHandler handler, User user, Identifier[] channels) {
         List<Identifier> successful = new ArrayList<>(); // channels actually added
         for (Identifier channel : channels) {
             if (channel.equals(Constants.BASE_CHANNEL)) continue;
@@ -392,24 +642,155 @@ public void joinChannels(ClientConnectionHandler handler, User user, Identifier[
         }
         // send the list of added channels
         handler.send(ServerPacketTypes.ADD_CHANNELS, new ChannelList(successful.toArray(new Identifier[0])));
+        return successful;
     }
 
     /**
-     * Propagates an image message to all subscribed clients
+     * Accepts an encoded image from a client, generating a preview of it before it is recorded
+     * Called from the client's connection thread, which waits for the preview so that the user's later messages stay
+     * behind the image (and the image is timestamped when it is actually recorded)
+     *
+     * @param channel   the channel to send the image to
+     * @param user      the user that sent the image
+     * @param signature the signature of the image hash
+     * @param data      the encoded image
+     * @param width     the width of the image
+     * @param height    the height of the image
+     */
+    public void submitEncodedImageMessage(Identifier channel, User user, byte[] signature, byte[] data, int width, int height) {
+        byte[] hash = EncodedImageMessage.hash(data); // hash on the connection thread, not the main thread
+        CompletableFuture<ThumbnailGenerator.Preview> future = new CompletableFuture<>();
+        this.thumbnails.generate(data, future::complete); // the CPU work stays on the (bounded) thumbnail pool
+        ThumbnailGenerator.Preview preview = future.completeOnTimeout(null, PREVIEW_TIMEOUT, TimeUnit.MILLISECONDS).join();
+        long time = System.currentTimeMillis();
+        this.executor.execute(() -> this.receiveEncodedImageMessage(channel, time, user, signature, hash, data, preview, width, height));
+    }
+
+    /**
+     * Propagates an encoded image message to all subscribed clients
+     * The bytes are stored once (by hash) and only the hashes of the image and its preview are propagated
      *
      * @param channel   the channel to send the image to
      * @param l         when the message was received
      * @param user      the user that sent the image
-     * @param signature the image data signature
-     * @param image     the image data
+     * @param signature the signature of the image hash
+     * @param hash      the SHA-256 hash of the encoded image
+     * @param data      the encoded image
+     * @param preview   the preview of the image, or null if there is none
      * @param width     the width of the image
      * @param height    the height of the image
      */
-    public void receiveImageMessage(Identifier channel, long l, User user, byte[] signature, int[] image, int width, int height) {
+    public void receiveEncodedImageMessage(Identifier channel, long l, User user, byte[] signature, byte[] hash, byte[] data, ThumbnailGenerator.@Nullable Preview preview, int width, int height) {
         this.assertOnThread();
         if (this.getChannel(channel).contains(user)) { // verify that the user can send to the channel
-            // send the image
-            this.sendToChannel(channel, ServerPacketTypes.ADD_IMAGE_MESSAGE, new AddImageMessage(channel, l, user.sessionId(), width, height, image, signature));
+            this.imageStore.retain(hash, data, channel); // store the image (if it is new) - referenced by the message
+            if (preview != null) this.imageStore.retain(preview.hash(), preview.data(), channel);
+            byte[] previewHash = preview == null ? null : preview.hash();
+            // record and send the image
+            int sequence = this.recordMessage(channel, new EncodedImageMessage(l, user, width, height, hash, previewHash, signature));
+            this.sendToChannel(channel, EncodedPacket.encode(ServerPacketTypes.ADD_ENCODED_IMAGE_MESSAGE, new AddEncodedImageMessage(channel, sequence, l, user.sessionId(), width, height, hash, previewHash, signature)));
+        }
+    }
+
+    /**
+     * Releases the images referenced by a message that was dropped from a channel's history
+     *
+     * @param channel the channel the message was sent to
+     * @param message the dropped message
+     */
+    private void releaseImages(Identifier channel, Message message) {
+        if (message instanceof EncodedImageMessage image) {
+            this.imageStore.release(image.hash(), channel);
+            if (image.previewHash() != null) this.imageStore.release(image.previewHash(), channel);
+        }
+    }
+
+    /**
+     * Sends the contents of a stored image to a client
+     * Only participants of a channel with a message that references the image can download it
+     * An empty image is sent if the image is not stored (or not accessible), so that the client stops waiting for it
+     *
+     * @param handler the user's client connection
+     * @param user    the user
+     * @param hash    the SHA-256 hash of the image
+     */
+    public void sendImage(ClientConnectionHandler handler, User user, byte[] hash) {
+        this.assertOnThread();
+        byte[] data = null;
+        for (Identifier channel : this.imageStore.getChannels(hash)) {
+            Channel channel1 = this.getChannel(channel);
+            if (channel1 != null && channel1.contains(user)) {
+                data = this.imageStore.get(hash);
+                break;
+            }
+        }
+        handler.send(ServerPacketTypes.IMAGE_DATA, new ImageData(hash, data == null ? new byte[0] : data));
+    }
+
+    /**
+     * Brings a client's list of online users up to date
+     *
+     * @param handler the user's client connection
+     * @param epoch   the epoch of the client's user list
+     * @param version the version of the client's user list
+     */
+    public void syncPresence(ClientConnectionHandler handler, long epoch, int version) {
+        this.assertOnThread();
+        handler.send(ServerPacketTypes.PRESENCE_UPDATE, this.presence.sync(epoch, version, this.users.getUsers()));
+    }
+
+    /**
+     * Sends the public keys of online (or recently disconnected) users to a client
+     *
+     * @param handler      the user's client connection
+     * @param fingerprints the fingerprints of the keys
+     */
+    public void sendKeys(ClientConnectionHandler handler, String[] fingerprints) {
+        this.assertOnThread();
+        String[] requested = fingerprints.length > MAX_KEY_REQUEST ? Arrays.copyOf(fingerprints, MAX_KEY_REQUEST) : fingerprints;
+        byte[][] keys = new byte[requested.length][];
+        for (int i = 0; i < requested.length; i++) {
+            PublicKey key = this.users.getKey(requested[i]);
+            keys[i] = key == null ? new byte[0] : key.getEncoded();
+        }
+        handler.send(ServerPacketTypes.USER_KEYS, new UserKeys(requested, keys));
+    }
+
+    /**
+     * Sends a page of a channel's message history to a client
+     *
+     * @param handler  the user's client connection
+     * @param user     the user
+     * @param channel  the channel to get the history of
+     * @param before   whether to send the messages before (or since) the sequence number
+     * @param sequence the (exclusive) sequence number to start from
+     * @param limit    the maximum number of messages to send
+     */
+    public void sendHistory(ClientConnectionHandler handler, User user, Identifier channel, boolean before, int sequence, int limit) {
+        this.assertOnThread();
+        Channel channel1 = this.getChannel(channel);
+        if (channel1 != null && channel1.contains(user)) { // only participants can read a channel
+            ChannelHistory history = this.getHistory(channel);
+            MessageHistory page = before ? history.before(sequence, limit) : history.since(sequence, limit);
+            handler.send(ServerPacketTypes.MESSAGE_HISTORY, page);
+        }
+    }
+
+    /**
+     * Searches a channel's messages and sends the results to a client
+     *
+     * @param handler the user's client connection
+     * @param user    the user
+     * @param channel the channel to search
+     * @param query   the words to search for
+     * @param before  only messages with a lower sequence number are returned (-1 for no bound)
+     * @param limit   the maximum number of results
+     */
+    public void searchMessages(ClientConnectionHandler handler, User user, Identifier channel, String query, int before, int limit) {
+        this.assertOnThread();
+        Channel channel1 = this.getChannel(channel);
+        if (channel1 != null && channel1.contains(user)) { // only participants can search a channel
+            this.searchIndex.search(channel, query, before, limit, results -> handler.send(ServerPacketTypes.SEARCH_RESULTS, results));
         }
     }
 }
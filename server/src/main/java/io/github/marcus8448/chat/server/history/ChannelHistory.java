@@ -0,0 +1,296 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.history;
+
+import io.github.marcus8448.chat.core.api.message.*;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.GrowingBinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
+import io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * The message history of a single channel
+ * Messages are appended to a binary log, and the offset of each message in the log is indexed by its sequence number
+ * The log is capped in size - once it is exceeded the oldest messages are dropped, and only newer messages can be requested
+ * Dropped messages are passed to a listener, so that anything they reference (e.g. stored images) can be released
+ * Not thread safe - should only be accessed from the main server thread
+ */
+public class ChannelHistory {
+    /**
+     * The maximum number of (log) bytes that are sent in a single history response
+     * Prevents a page of large images from turning into one enormous packet
+     */
+    private static final int MAX_PAGE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The channel this history belongs to
+     */
+    private final Identifier channel;
+    /**
+     * The id of the server's history, sent with every page
+     *
+     * @see MessageHistory#getHistoryId()
+     */
+    private final long historyId;
+    /**
+     * The maximum number of bytes the log can take up before old messages are dropped
+     */
+    private final int maxBytes;
+    /**
+     * Called with each message that is dropped from the log
+     */
+    private final Consumer<Message> dropped;
+    /**
+     * The encoded messages, one after another
+     */
+    private GrowingBinaryOutput log = GrowingBinaryOutput.create(4096);
+    /**
+     * The authors referenced by the log (messages store an index into this list)
+     */
+    private final List<MessageAuthor> authors = new ArrayList<>();
+    /**
+     * Map of author -> index in the author list
+     */
+    private final Map<MessageAuthor, Integer> authorIds = new HashMap<>();
+    /**
+     * Map of (sequence number - oldest sequence number) -> offset of the message in the log
+     * The log is trimmed well before it could grow past 2GiB, so the offsets always fit
+     */
+    private int[] offsets = new int[64];
+    /**
+     * The sequence number of the oldest message still in the log
+     */
+    private int oldest = 0;
+    /**
+     * The next sequence number (one past the newest message)
+     */
+    private int size = 0;
+
+    /**
+     * @param channel   the channel the history belongs to
+     * @param historyId the id of the server's history
+     * @param maxBytes  the maximum size of the log (at most 1GiB)
+     * @param dropped   called with each message that is dropped from the log
+     */
+    public ChannelHistory(Identifier channel, long historyId, int maxBytes, Consumer<Message> dropped) {
+        this.channel = channel;
+        this.historyId = historyId;
+        this.maxBytes = maxBytes;
+        this.dropped = dropped;
+    }
+
+    /**
+     * Appends a message to the end of the history
+     *
+     * @param message the message to add
+     * @return the sequence number of the message
+     */
+    public int append(Message message) {
+        if (this.log.getCount() > this.maxBytes) this.trim();
+        if (this.size - this.oldest == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+        this.offsets[this.size - this.oldest] = this.log.getCount();
+
+        Integer authorId = this.authorIds.get(message.getAuthor());
+        if (authorId == null) {
+            authorId = this.authors.size();
+            this.authors.add(message.getAuthor());
+            this.authorIds.put(message.getAuthor(), authorId);
+        }
+
+        try {
+            this.log.writeByte(message.getType().ordinal());
+            this.log.writeVarLong(message.getTimestamp());
+            this.log.writeVarInt(authorId);
+            switch (message.getType()) {
+                case TEXT -> this.log.writeString(((TextMessage) message).getMessage());
+                case IMAGE -> {
+                    ImageMessage image = (ImageMessage) message;
+                    this.log.writeShort(image.width());
+                    this.log.writeShort(image.height());
+                    this.log.writeIntArray(image.width() * image.height(), image.image());
+                }
+                case ENCODED_IMAGE -> {
+                    EncodedImageMessage image = (EncodedImageMessage) message;
+                    this.log.writeShort(image.width());
+                    this.log.writeShort(image.height());
+                    this.log.writeByteArray(EncodedImageMessage.HASH_LENGTH, image.hash()); // the image itself is in the image store
+                    EncodedImageMessage.writeOptionalHash(this.log, image.previewHash());
+                }
+            }
+            this.log.writeByteArray(message.getSignature());
+        } catch (IOException e) {
+            throw new RuntimeException(e); // in-memory log, should never happen
+        }
+        return this.size++;
+    }
+
+    /**
+     * Drops the oldest messages until the log is at most three quarters of its maximum size
+     * The remaining messages are moved to a new log, so trimming only happens every so often
+     */
+    private void trim() {
+        int count = this.size - this.oldest;
+        int end = this.log.getCount();
+        int dropped = 0;
+        while (dropped < count && end - this.offsets[dropped] > this.maxBytes / 4 * 3) {
+            dropped++;
+        }
+        if (dropped == 0) return;
+
+        int start = dropped == count ? end : this.offsets[dropped];
+        GrowingBinaryOutput log = GrowingBinaryOutput.create(Math.max(4096, end - start));
+        try {
+            BinaryInput input = BinaryInput.buffer(this.log.getRawOutput(), this.offsets[0]);
+            for (int i = 0; i < dropped; i++) {
+                this.dropped.accept(this.read(input));
+            }
+            log.writeByteArray(end - start, Arrays.copyOfRange(this.log.getRawOutput(), start, end));
+        } catch (IOException e) {
+            throw new RuntimeException(e); // in-memory log, should never happen
+        }
+        this.log = log;
+        for (int i = dropped; i < count; i++) {
+            this.offsets[i - dropped] = this.offsets[i] - start;
+        }
+        this.oldest += dropped;
+    }
+
+    /**
+     * @return the sequence number of the oldest message that can still be requested
+     */
+    public int getOldestSequence() {
+        return this.oldest;
+    }
+
+    /**
+     * @return the sequence number of the newest message, or -1 if there are no messages
+     */
+    public int getLatestSequence() {
+        return this.size - 1;
+    }
+
+    /**
+     * Creates a page of the messages sent before the given sequence number
+     * Messages that have been dropped are not included, so the page may be empty (see {@link MessageHistory#getOldestSequence()})
+     *
+     * @param sequence the (exclusive) upper bound, or {@link RequestHistory#LATEST} for the newest messages
+     * @param limit    the maximum number of messages to include
+     * @return the page of messages
+     */
+    public MessageHistory before(int sequence, int limit) {
+        int end = sequence == RequestHistory.LATEST || sequence > this.size ? this.size : Math.max(sequence, this.oldest);
+        int start = Math.max(this.oldest, end - Math.max(limit, 0));
+        // include as many of the newest messages as the byte budget allows
+        int bytes = 0;
+        for (int i = end - 1; i >= start; i--) {
+            bytes += this.length(i);
+            if (bytes > MAX_PAGE_BYTES && i != end - 1) {
+                start = i + 1;
+                break;
+            }
+        }
+        return this.page(start, end);
+    }
+
+    /**
+     * Creates a page of the messages sent after the given sequence number
+     * If some of those messages have been dropped, the page starts at the oldest remaining message
+     *
+     * @param sequence the (exclusive) lower bound
+     * @param limit    the maximum number of messages to include
+     * @return the page of messages
+     */
+    public MessageHistory since(int sequence, int limit) {
+        int start = Math.min(Math.max(sequence + 1, this.oldest), this.size);
+        int end = Math.min(this.size, start + Math.max(limit, 0));
+        int bytes = 0;
+        for (int i = start; i < end; i++) {
+            bytes += this.length(i);
+            if (bytes > MAX_PAGE_BYTES && i != start) {
+                end = i;
+                break;
+            }
+        }
+        return this.page(start, end);
+    }
+
+    /**
+     * @return the number of bytes the message with the given sequence number takes up in the log
+     */
+    private int length(int sequence) {
+        int index = sequence - this.oldest;
+        return (sequence + 1 == this.size ? this.log.getCount() : this.offsets[index + 1]) - this.offsets[index];
+    }
+
+    /**
+     * Decodes the messages in the given range of sequence numbers
+     *
+     * @param start the first sequence number (inclusive)
+     * @param end   the last sequence number (exclusive)
+     * @return the page of messages
+     */
+    private MessageHistory page(int start, int end) {
+        List<Message> messages = new ArrayList<>(end - start);
+        if (start < end) {
+            // messages are stored contiguously, so we only need to seek once
+            BinaryInput input = BinaryInput.buffer(this.log.getRawOutput(), this.offsets[start - this.oldest]);
+            try {
+                for (int i = start; i < end; i++) {
+                    messages.add(this.read(input));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return new MessageHistory(this.channel, this.historyId, start, this.oldest, this.size - 1, messages);
+    }
+
+    /**
+     * Reads a single message from the log
+     */
+    private Message read(BinaryInput input) throws IOException {
+        MessageType type = MessageType.values()[input.readByte()];
+        long timestamp = input.readVarLong();
+        MessageAuthor author = this.authors.get(input.readVarInt());
+        return switch (type) {
+            case TEXT -> {
+                String contents = input.readString();
+                yield Message.text(timestamp, author, contents, input.readByteArray());
+            }
+            case IMAGE -> {
+                int width = input.readShort();
+                int height = input.readShort();
+                int[] image = input.readIntArray(width * height);
+                yield new ImageMessage(timestamp, author, width, height, image, input.readByteArray());
+            }
+            case ENCODED_IMAGE -> {
+                int width = input.readShort();
+                int height = input.readShort();
+                byte[] hash = input.readByteArray(EncodedImageMessage.HASH_LENGTH);
+                byte[] previewHash = EncodedImageMessage.readOptionalHash(input);
+                yield new EncodedImageMessage(timestamp, author, width, height, hash, previewHash, input.readByteArray());
+            }
+        };
+    }
+}
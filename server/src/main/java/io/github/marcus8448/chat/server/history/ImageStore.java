@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.history;
+
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.util.Utils;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed storage of encoded images, keyed by the SHA-256 hash of their contents
+ * An image that is posted several times (or to several channels) is only stored once
+ * Each image counts the messages that reference it (per channel), and is removed once nothing references it anymore
+ * Not thread safe - should only be accessed from the main server thread
+ */
+public class ImageStore {
+    /**
+     * Map of image hash (hex) -> stored image
+     */
+    private final Map<String, StoredImage> images = new HashMap<>();
+    /**
+     * The number of bytes stored across all images
+     */
+    private long totalBytes = 0;
+
+    /**
+     * Adds a reference to an image, storing it if it is not already present
+     *
+     * @param hash    the SHA-256 hash of the image (computed by the caller, off the main thread)
+     * @param data    the encoded image
+     * @param channel the channel of the message that references the image
+     */
+    public void retain(byte[] hash, byte[] data, Identifier channel) {
+        StoredImage image = this.images.computeIfAbsent(Utils.toHexString(hash), k -> {
+            this.totalBytes += data.length;
+            return new StoredImage(data);
+        });
+        image.references.merge(channel, 1, Integer::sum);
+    }
+
+    /**
+     * Removes a reference to an image, evicting it once it is no longer referenced
+     *
+     * @param hash    the SHA-256 hash of the image
+     * @param channel the channel of the message that referenced the image
+     */
+    public void release(byte[] hash, Identifier channel) {
+        String key = Utils.toHexString(hash);
+        StoredImage image = this.images.get(key);
+        if (image != null && image.references.computeIfPresent(channel, (c, count) -> count == 1 ? null : count - 1) == null
+                && image.references.isEmpty()) {
+            this.images.remove(key);
+            this.totalBytes -= image.data.length;
+        }
+    }
+
+    /**
+     * @param hash the SHA-256 hash of the image
+     * @return the encoded image, or {@code null} if it is not stored
+     */
+    public byte @Nullable [] get(byte[] hash) {
+        StoredImage image = this.images.get(Utils.toHexString(hash));
+        return image == null ? null : image.data;
+    }
+
+    /**
+     * @param hash the SHA-256 hash of the image
+     * @return the channels with messages that reference the image (empty if it is not stored)
+     */
+    public Set<Identifier> getChannels(byte[] hash) {
+        StoredImage image = this.images.get(Utils.toHexString(hash));
+        return image == null ? Collections.emptySet() : Collections.unmodifiableSet(image.references.keySet());
+    }
+
+    /**
+     * @return the number of distinct images stored
+     */
+    public int size() {
+        return this.images.size();
+    }
+
+    /**
+     * @return the number of bytes stored across all images
+     */
+    public long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * An encoded image and the number of messages that reference it, per channel
+     */
+    private static final class StoredImage {
+        private final byte[] data;
+        private final Map<Identifier, Integer> references = new HashMap<>();
+
+        private StoredImage(byte[] data) {
+            this.data = data;
+        }
+    }
+}
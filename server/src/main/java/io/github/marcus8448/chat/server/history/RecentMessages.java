@@ -0,0 +1,279 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.history;
+
+import io.github.marcus8448.chat.core.api.message.Message;
+import io.github.marcus8448.chat.core.api.message.MessageAuthor;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.io.GrowingBinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
+import io.github.marcus8448.chat.core.api.network.packet.ServerPacketTypes;
+import io.github.marcus8448.chat.core.api.network.packet.server.MessageHistory;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a ring of the most recent messages of each channel, pre-encoded, so that they can be replayed to joining clients
+ * Each message is encoded once when it is sent - a page is assembled by copying the encoded messages, and is reused until
+ * the next message arrives, no matter how many clients join
+ * Pages include their authors (like any page of history), so replayed messages never refer to users that have since left
+ * Memory use is capped per channel and in total - when the total is exceeded the least recently used channels are dropped first
+ * Not thread safe - should only be accessed from the main server thread
+ */
+public class RecentMessages {
+    /**
+     * The maximum number of messages kept per channel
+     */
+    private final int limit;
+    /**
+     * The maximum number of (encoded) bytes kept per channel
+     */
+    private final int maxChannelBytes;
+    /**
+     * The maximum number of bytes kept across all channels
+     */
+    private final long maxTotalBytes;
+    /**
+     * Map of channel -> recent messages, ordered from least to most recently used
+     */
+    private final LinkedHashMap<Identifier, Ring> channels = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The number of bytes kept across all channels
+     */
+    private long totalBytes = 0;
+
+    /**
+     * @param limit           the maximum number of messages kept per channel
+     * @param maxChannelBytes the maximum number of (encoded) bytes kept per channel
+     * @param maxTotalBytes   the maximum number of bytes kept across all channels
+     */
+    public RecentMessages(int limit, int maxChannelBytes, long maxTotalBytes) {
+        this.limit = limit;
+        this.maxChannelBytes = maxChannelBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * Adds a new message to the recent messages of a channel
+     * Nothing is done if the channel's messages are not kept (they are read from the history when they are next needed)
+     *
+     * @param channel        the channel the message was sent to
+     * @param sequence       the sequence number of the message
+     * @param oldestSequence the sequence number of the oldest message in the channel's history
+     * @param message        the message
+     */
+    public void append(Identifier channel, int sequence, int oldestSequence, Message message) {
+        Ring ring = this.channels.get(channel);
+        if (ring == null) return;
+        if (sequence != ring.latestSequence + 1) { // out of sync, so read it again later
+            this.remove(channel);
+            return;
+        }
+        long before = ring.bytes();
+        ring.add(message);
+        ring.latestSequence = sequence;
+        ring.oldestSequence = oldestSequence;
+        ring.trim(this.limit, this.maxChannelBytes);
+        this.totalBytes += ring.bytes() - before;
+        this.evict(ring);
+    }
+
+    /**
+     * Gets the encoded page of recent messages of a channel, reading them from the history if they are not kept
+     *
+     * @param channel the channel
+     * @param page    reads the recent messages from the history
+     * @return the encoded {@link ServerPacketTypes#MESSAGE_HISTORY} packet
+     */
+    public EncodedPacket get(Identifier channel, Supplier<MessageHistory> page) {
+        Ring ring = this.channels.get(channel);
+        if (ring == null) {
+            MessageHistory history = page.get();
+            ring = new Ring(channel, history.getHistoryId(), history.getOldestSequence(), history.getLatestSequence());
+            for (Message message : history.getMessages()) {
+                ring.add(message);
+            }
+            ring.trim(this.limit, this.maxChannelBytes);
+            this.channels.put(channel, ring);
+            this.totalBytes += ring.bytes();
+        }
+
+        long before = ring.bytes();
+        EncodedPacket packet = ring.assemble();
+        this.totalBytes += ring.bytes() - before;
+        this.evict(ring);
+        return packet;
+    }
+
+    /**
+     * Drops the least used channels until everything fits
+     *
+     * @param keep the channel that was just used, which is never dropped
+     */
+    private void evict(Ring keep) {
+        Iterator<Ring> iterator = this.channels.values().iterator();
+        while (this.totalBytes > this.maxTotalBytes && iterator.hasNext()) {
+            Ring next = iterator.next();
+            if (next == keep) break;
+            this.totalBytes -= next.bytes();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Stops keeping the recent messages of a channel
+     */
+    private void remove(Identifier channel) {
+        Ring ring = this.channels.remove(channel);
+        if (ring != null) this.totalBytes -= ring.bytes();
+    }
+
+    /**
+     * The recent messages of a single channel
+     */
+    private static final class Ring {
+        private final Identifier channel;
+        private final long historyId;
+        /**
+         * The messages (and their encoded contents), oldest first
+         */
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private int oldestSequence;
+        private int latestSequence;
+        /**
+         * The number of bytes of encoded contents and authors kept
+         */
+        private long entryBytes = 0;
+        /**
+         * The assembled page, or null if the messages changed since it was assembled
+         */
+        private @Nullable EncodedPacket page = null;
+
+        private Ring(Identifier channel, long historyId, int oldestSequence, int latestSequence) {
+            this.channel = channel;
+            this.historyId = historyId;
+            this.oldestSequence = oldestSequence;
+            this.latestSequence = latestSequence;
+        }
+
+        /**
+         * Encodes a message and adds it as the newest message
+         */
+        private void add(Message message) {
+            Entry last = this.entries.peekLast();
+            byte[] author = last != null && last.message().getAuthor().equals(message.getAuthor()) ? last.author() // usually the same as the last message
+                    : encode(output -> MessageHistory.writeAuthor(output, message.getAuthor()));
+            Entry entry = new Entry(message, author, encode(output -> MessageHistory.writeContents(output, message)));
+            this.entries.addLast(entry);
+            this.entryBytes += entry.size();
+            this.page = null;
+        }
+
+        /**
+         * Drops the oldest messages until both caps are met (the newest message is always kept)
+         */
+        private void trim(int limit, int maxBytes) {
+            while (this.entries.size() > 1 && (this.entries.size() > limit || this.entryBytes > maxBytes)) {
+                this.entryBytes -= this.entries.removeFirst().size();
+                this.page = null;
+            }
+        }
+
+        /**
+         * @return the number of bytes kept for this channel
+         */
+        private long bytes() {
+            return this.entryBytes + (this.page == null ? 0 : this.page.getLength());
+        }
+
+        /**
+         * Assembles the page of recent messages from the encoded messages (if it is not already assembled)
+         */
+        private EncodedPacket assemble() {
+            if (this.page != null) return this.page;
+            // collect the authors of the page, so that each one is only written once
+            Map<MessageAuthor, Integer> authorIds = new HashMap<>();
+            List<Entry> authors = new ArrayList<>();
+            for (Entry entry : this.entries) {
+                if (authorIds.putIfAbsent(entry.message().getAuthor(), authors.size()) == null) {
+                    authors.add(entry);
+                }
+            }
+
+            GrowingBinaryOutput output = GrowingBinaryOutput.create((int) Math.min(this.entryBytes + 64, Integer.MAX_VALUE));
+            try {
+                MessageHistory.writeHeader(output, this.channel, this.historyId, this.latestSequence - this.entries.size() + 1, this.oldestSequence, this.latestSequence);
+                output.writeVarInt(authors.size());
+                for (Entry entry : authors) {
+                    output.writeByteArray(entry.author().length, entry.author());
+                }
+                output.writeVarInt(this.entries.size());
+                long timestamp = 0;
+                MessageAuthor author = null;
+                for (Entry entry : this.entries) {
+                    Message message = entry.message();
+                    int authorRef = 0;
+                    if (!message.getAuthor().equals(author)) {
+                        author = message.getAuthor();
+                        authorRef = authorIds.get(author) + 1;
+                    }
+                    MessageHistory.writeMessageHeader(output, message, timestamp, authorRef);
+                    timestamp = message.getTimestamp();
+                    output.writeByteArray(entry.contents().length, entry.contents());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e); // in-memory output, should never happen
+            }
+            this.page = EncodedPacket.wrap(ServerPacketTypes.MESSAGE_HISTORY, output.getSizedOutput());
+            return this.page;
+        }
+
+        private static byte[] encode(Writer writer) {
+            GrowingBinaryOutput output = GrowingBinaryOutput.create(64);
+            try {
+                writer.write(output);
+            } catch (IOException e) {
+                throw new RuntimeException(e); // in-memory output, should never happen
+            }
+            return output.getSizedOutput();
+        }
+    }
+
+    /**
+     * A message and its encoded parts
+     *
+     * @param message  the message
+     * @param author   the encoded author table entry of the message's author
+     * @param contents the encoded contents (and signature) of the message
+     */
+    private record Entry(Message message, byte[] author, byte[] contents) {
+        private int size() {
+            return this.author.length + this.contents.length;
+        }
+    }
+
+    /**
+     * Writes part of a message
+     */
+    @FunctionalInterface
+    private interface Writer {
+        void write(GrowingBinaryOutput output) throws IOException;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.image;
+
+import io.github.marcus8448.chat.core.api.message.EncodedImageMessage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Generates downscaled previews of encoded images on a bounded pool of worker threads
+ * If the queue is full (or the image can't be decoded) no preview is generated, and clients just load the full image
+ */
+public class ThumbnailGenerator {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The largest image (width or height) that will be decoded
+     */
+    private static final int MAX_SOURCE_SIZE = 16384;
+
+    /**
+     * The worker threads
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * The number of images queued
+     */
+    private final AtomicLong submitted = new AtomicLong();
+    /**
+     * The number of previews generated
+     */
+    private final AtomicLong generated = new AtomicLong();
+    /**
+     * The number of images that were rejected because the queue was full
+     */
+    private final AtomicLong rejected = new AtomicLong();
+    /**
+     * The number of images that could not be decoded
+     */
+    private final AtomicLong failed = new AtomicLong();
+    /**
+     * The total time spent generating previews, in nanoseconds
+     */
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /**
+     * @param threads    the number of worker threads
+     * @param queueLimit the maximum number of images waiting for a worker
+     */
+    public ThumbnailGenerator(int threads, int queueLimit) {
+        AtomicInteger number = new AtomicInteger(1);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueLimit), r -> {
+            Thread thread = new Thread(r, "Thumbnail Generator #" + number.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues the generation of a preview
+     * The callback is invoked on a worker thread, or immediately if the image was rejected
+     *
+     * @param data     the encoded image
+     * @param callback called with the preview, or {@code null} if no preview was generated
+     */
+    public void generate(byte[] data, Consumer<@Nullable Preview> callback) {
+        try {
+            this.executor.execute(() -> {
+                long start = System.nanoTime();
+                Preview preview = null;
+                try {
+                    preview = createPreview(data);
+                    if (preview != null) this.generated.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    this.failed.incrementAndGet();
+                    LOGGER.debug("Failed to generate image preview", e);
+                }
+                this.busyNanos.addAndGet(System.nanoTime() - start);
+                callback.accept(preview);
+            });
+            this.submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            this.rejected.incrementAndGet(); // overloaded (or shutting down) - skip the preview
+            callback.accept(null);
+        }
+    }
+
+    /**
+     * @return a summary of the generator's activity
+     */
+    public String getMetrics() {
+        long generated = this.generated.get();
+        return String.format("Thumbnails: %d queued, %d waiting, %d generated, %d rejected, %d failed, %.2fms average",
+                this.submitted.get(), this.executor.getQueue().size(), generated, this.rejected.get(), this.failed.get(),
+                generated == 0 ? 0.0 : this.busyNanos.get() / 1_000_000.0 / generated);
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Decodes an image and scales it down to fit within the preview size
+     *
+     * @param data the encoded image
+     * @return the preview, or {@code null} if the image is already small enough
+     * @throws IOException if the image could not be decoded
+     */
+    private static @Nullable Preview createPreview(byte[] data) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) throw new IOException("Unknown image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // check the size before decoding anything, so a tiny file can't claim an enormous image
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width > MAX_SOURCE_SIZE || height > MAX_SOURCE_SIZE) throw new IOException("Image is too large");
+                if (width <= EncodedImageMessage.PREVIEW_SIZE && height <= EncodedImageMessage.PREVIEW_SIZE) return null; // the image is its own preview
+
+                // skip pixels while decoding, so that the full image never needs to be in memory
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (EncodedImageMessage.PREVIEW_SIZE * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage source = reader.read(0, param);
+
+                double scale = Math.min((double) EncodedImageMessage.PREVIEW_SIZE / width, (double) EncodedImageMessage.PREVIEW_SIZE / height);
+                int previewWidth = Math.max(1, (int) Math.round(width * scale));
+                int previewHeight = Math.max(1, (int) Math.round(height * scale));
+                BufferedImage preview = new BufferedImage(previewWidth, previewHeight, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = preview.createGraphics();
+                try {
+                    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    graphics.drawImage(source, 0, 0, previewWidth, previewHeight, null);
+                } finally {
+                    graphics.dispose();
+                }
+
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                if (!ImageIO.write(preview, "png", output)) throw new IOException("No PNG encoder available");
+                byte[] encoded = output.toByteArray();
+                return new Preview(EncodedImageMessage.hash(encoded), encoded);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * A downscaled copy of an image
+     *
+     * @param hash the SHA-256 hash of the encoded preview
+     * @param data the encoded (PNG) preview
+     */
+    public record Preview(byte[] hash, byte[] data) {
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.message;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.PrivateKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Announces users joining and leaving the chat
+ * Events are collected for a short window and announced together (as one signed SYSTEM message), and the signing
+ * happens on a separate thread - so a burst of logins costs one signature instead of one per user on the main thread.
+ */
+public class SystemAnnouncer {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The maximum number of names listed in one announcement (the rest are counted)
+     */
+    private static final int MAX_NAMES = 5;
+
+    /**
+     * The server's private key, which signs the announcements
+     */
+    private final PrivateKey key;
+    /**
+     * How long (in milliseconds) events are collected before they are announced
+     */
+    private final long window;
+    /**
+     * Called (on the announcer thread) with each announcement and its signature
+     */
+    private final BiConsumer<String, byte[]> publish;
+    /**
+     * The announcer thread
+     */
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "System Announcer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Map of user name -> whether they joined (or left), in the order of the events
+     * Guarded by this
+     */
+    private final Map<String, Boolean> pending = new LinkedHashMap<>();
+    /**
+     * Whether the pending events will be announced
+     * Guarded by this
+     */
+    private boolean scheduled = false;
+
+    /**
+     * @param key          the key that signs the announcements
+     * @param windowMillis how long events are collected before they are announced, in milliseconds
+     * @param publish      called with each announcement and its signature
+     */
+    public SystemAnnouncer(PrivateKey key, long windowMillis, BiConsumer<String, byte[]> publish) {
+        this.key = key;
+        this.window = windowMillis;
+        this.publish = publish;
+    }
+
+    /**
+     * Announces that a user joined the chat
+     *
+     * @param name the user's name
+     */
+    public void joined(String name) {
+        this.add(name, true);
+    }
+
+    /**
+     * Announces that a user left the chat
+     *
+     * @param name the user's name
+     */
+    public void left(String name) {
+        this.add(name, false);
+    }
+
+    private synchronized void add(String name, boolean joined) {
+        Boolean previous = this.pending.remove(name);
+        if (previous == null || previous == joined) {
+            this.pending.put(name, joined);
+        } // otherwise the user left and came back (or the reverse) within the window, so there is nothing to say
+        if (!this.scheduled) {
+            this.scheduled = true;
+            this.executor.schedule(this::flush, this.window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Signs and publishes the pending events
+     */
+    private void flush() {
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        synchronized (this) {
+            this.scheduled = false;
+            for (Map.Entry<String, Boolean> entry : this.pending.entrySet()) {
+                (entry.getValue() ? joined : left).add(entry.getKey());
+            }
+            this.pending.clear();
+        }
+        if (joined.isEmpty() && left.isEmpty()) return;
+
+        String message = describe(joined, left);
+        try {
+            this.publish.accept(message, CryptoHelper.sign(this.key, message.getBytes(StandardCharsets.UTF_8)));
+        } catch (InvalidKeyException | SignatureException e) {
+            LOGGER.error("Failed to sign announcement", e);
+        }
+    }
+
+    /**
+     * Stops the announcer thread (pending events are not announced)
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Creates the announcement text, e.g. "a and b have joined the chat! c has left the chat."
+     *
+     * @param joined the users that joined
+     * @param left   the users that left
+     * @return the announcement
+     */
+    private static String describe(List<String> joined, List<String> left) {
+        StringBuilder builder = new StringBuilder();
+        if (!joined.isEmpty()) {
+            appendNames(builder, joined);
+            builder.append(joined.size() == 1 ? " has" : " have").append(" joined the chat!");
+        }
+        if (!left.isEmpty()) {
+            if (!builder.isEmpty()) builder.append(' ');
+            appendNames(builder, left);
+            builder.append(left.size() == 1 ? " has" : " have").append(" left the chat.");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends a list of names, such as "a, b and c" or "a, b, c, d, e and 3 others"
+     */
+    private static void appendNames(StringBuilder builder, List<String> names) {
+        boolean truncate = names.size() > MAX_NAMES + 1; // never write "and 1 other"
+        int listed = truncate ? MAX_NAMES : names.size() - 1; // names before the "and"
+        for (int i = 0; i < listed; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(names.get(i));
+        }
+        if (listed > 0) builder.append(" and ");
+        if (truncate) {
+            builder.append(names.size() - MAX_NAMES).append(" others");
+        } else {
+            builder.append(names.get(names.size() - 1));
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 import io.github.marcus8448.chat.core.api.account.User;
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
 import io.github.marcus8448.chat.core.api.network.packet.Packet;
 import io.github.marcus8448.chat.core.api.network.packet.PacketType;
 import org.jetbrains.annotations.Nullable;
@@ -45,6 +46,13 @@ public interface ClientConnectionHandler extends Runnable {
      */
     <Data extends NetworkedData> void send(PacketType<Data> type, Data data);
 
+    /**
+     * Sends an already encoded packet to the connected client
+     *
+     * @param packet the encoded packet
+     */
+    void send(EncodedPacket packet);
+
     /**
      * @return the user associated with this client
      */
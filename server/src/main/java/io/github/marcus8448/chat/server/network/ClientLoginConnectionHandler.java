@@ -19,30 +19,34 @@
 import io.github.marcus8448.chat.core.api.Constants;
 import io.github.marcus8448.chat.core.api.account.User;
 import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.Handshake;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
 import io.github.marcus8448.chat.core.api.network.PacketPipeline;
 import io.github.marcus8448.chat.core.api.network.packet.ClientPacketTypes;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
 import io.github.marcus8448.chat.core.api.network.packet.Packet;
 import io.github.marcus8448.chat.core.api.network.packet.PacketType;
 import io.github.marcus8448.chat.core.api.network.packet.ServerPacketTypes;
 import io.github.marcus8448.chat.core.api.network.packet.client.Authenticate;
 import io.github.marcus8448.chat.core.api.network.packet.client.Hello;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeSession;
 import io.github.marcus8448.chat.core.api.network.packet.server.AuthenticationFailure;
 import io.github.marcus8448.chat.core.api.network.packet.server.AuthenticationRequest;
 import io.github.marcus8448.chat.core.api.network.packet.server.AuthenticationSuccess;
+import io.github.marcus8448.chat.core.api.network.packet.server.SessionResumed;
 import io.github.marcus8448.chat.server.Server;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.Nullable;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.SecretKey;
 import java.io.IOException;
-import java.security.InvalidKeyException;
-import java.util.Arrays;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.PublicKey;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ClientLoginConnectionHandler implements ClientConnectionHandler {
     private static final Logger LOGGER = LogManager.getLogger();
@@ -50,13 +54,22 @@ public class ClientLoginConnectionHandler implements ClientConnectionHandler {
      * The server instance
      */
     private final Server server;
+    /**
+     * The client's socket
+     */
+    private final Socket socket;
     /**
      * The connection pipeline
      */
     private final PacketPipeline pipeline;
+    /**
+     * Whether the handshake has finished (either the client was accepted, or the connection was rejected)
+     */
+    private final AtomicBoolean finished = new AtomicBoolean();
 
-    public ClientLoginConnectionHandler(Server server, PacketPipeline pipeline) {
+    public ClientLoginConnectionHandler(Server server, Socket socket, PacketPipeline pipeline) {
         this.server = server;
+        this.socket = socket;
         this.pipeline = pipeline;
     }
 
@@ -67,66 +80,51 @@ public <Data extends NetworkedData> void handle(Packet<Data> packet) {
 
     @Override
     public void run() {
+        boolean resumeAttempted = false;
         try {
             while (!this.server.shutdown && this.pipeline.isOpen()) {
                 Packet<?> packet = this.pipeline.receivePacket();
                 PacketType<?> type = packet.type();
-                // only accept hello packets
-                if (type == ClientPacketTypes.HELLO) {
+                if (type == ClientPacketTypes.RESUME_SESSION) {
+                    if (resumeAttempted) {
+                        LOGGER.warn("Client tried to resume a session more than once - closing connection");
+                        break;
+                    }
+                    resumeAttempted = true; // only one attempt, before the hello
+                    // a reconnecting client - try to resume its session without a full handshake
+                    if (this.tryResume((ResumeSession) packet.data())) {
+                        return;
+                    }
+                    // otherwise wait for the client to continue with a normal hello (unless the connection was closed)
+                } else if (type == ClientPacketTypes.HELLO) {
                     Hello hello = (Hello) packet.data();
                     LOGGER.trace("Hello from '{}' version {}", hello.getBrand(), hello.getVersion());
                     if (!Objects.equals(hello.getVersion(), Constants.VERSION)) { // verify that version matches
                         LOGGER.warn("Rejected client due to version mismatch [client: {} | server: {}]", hello.getVersion(), Constants.VERSION);
                         this.pipeline.send(ServerPacketTypes.AUTHENTICATION_FAILURE, new AuthenticationFailure("Version mismatch!"));
-                        this.pipeline.close();
-                        return;
+                        break;
                     }
-                    // generate a session encryption key
-                    SecretKey connectionKey = CryptoHelper.AES_KEY_GENERATOR.generateKey();
-
-                    //setup basic encryption to the client
-                    Cipher rsaCipher = CryptoHelper.createRsaCipher();
-                    try {
-                        rsaCipher.init(Cipher.ENCRYPT_MODE, hello.getKey());
-                    } catch (InvalidKeyException e) {
-                        throw new RuntimeException(e);
-                    }
-
-                    // send the encrypted session key to the client
+                    // send a random challenge and our (signed) exchange key
+                    // the client signs the challenge with its identity key (RSA or Ed25519)
                     LOGGER.trace("Sending authentication data");
-                    byte[] encoded = connectionKey.getEncoded();
-                    try {
-                        this.pipeline.send(ServerPacketTypes.AUTHENTICATION_REQUEST, new AuthenticationRequest(this.server.publicKey, rsaCipher.doFinal(encoded)));
-                    } catch (IllegalBlockSizeException | BadPaddingException e) {
-                        throw new RuntimeException(e);
-                    }
+                    byte[] challenge = new byte[Handshake.CHALLENGE_LENGTH];
+                    CryptoHelper.secureRandom().nextBytes(challenge);
+                    ExchangeKeys.ExchangeKey exchange = this.server.exchangeKeys.get();
+                    this.pipeline.send(ServerPacketTypes.AUTHENTICATION_REQUEST, new AuthenticationRequest(this.server.publicKey, challenge, exchange.keyPair().getPublic(), exchange.signature()));
+                    byte[] transcript = Handshake.transcript(challenge, hello.getExchangeKey(), exchange.keyPair().getPublic());
 
                     // get the client's response to the authentication data
                     Packet<Authenticate> packet1 = this.pipeline.receivePacket();
 
                     Authenticate auth = packet1.data();
-                    try {
-                        rsaCipher.init(Cipher.DECRYPT_MODE, this.server.privateKey);
-                    } catch (InvalidKeyException e) {
-                        throw new RuntimeException(e);
-                    }
 
-                    // decrypt the response
-                    byte[] bytes1 = rsaCipher.doFinal(auth.getData());
-                    if (Arrays.equals(bytes1, encoded)) { // verify the client knows the secret key
+                    // the client proves its identity by signing the transcript
+                    if (CryptoHelper.verify(hello.getKey(), auth.getSignature(), transcript)) {
                         if (this.server.canAccept(hello.getKey())) {
+                            // derive the session key (no private key operation with our identity key)
+                            SecretKey connectionKey = Handshake.deriveSessionKey(exchange.keyPair().getPrivate(), hello.getExchangeKey(), transcript);
                             LOGGER.info("New client successfully connected");
-                            this.server.executor.execute(() -> {
-                                // add the user
-                                User user = this.server.createUser(auth.getUsername(), hello.getKey(), null);
-                                try {
-                                    // update the server state to accept the user
-                                    this.server.updateConnection(this, new ClientMainConnectionHandler(this.server, this.pipeline.encryptWith(connectionKey), user), user);
-                                    this.pipeline.send(ServerPacketTypes.AUTHENTICATION_SUCCESS, new AuthenticationSuccess(this.server.getUsers()));
-                                } catch (IOException e) {
-                                    LOGGER.error(e);
-                                }
-                            });
+                            this.accept(auth.getUsername(), hello.getKey(), connectionKey);
                             return;
                         } else {
                             LOGGER.error("User with the same key already connected");
@@ -140,13 +138,96 @@ public void run() {
                     }
                 } else {
                     LOGGER.error("Client sent non-hello packet - closing connection");
-                    this.shutdown();
-                    return;
+                    break;
                 }
             }
+        } catch (SocketTimeoutException e) {
+            LOGGER.warn("Client login timed out");
         } catch (Exception e) {
             LOGGER.error("Failed to accept client login", e);
         }
+        // the login failed, so clean up the connection (unless it was already rejected)
+        this.reject();
+    }
+
+    /**
+     * Resumes a session with a ticket issued to the client after a previous login
+     *
+     * @param resume the client's ticket and nonce
+     * @return whether the session was resumed
+     */
+    private boolean tryResume(ResumeSession resume) throws IOException {
+        if (!Objects.equals(resume.getVersion(), Constants.VERSION)) { // verify that version matches
+            LOGGER.warn("Rejected client due to version mismatch [client: {} | server: {}]", resume.getVersion(), Constants.VERSION);
+            this.pipeline.send(ServerPacketTypes.AUTHENTICATION_FAILURE, new AuthenticationFailure("Version mismatch!"));
+            this.pipeline.close();
+            return false;
+        }
+
+        // the ticket is only used up once the resumption is accepted, so a bad binder (or a reconnect before the old
+        // session is gone) cannot burn the client's ticket
+        SessionTickets.Ticket ticket = this.server.sessionTickets.open(resume.getTicket());
+        if (ticket == null || resume.getNonce().length != Handshake.CHALLENGE_LENGTH
+                || !Handshake.verifyResumeBinder(ticket.secret(), resume.getTicket(), resume.getNonce(), resume.getBinder())) {
+            LOGGER.debug("Session ticket rejected, falling back to full login");
+            this.pipeline.send(ServerPacketTypes.RESUME_REJECTED, new AuthenticationFailure("Invalid or expired session ticket."));
+            return false;
+        }
+        if (!this.server.canAccept(ticket.userKey())) {
+            LOGGER.error("User with the same key already connected");
+            this.pipeline.send(ServerPacketTypes.AUTHENTICATION_FAILURE, new AuthenticationFailure("Client with this public key already connected."));
+            this.pipeline.close();
+            return false;
+        }
+        if (!this.server.sessionTickets.redeem(ticket)) { // used by another connection in the meantime
+            this.pipeline.send(ServerPacketTypes.RESUME_REJECTED, new AuthenticationFailure("Invalid or expired session ticket."));
+            return false;
+        }
+
+        byte[] nonce = new byte[Handshake.CHALLENGE_LENGTH];
+        CryptoHelper.secureRandom().nextBytes(nonce);
+        SecretKey connectionKey = Handshake.deriveResumedSessionKey(ticket.secret(), resume.getNonce(), nonce);
+        LOGGER.info("Client resumed session");
+        this.pipeline.send(ServerPacketTypes.SESSION_RESUMED, new SessionResumed(nonce));
+        this.accept(ticket.username(), ticket.userKey(), connectionKey);
+        return true;
+    }
+
+    /**
+     * Logs in an authenticated client, and issues it a new session ticket
+     *
+     * @param username      the user's name
+     * @param key           the user's public key
+     * @param connectionKey the session key
+     */
+    private void accept(Identifier username, PublicKey key, SecretKey connectionKey) throws IOException {
+        if (!this.finished.compareAndSet(false, true)) {
+            throw new SocketTimeoutException("Handshake deadline passed"); // the connection was already rejected
+        }
+        this.socket.setSoTimeout(0); // logged in, so wait for packets indefinitely
+        this.server.executor.execute(() -> {
+            // add the user
+            User user = this.server.createUser(username, key, null);
+            try {
+                // update the server state to accept the user
+                ClientMainConnectionHandler handler = new ClientMainConnectionHandler(this.server, this.pipeline.encryptWith(connectionKey), user);
+                this.server.updateConnection(this, handler, user);
+                this.pipeline.send(ServerPacketTypes.AUTHENTICATION_SUCCESS, new AuthenticationSuccess());
+                handler.send(ServerPacketTypes.SESSION_TICKET, this.server.sessionTickets.issue(username, key));
+            } catch (IOException e) {
+                LOGGER.error(e);
+            }
+        });
+    }
+
+    /**
+     * Closes the connection if the handshake has not finished yet (e.g. it waited or ran for too long)
+     * Safe to call from any thread - a client that was already accepted is not affected
+     */
+    public void reject() {
+        if (this.finished.compareAndSet(false, true)) {
+            this.shutdown();
+        }
     }
 
     @Override
@@ -168,6 +249,15 @@ public <Data extends NetworkedData> void send(PacketType<Data> type, Data data)
         }
     }
 
+    @Override
+    public void send(EncodedPacket packet) {
+        try {
+            this.pipeline.send(packet);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public @Nullable User getUser() {
         return null;
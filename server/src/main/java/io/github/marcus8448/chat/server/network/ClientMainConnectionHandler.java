@@ -20,10 +20,17 @@
 import io.github.marcus8448.chat.core.api.network.NetworkedData;
 import io.github.marcus8448.chat.core.api.network.PacketPipeline;
 import io.github.marcus8448.chat.core.api.network.packet.ClientPacketTypes;
+import io.github.marcus8448.chat.core.api.network.packet.EncodedPacket;
 import io.github.marcus8448.chat.core.api.network.packet.Packet;
 import io.github.marcus8448.chat.core.api.network.packet.PacketType;
-import io.github.marcus8448.chat.core.api.network.packet.client.SendImageMessage;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestHistory;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestImage;
+import io.github.marcus8448.chat.core.api.network.packet.client.RequestKeys;
+import io.github.marcus8448.chat.core.api.network.packet.client.ResumeChannels;
+import io.github.marcus8448.chat.core.api.network.packet.client.SearchMessages;
+import io.github.marcus8448.chat.core.api.network.packet.client.SendEncodedImageMessage;
 import io.github.marcus8448.chat.core.api.network.packet.client.SendMessage;
+import io.github.marcus8448.chat.core.api.network.packet.client.SyncPresence;
 import io.github.marcus8448.chat.core.api.network.packet.common.ChannelList;
 import io.github.marcus8448.chat.server.Server;
 import org.apache.logging.log4j.LogManager;
@@ -68,9 +75,32 @@ public <Data extends NetworkedData> void handle(Packet<Data> packet) {
             ChannelList list = packet.getAs(ClientPacketTypes.LEAVE_CHANNELS);
             this.server.executor.submit(() -> this.server.leaveChannels(this, this.user, list.getChannels()));
         } else if (type == ClientPacketTypes.SEND_IMAGE_MESSAGE) {
-            SendImageMessage imgMsg = packet.getAs(ClientPacketTypes.SEND_IMAGE_MESSAGE);
-            long l = System.currentTimeMillis();
-            this.server.executor.submit(() -> this.server.receiveImageMessage(imgMsg.getChannel(), l, this.user, imgMsg.getSignature(), imgMsg.getImage(), imgMsg.getWidth(), imgMsg.getHeight()));
+            // raw pixels would bypass the image store (and be kept in history uncompressed), so only encoded images are accepted
+            LOGGER.warn("Rejected raw image message from {}", this.user.getLongIdName());
+        } else if (type == ClientPacketTypes.SEND_ENCODED_IMAGE_MESSAGE) {
+            SendEncodedImageMessage imgMsg = packet.getAs(ClientPacketTypes.SEND_ENCODED_IMAGE_MESSAGE);
+            this.server.submitEncodedImageMessage(imgMsg.getChannel(), this.user, imgMsg.getSignature(), imgMsg.getData(), imgMsg.getWidth(), imgMsg.getHeight());
+        } else if (type == ClientPacketTypes.REQUEST_IMAGE) {
+            RequestImage request = packet.getAs(ClientPacketTypes.REQUEST_IMAGE);
+            this.server.executor.submit(() -> this.server.sendImage(this, this.user, request.getHash()));
+        } else if (type == ClientPacketTypes.REQUEST_HISTORY_BEFORE) {
+            RequestHistory request = packet.getAs(ClientPacketTypes.REQUEST_HISTORY_BEFORE);
+            this.server.executor.submit(() -> this.server.sendHistory(this, this.user, request.getChannel(), true, request.getSequence(), request.getLimit()));
+        } else if (type == ClientPacketTypes.REQUEST_HISTORY_SINCE) {
+            RequestHistory request = packet.getAs(ClientPacketTypes.REQUEST_HISTORY_SINCE);
+            this.server.executor.submit(() -> this.server.sendHistory(this, this.user, request.getChannel(), false, request.getSequence(), request.getLimit()));
+        } else if (type == ClientPacketTypes.RESUME_CHANNELS) {
+            ResumeChannels resume = packet.getAs(ClientPacketTypes.RESUME_CHANNELS);
+            this.server.executor.submit(() -> this.server.resumeChannels(this, this.user, resume.getChannels(), resume.getLastSequences(), resume.getHistoryIds()));
+        } else if (type == ClientPacketTypes.SEARCH_MESSAGES) {
+            SearchMessages search = packet.getAs(ClientPacketTypes.SEARCH_MESSAGES);
+            this.server.executor.submit(() -> this.server.searchMessages(this, this.user, search.getChannel(), search.getQuery(), search.getBefore(), search.getLimit()));
+        } else if (type == ClientPacketTypes.SYNC_PRESENCE) {
+            SyncPresence sync = packet.getAs(ClientPacketTypes.SYNC_PRESENCE);
+            this.server.executor.submit(() -> this.server.syncPresence(this, sync.getEpoch(), sync.getVersion()));
+        } else if (type == ClientPacketTypes.REQUEST_KEYS) {
+            RequestKeys request = packet.getAs(ClientPacketTypes.REQUEST_KEYS);
+            this.server.executor.submit(() -> this.server.sendKeys(this, request.getFingerprints()));
         }
     }
 
@@ -106,6 +136,15 @@ public <Data extends NetworkedData> void send(PacketType<Data> type, Data data)
         }
     }
 
+    @Override
+    public void send(EncodedPacket packet) {
+        try {
+            this.pipeline.send(packet);
+        } catch (IOException e) {
+            LOGGER.error("Failed to send packet", e);
+        }
+    }
+
     @NotNull
     @Override
     public User getUser() {
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.network;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.crypto.Handshake;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.SignatureException;
+
+/**
+ * Holds the server's X25519 exchange key, used by every login handshake.
+ * The key is signed with the server's identity key once, and replaced after a fixed lifetime
+ * so that a leaked exchange key only exposes sessions from its own period.
+ */
+public class ExchangeKeys {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * The server's identity key
+     */
+    private final PrivateKey identity;
+    /**
+     * How long (in nanoseconds) an exchange key is used for
+     */
+    private final long lifetime;
+    /**
+     * The exchange key currently in use
+     */
+    private volatile ExchangeKey current;
+
+    /**
+     * @param identity       the server's identity key, which signs each exchange key
+     * @param lifetimeMillis how long each exchange key is used for, in milliseconds
+     */
+    public ExchangeKeys(PrivateKey identity, long lifetimeMillis) {
+        this.identity = identity;
+        this.lifetime = lifetimeMillis * 1_000_000L;
+    }
+
+    /**
+     * @return the current exchange key, creating a new one if it has expired
+     */
+    public @NotNull ExchangeKey get() {
+        ExchangeKey key = this.current;
+        if (key == null || System.nanoTime() - key.created() > this.lifetime) {
+            synchronized (this) {
+                key = this.current;
+                if (key == null || System.nanoTime() - key.created() > this.lifetime) {
+                    key = this.create();
+                    this.current = key;
+                }
+            }
+        }
+        return key;
+    }
+
+    private ExchangeKey create() {
+        KeyPair keyPair = CryptoHelper.generateX25519KeyPair();
+        try {
+            byte[] signature = Handshake.signExchangeKey(this.identity, keyPair.getPublic());
+            LOGGER.debug("Rotated handshake exchange key");
+            return new ExchangeKey(keyPair, signature, System.nanoTime());
+        } catch (InvalidKeyException | SignatureException e) {
+            throw new IllegalStateException("Failed to sign exchange key", e);
+        }
+    }
+
+    /**
+     * A signed X25519 key pair
+     *
+     * @param keyPair   the X25519 key pair
+     * @param signature signature of the public key, made with the server's identity key
+     * @param created   when the key was created (as {@link System#nanoTime()})
+     */
+    public record ExchangeKey(KeyPair keyPair, byte[] signature, long created) {
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.network;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs login handshakes on a small, separate pool of threads, so that a burst of (re)connecting clients cannot starve
+ * the connections of users that are already logged in.
+ * <p>
+ * Only a fixed number of handshakes run at once. The rest wait in a bounded queue, which is served round-robin by
+ * address so that one host cannot crowd out everyone else. Connections that can't be queued, or that waited too long,
+ * are rejected (closed) - the client will retry later.
+ * Each handshake also has a deadline once it starts, so a slow (or malicious) client can't keep a worker busy forever.
+ */
+public class HandshakeScheduler {
+    /**
+     * The handshake worker threads
+     */
+    private final ExecutorService executor;
+    /**
+     * Rejects handshakes that run past their deadline
+     */
+    private final ScheduledExecutorService watchdog;
+    /**
+     * The maximum number of handshakes running at once
+     */
+    private final int concurrency;
+    /**
+     * The maximum number of handshakes waiting in total
+     */
+    private final int queueLimit;
+    /**
+     * The maximum number of handshakes waiting per address
+     */
+    private final int addressQueueLimit;
+    /**
+     * How long (in nanoseconds) a handshake can wait before it is rejected
+     */
+    private final long queueTimeout;
+    /**
+     * How long (in milliseconds) a handshake can run before it is rejected
+     */
+    private final long handshakeTimeout;
+    /**
+     * Map of address -> waiting handshakes, in round-robin order
+     * Guarded by this
+     */
+    private final Map<InetAddress, ArrayDeque<Pending>> queues = new LinkedHashMap<>();
+    /**
+     * The number of waiting handshakes
+     * Guarded by this
+     */
+    private int queued = 0;
+    /**
+     * The number of running handshakes
+     * Guarded by this
+     */
+    private int running = 0;
+
+    /**
+     * The number of handshakes completed
+     */
+    private final AtomicLong completed = new AtomicLong();
+    /**
+     * The number of connections rejected because the queue was full
+     */
+    private final AtomicLong rejected = new AtomicLong();
+    /**
+     * The number of connections rejected because they waited too long
+     */
+    private final AtomicLong expired = new AtomicLong();
+    /**
+     * The number of handshakes rejected because they ran past their deadline
+     */
+    private final AtomicLong timedOut = new AtomicLong();
+    /**
+     * The total time spent waiting in the queue, in nanoseconds
+     */
+    private final AtomicLong waitNanos = new AtomicLong();
+    /**
+     * The total time from accepting a connection to the end of its handshake, in nanoseconds
+     */
+    private final AtomicLong latencyNanos = new AtomicLong();
+    /**
+     * The longest time from accepting a connection to the end of its handshake, in nanoseconds
+     */
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param concurrency        the maximum number of handshakes running at once
+     * @param queueLimit         the maximum number of handshakes waiting in total
+     * @param addressQueueLimit  the maximum number of handshakes waiting per address
+     * @param queueTimeoutMillis how long a handshake can wait before it is rejected, in milliseconds
+     * @param timeoutMillis      how long a handshake can run before it is rejected, in milliseconds
+     */
+    public HandshakeScheduler(int concurrency, int queueLimit, int addressQueueLimit, long queueTimeoutMillis, long timeoutMillis) {
+        this.concurrency = concurrency;
+        this.queueLimit = queueLimit;
+        this.addressQueueLimit = addressQueueLimit;
+        this.queueTimeout = queueTimeoutMillis * 1_000_000L;
+        this.handshakeTimeout = timeoutMillis;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Handshake Watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger number = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "Handshake #" + number.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a handshake as soon as a worker is available
+     *
+     * @param address   the address of the client
+     * @param handshake the handshake to run
+     * @param reject    called if the handshake waited or ran too long (from another thread, so it must be safe to call while the handshake runs)
+     * @return whether the handshake was accepted (if not, the caller should close the connection)
+     */
+    public boolean submit(InetAddress address, Runnable handshake, Runnable reject) {
+        Pending pending = new Pending(handshake, reject, System.nanoTime());
+        synchronized (this) {
+            if (this.running >= this.concurrency) {
+                ArrayDeque<Pending> queue = this.queues.get(address);
+                if (this.queued >= this.queueLimit || (queue != null && queue.size() >= this.addressQueueLimit)) {
+                    this.rejected.incrementAndGet();
+                    return false;
+                }
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    this.queues.put(address, queue);
+                }
+                queue.add(pending);
+                this.queued++;
+                return true;
+            }
+            this.running++;
+        }
+        this.start(pending);
+        return true;
+    }
+
+    private void start(Pending pending) {
+        this.executor.execute(() -> {
+            this.waitNanos.addAndGet(System.nanoTime() - pending.queued());
+            ScheduledFuture<?> deadline = this.watchdog.schedule(() -> {
+                this.timedOut.incrementAndGet();
+                pending.reject().run(); // closes the connection, so the handshake stops waiting for the client
+            }, this.handshakeTimeout, TimeUnit.MILLISECONDS);
+            try {
+                pending.handshake().run();
+            } finally {
+                deadline.cancel(false);
+                long latency = System.nanoTime() - pending.queued();
+                this.completed.incrementAndGet();
+                this.latencyNanos.addAndGet(latency);
+                this.maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                this.next();
+            }
+        });
+    }
+
+    /**
+     * Starts the next waiting handshake (or frees the worker if there are none)
+     */
+    private void next() {
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                next = this.poll();
+                if (next == null) {
+                    this.running--;
+                    return;
+                }
+            }
+            if (System.nanoTime() - next.queued() > this.queueTimeout) {
+                this.expired.incrementAndGet();
+                next.reject().run();
+            } else {
+                this.start(next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest handshake of the next address, and moves the address to the back of the line
+     */
+    private @Nullable Pending poll() {
+        Iterator<Map.Entry<InetAddress, ArrayDeque<Pending>>> iterator = this.queues.entrySet().iterator();
+        if (!iterator.hasNext()) return null;
+        Map.Entry<InetAddress, ArrayDeque<Pending>> entry = iterator.next();
+        iterator.remove();
+        Pending pending = entry.getValue().poll();
+        if (!entry.getValue().isEmpty()) {
+            this.queues.put(entry.getKey(), entry.getValue());
+        }
+        this.queued--;
+        return pending;
+    }
+
+    /**
+     * @return a summary of the scheduler's activity
+     */
+    public String getMetrics() {
+        int running;
+        int queued;
+        synchronized (this) {
+            running = this.running;
+            queued = this.queued;
+        }
+        long completed = this.completed.get();
+        return String.format("Handshakes: %d running, %d queued, %d completed, %d rejected, %d expired, %d timed out, %.2fms average (%.2fms waiting), %.2fms max",
+                running, queued, completed, this.rejected.get(), this.expired.get(), this.timedOut.get(),
+                completed == 0 ? 0.0 : this.latencyNanos.get() / 1_000_000.0 / completed,
+                completed == 0 ? 0.0 : this.waitNanos.get() / 1_000_000.0 / completed,
+                this.maxLatencyNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+        this.watchdog.shutdownNow();
+    }
+
+    /**
+     * A handshake waiting for a worker
+     *
+     * @param handshake the handshake
+     * @param reject    called if the handshake is dropped
+     * @param queued    when the connection was accepted (as {@link System#nanoTime()})
+     */
+    private record Pending(Runnable handshake, Runnable reject, long queued) {
+    }
+}
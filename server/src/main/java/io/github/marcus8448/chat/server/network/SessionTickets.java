@@ -0,0 +1,282 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.network;
+
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.io.BinaryInput;
+import io.github.marcus8448.chat.core.api.network.io.BinaryOutput;
+import io.github.marcus8448.chat.core.api.network.packet.server.SessionTicket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and redeems session tickets, which let a client that was disconnected log back in without a full handshake.
+ * <p>
+ * Tickets are encrypted (AES-GCM) with a key derived from the server's identity key, so the server does not need to
+ * store them, and they stay valid across a restart. Each ticket can only be redeemed once (within the same run), and
+ * all tickets of a user can be revoked. Revocations are saved to a file, so that a restart does not undo them.
+ */
+public class SessionTickets {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * HKDF context for the ticket encryption key
+     */
+    private static final byte[] TICKET_KEY_INFO = "chat ticket key v1".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Format version of the ticket contents
+     */
+    private static final int VERSION = 1;
+    private static final int ID_BYTES = 16;
+    private static final int SECRET_BYTES = 32;
+    private static final int NONCE_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    /**
+     * How often (in milliseconds) expired revocations and redeemed ticket ids are forgotten
+     */
+    private static final long CLEANUP_INTERVAL = 60 * 1000;
+
+    /**
+     * The key that tickets are encrypted with
+     */
+    private final SecretKey key;
+    /**
+     * How long (in milliseconds) a ticket is valid for
+     */
+    private final long lifetime;
+    /**
+     * Map of redeemed ticket id -> expiry time (so that tickets cannot be used twice)
+     */
+    private final Map<String, Long> redeemed = new ConcurrentHashMap<>();
+    /**
+     * Map of user key fingerprint -> revocation time (tickets issued before then are rejected)
+     */
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    /**
+     * The file revocations are saved to (one "fingerprint time" pair per line)
+     */
+    private final Path revocationFile;
+    /**
+     * When expired entries should next be removed
+     */
+    private volatile long nextCleanup;
+
+    /**
+     * @param identity       the server's identity key, which the ticket key is derived from
+     * @param lifetimeMillis how long each ticket is valid for, in milliseconds
+     * @param revocationFile the file to save revocations to (loaded if it exists)
+     */
+    public SessionTickets(PrivateKey identity, long lifetimeMillis, Path revocationFile) {
+        this.key = new SecretKeySpec(CryptoHelper.hkdfSha256(new byte[0], identity.getEncoded(), TICKET_KEY_INFO, 32), "AES");
+        this.lifetime = lifetimeMillis;
+        this.revocationFile = revocationFile;
+        this.nextCleanup = System.currentTimeMillis() + CLEANUP_INTERVAL;
+        this.loadRevocations();
+    }
+
+    /**
+     * Creates a new ticket for a logged-in user
+     *
+     * @param username the user's name
+     * @param userKey  the user's public key
+     * @return the ticket (and its secret) to send to the client
+     */
+    public @NotNull SessionTicket issue(Identifier username, PublicKey userKey) {
+        byte[] id = new byte[ID_BYTES];
+        byte[] secret = new byte[SECRET_BYTES];
+        CryptoHelper.secureRandom().nextBytes(id);
+        CryptoHelper.secureRandom().nextBytes(secret);
+        long issued = System.currentTimeMillis();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinaryOutput output = BinaryOutput.stream(bytes)) {
+            output.writeByte(VERSION);
+            output.writeByteArray(ID_BYTES, id);
+            output.writeLong(issued);
+            output.writeLong(issued + this.lifetime);
+            output.writeString(username.getValue());
+            output.writeByteArray(userKey.getEncoded());
+            output.writeByteArray(SECRET_BYTES, secret);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try {
+            byte[] plaintext = bytes.toByteArray();
+            byte[] nonce = new byte[NONCE_BYTES];
+            CryptoHelper.secureRandom().nextBytes(nonce);
+            Cipher cipher = CryptoHelper.createAesGcmCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_BITS, nonce));
+            byte[] ticket = Arrays.copyOf(nonce, NONCE_BYTES + cipher.getOutputSize(plaintext.length));
+            cipher.doFinal(plaintext, 0, plaintext.length, ticket, NONCE_BYTES);
+            return new SessionTicket(ticket, secret, (int) (this.lifetime / 1000));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt session ticket", e);
+        }
+    }
+
+    /**
+     * Decrypts and checks a ticket presented by a client
+     * The ticket is not marked as used - that only happens once the resumption is accepted (see {@link #redeem(Ticket)})
+     *
+     * @param ticket the ticket sent by the client
+     * @return the ticket's contents, or null if it is invalid, expired, revoked or has already been used
+     */
+    public @Nullable Ticket open(byte[] ticket) {
+        long now = System.currentTimeMillis();
+        if (now > this.nextCleanup) this.cleanup(now);
+        if (ticket.length <= NONCE_BYTES) return null;
+
+        byte[] plaintext;
+        try {
+            Cipher cipher = CryptoHelper.createAesGcmCipher();
+            cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_BITS, ticket, 0, NONCE_BYTES));
+            plaintext = cipher.doFinal(ticket, NONCE_BYTES, ticket.length - NONCE_BYTES);
+        } catch (GeneralSecurityException e) {
+            LOGGER.debug("Rejected forged or corrupt session ticket");
+            return null;
+        }
+
+        Ticket contents;
+        try (BinaryInput input = BinaryInput.buffer(plaintext)) {
+            if (input.readByte() != VERSION) return null;
+            String id = HexFormat.of().formatHex(input.readByteArray(ID_BYTES));
+            long issued = input.readLong();
+            long expires = input.readLong();
+            Identifier username = Identifier.create(input.readString());
+            PublicKey userKey = CryptoHelper.decodePublicKey(input.readByteArray());
+            byte[] secret = input.readByteArray(SECRET_BYTES);
+            contents = new Ticket(id, username, userKey, CryptoHelper.sha256Hash(userKey.getEncoded()), secret, issued, expires);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read session ticket", e);
+            return null;
+        }
+
+        if (now > contents.expires()) return null;
+        Long revokedAt = this.revoked.get(contents.fingerprint());
+        if (revokedAt != null && contents.issued() <= revokedAt) return null;
+        if (this.redeemed.containsKey(contents.id())) {
+            LOGGER.warn("Session ticket of {} was used twice", contents.username());
+            return null;
+        }
+        return contents;
+    }
+
+    /**
+     * Marks a ticket as used, so that it cannot be used again
+     *
+     * @param ticket the (opened) ticket
+     * @return whether the ticket had not been used yet
+     */
+    public boolean redeem(Ticket ticket) {
+        if (this.redeemed.putIfAbsent(ticket.id(), ticket.expires()) != null) {
+            LOGGER.warn("Session ticket of {} was used twice", ticket.username());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rejects all tickets issued to a user so far
+     *
+     * @param fingerprint the fingerprint of the user's key
+     */
+    public synchronized void revoke(String fingerprint) {
+        this.revoked.put(fingerprint, System.currentTimeMillis());
+        this.saveRevocations();
+    }
+
+    /**
+     * Reads the revocations saved by a previous run, skipping the ones that no longer matter
+     */
+    private void loadRevocations() {
+        if (!Files.exists(this.revocationFile)) return;
+        long now = System.currentTimeMillis();
+        try {
+            for (String line : Files.readAllLines(this.revocationFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 2) continue;
+                try {
+                    long revokedAt = Long.parseLong(parts[1]);
+                    if (now <= revokedAt + this.lifetime) this.revoked.merge(parts[0], revokedAt, Math::max);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to read session ticket revocations", e);
+        }
+    }
+
+    /**
+     * Overwrites the revocation file with the current revocations
+     */
+    private void saveRevocations() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : this.revoked.entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        try {
+            Path temp = this.revocationFile.resolveSibling(this.revocationFile.getFileName() + ".tmp");
+            Files.writeString(temp, builder, StandardCharsets.UTF_8);
+            Files.move(temp, this.revocationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); // never leave a partial file
+        } catch (IOException e) {
+            LOGGER.error("Failed to save session ticket revocations (they will be lost on restart)", e);
+        }
+    }
+
+    private void cleanup(long now) {
+        this.nextCleanup = now + CLEANUP_INTERVAL;
+        this.redeemed.values().removeIf(expires -> now > expires);
+        // every ticket issued before the revocation has expired
+        this.revoked.values().removeIf(revokedAt -> now > revokedAt + this.lifetime);
+    }
+
+    /**
+     * The contents of a valid ticket
+     *
+     * @param id          unique id of the ticket
+     * @param username    the user's name
+     * @param userKey     the user's public key
+     * @param fingerprint the fingerprint of the user's key
+     * @param secret      the resumption secret
+     * @param issued      when the ticket was issued (epoch milliseconds)
+     * @param expires     when the ticket expires (epoch milliseconds)
+     */
+    public record Ticket(String id, Identifier username, PublicKey userKey, String fingerprint, byte[] secret,
+                         long issued, long expires) {
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.search;
+
+import java.util.*;
+
+/**
+ * Inverted index of the words used in a single channel
+ * Messages are grouped into time buckets, and each bucket maps words -> the sequence numbers of the messages containing them
+ * Not thread safe
+ */
+public class ChannelIndex {
+    /**
+     * The length of a time bucket (one day)
+     */
+    private static final long BUCKET_LENGTH = 24 * 60 * 60 * 1000;
+
+    /**
+     * Time buckets, oldest first
+     */
+    private final List<Bucket> buckets = new ArrayList<>();
+
+    /**
+     * Adds a message to the index
+     * Messages must be added in order of their sequence numbers
+     *
+     * @param sequence  the sequence number of the message
+     * @param timestamp when the message was sent
+     * @param words     the (unique) words in the message
+     */
+    public void add(int sequence, long timestamp, Collection<String> words) {
+        long start = timestamp - Math.floorMod(timestamp, BUCKET_LENGTH);
+        Bucket bucket = this.buckets.isEmpty() ? null : this.buckets.get(this.buckets.size() - 1);
+        if (bucket == null || start > bucket.start) { // timestamps out of order (clock changes) stay in the newest bucket
+            bucket = new Bucket(start, sequence);
+            this.buckets.add(bucket);
+        }
+        for (String word : words) {
+            bucket.postings.computeIfAbsent(word, w -> new Postings()).add(sequence);
+        }
+    }
+
+    /**
+     * Finds the messages that contain all the given words
+     *
+     * @param words   the words to search for
+     * @param before  only messages with a lower sequence number are returned (-1 for no bound)
+     * @param limit   the maximum number of results
+     * @param results the list to add the sequence numbers of matching messages to (newest first)
+     * @return whether there may be more results
+     */
+    public boolean search(Collection<String> words, int before, int limit, List<Integer> results) {
+        if (words.isEmpty() || limit <= 0) return false;
+        Postings[] lists = new Postings[words.size()];
+        for (int b = this.buckets.size() - 1; b >= 0; b--) {
+            Bucket bucket = this.buckets.get(b);
+            if (before != -1 && bucket.firstSequence >= before) continue; // the whole bucket is after the cursor
+
+            // find the postings for each word - if any are missing, nothing in this bucket matches
+            int found = 0;
+            for (String word : words) {
+                Postings postings = bucket.postings.get(word);
+                if (postings == null) break;
+                lists[found++] = postings;
+            }
+            if (found != lists.length) continue;
+
+            // intersect the lists, starting with the shortest
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.count));
+            int[] matches = lists[0].decode();
+            int matchCount = matches.length;
+            for (int l = 1; l < lists.length && matchCount > 0; l++) {
+                matchCount = intersect(matches, matchCount, lists[l].decode());
+            }
+
+            for (int m = matchCount - 1; m >= 0; m--) { // newest first
+                if (before != -1 && matches[m] >= before) continue;
+                if (results.size() == limit) return true;
+                results.add(matches[m]);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the values from a sorted array that are not in another sorted array
+     *
+     * @param values the values to filter (modified in place)
+     * @param count  the number of values in the array
+     * @param other  the values to keep
+     * @return the new number of values
+     */
+    private static int intersect(int[] values, int count, int[] other) {
+        int kept = 0;
+        int o = 0;
+        for (int i = 0; i < count && o < other.length; i++) {
+            while (o < other.length && other[o] < values[i]) o++;
+            if (o < other.length && other[o] == values[i]) values[kept++] = values[i];
+        }
+        return kept;
+    }
+
+    /**
+     * The messages sent in a span of time
+     */
+    private static class Bucket {
+        /**
+         * When the bucket starts
+         */
+        private final long start;
+        /**
+         * The sequence number of the first message in the bucket
+         */
+        private final int firstSequence;
+        /**
+         * Map of word -> messages containing the word
+         */
+        private final Map<String, Postings> postings = new HashMap<>();
+
+        private Bucket(long start, int firstSequence) {
+            this.start = start;
+            this.firstSequence = firstSequence;
+        }
+    }
+
+    /**
+     * A sorted list of sequence numbers, stored as varint-encoded differences
+     */
+    private static class Postings {
+        /**
+         * The encoded differences
+         */
+        private byte[] data = new byte[4];
+        /**
+         * The number of bytes used
+         */
+        private int length = 0;
+        /**
+         * The number of sequence numbers in the list
+         */
+        private int count = 0;
+        /**
+         * The last sequence number added
+         */
+        private int last = -1;
+
+        private void add(int sequence) {
+            if (sequence <= this.last) return; // already added
+            int delta = sequence - this.last;
+            this.last = sequence;
+            this.count++;
+            if (this.length + 5 > this.data.length) {
+                this.data = Arrays.copyOf(this.data, this.data.length * 2);
+            }
+            while ((delta & ~0x7F) != 0) {
+                this.data[this.length++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            this.data[this.length++] = (byte) delta;
+        }
+
+        private int[] decode() {
+            int[] values = new int[this.count];
+            int value = -1;
+            int pos = 0;
+            for (int i = 0; i < this.count; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = this.data[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                value += delta;
+                values[i] = value;
+            }
+            return values;
+        }
+    }
+}
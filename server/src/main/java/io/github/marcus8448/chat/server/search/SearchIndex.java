@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.search;
+
+import io.github.marcus8448.chat.core.api.misc.Identifier;
+import io.github.marcus8448.chat.core.api.network.packet.server.SearchResults;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Full-text search over the text messages of every channel
+ * Indexing and searching both happen on a dedicated thread, so that message routing is never slowed down
+ */
+public class SearchIndex {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /**
+     * The maximum length of an indexed word (longer words are truncated)
+     */
+    private static final int MAX_WORD_LENGTH = 32;
+
+    /**
+     * The indexing thread
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Search Indexer"));
+    /**
+     * Map of channel -> index
+     * Only accessed on the indexing thread
+     */
+    private final Map<Identifier, ChannelIndex> channels = new HashMap<>();
+
+    /**
+     * Splits text into lowercase words (runs of letters and digits)
+     *
+     * @param text the text to split
+     * @return the unique words in the text, in order of appearance
+     */
+    public static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start == -1) {
+                start = i;
+            } else if (!letter && start != -1) {
+                words.add(text.substring(start, Math.min(i, start + MAX_WORD_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Queues a text message for indexing
+     * Messages of the same channel must be added in order of their sequence numbers
+     *
+     * @param channel   the channel the message was sent to
+     * @param sequence  the sequence number of the message
+     * @param timestamp when the message was sent
+     * @param text      the contents of the message
+     */
+    public void index(Identifier channel, int sequence, long timestamp, String text) {
+        this.executor.execute(() -> this.channels.computeIfAbsent(channel, c -> new ChannelIndex()).add(sequence, timestamp, tokenize(text)));
+    }
+
+    /**
+     * Searches a channel for messages containing all the words in the query
+     * The callback is invoked on the indexing thread
+     *
+     * @param channel  the channel to search
+     * @param query    the words to search for
+     * @param before   only messages with a lower sequence number are returned (-1 for no bound)
+     * @param limit    the maximum number of results
+     * @param callback receives the results
+     */
+    public void search(Identifier channel, String query, int before, int limit, Consumer<SearchResults> callback) {
+        this.executor.execute(() -> {
+            long start = System.nanoTime();
+            List<Integer> results = new ArrayList<>();
+            ChannelIndex index = this.channels.get(channel);
+            boolean more = index != null && index.search(tokenize(query), before, limit, results);
+            int[] sequences = results.stream().mapToInt(Integer::intValue).toArray();
+            LOGGER.debug("Searched #{} for '{}' in {}us ({} results)", channel.getValue(), query, (System.nanoTime() - start) / 1000, sequences.length);
+            callback.accept(new SearchResults(channel, query, sequences, more ? sequences[sequences.length - 1] : -1));
+        });
+    }
+
+    /**
+     * Stops the indexing thread
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+}
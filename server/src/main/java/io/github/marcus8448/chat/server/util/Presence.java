@@ -0,0 +1,122 @@
+/*
+ * Copyright 2023 marcus8448
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.marcus8448.chat.server.util;
+
+import io.github.marcus8448.chat.core.api.account.User;
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
+import io.github.marcus8448.chat.core.api.network.packet.server.PresenceUpdate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The versioned list of online users
+ * Keeps the most recent changes, so that reconnecting clients only need to be sent what changed while they were away
+ * Only accessed on the main thread
+ */
+public class Presence {
+    /**
+     * Identifies this run of the server (session ids start over after a restart)
+     */
+    private final long epoch = CryptoHelper.secureRandom().nextLong() | 1; // never 0 (no list)
+    /**
+     * The maximum number of changes kept
+     */
+    private final int maxChanges;
+    /**
+     * The most recent changes, oldest first
+     */
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    /**
+     * The current version (number of changes so far)
+     */
+    private int version = 0;
+
+    /**
+     * @param maxChanges the maximum number of changes kept for reconnecting clients
+     */
+    public Presence(int maxChanges) {
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * Records that a user joined
+     *
+     * @return the update to send to online clients
+     */
+    public @NotNull PresenceUpdate join(User user) {
+        this.record(new Change(++this.version, user, -1));
+        return new PresenceUpdate(this.epoch, this.version - 1, this.version, false, List.of(user), new int[0]);
+    }
+
+    /**
+     * Records that a user left
+     *
+     * @return the update to send to online clients
+     */
+    public @NotNull PresenceUpdate leave(User user) {
+        this.record(new Change(++this.version, null, user.sessionId()));
+        return new PresenceUpdate(this.epoch, this.version - 1, this.version, false, List.of(), new int[]{user.sessionId()});
+    }
+
+    /**
+     * Creates the update that brings a client's user list up to date
+     *
+     * @param epoch   the epoch of the client's list
+     * @param version the version of the client's list
+     * @param users   the users currently online (sent if the client can't be sent just the changes)
+     * @return the changes since the client's version, or the full list
+     */
+    public @NotNull PresenceUpdate sync(long epoch, int version, Collection<User> users) {
+        int oldest = this.changes.isEmpty() ? this.version : this.changes.getFirst().version() - 1; // oldest version we can update from
+        if (epoch != this.epoch || version < oldest || version > this.version || this.version - version > users.size()) {
+            // unknown or too old (or more changes than users), so just send everyone
+            return new PresenceUpdate(this.epoch, -1, this.version, true, users, new int[0]);
+        }
+
+        // merge the changes
+        Map<Integer, User> joined = new LinkedHashMap<>();
+        List<Integer> left = new ArrayList<>();
+        for (Change change : this.changes) {
+            if (change.version() <= version) continue;
+            if (change.joined() != null) {
+                joined.put(change.joined().sessionId(), change.joined());
+            } else if (joined.remove(change.left()) == null) { // joined and left in between, so the client never has to know
+                left.add(change.left());
+            }
+        }
+        return new PresenceUpdate(this.epoch, version, this.version, false, joined.values(), left.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private void record(Change change) {
+        this.changes.addLast(change);
+        if (this.changes.size() > this.maxChanges) {
+            this.changes.removeFirst();
+        }
+    }
+
+    /**
+     * A user joining or leaving
+     *
+     * @param version the version after the change
+     * @param joined  the user that joined (or null)
+     * @param left    the session id of the user that left (if no user joined)
+     */
+    private record Change(int version, @Nullable User joined, int left) {
+    }
+}
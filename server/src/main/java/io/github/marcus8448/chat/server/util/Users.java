@@ -17,17 +17,31 @@
 package io.github.marcus8448.chat.server.util;
 
 import io.github.marcus8448.chat.core.api.account.User;
+import io.github.marcus8448.chat.core.api.crypto.CryptoHelper;
 import io.github.marcus8448.chat.core.api.misc.Identifier;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.security.interfaces.RSAPublicKey;
+import java.security.PublicKey;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Users {
+    /**
+     * The number of keys of disconnected users that are kept (so clients can still verify their last messages)
+     */
+    private static final int RECENT_KEYS = 1024;
+
     private final Map<Integer, User> idToUser = new HashMap<>();
+    private final Map<String, User> fingerprintToUser = new HashMap<>();
+    private final Map<String, PublicKey> recentKeys = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+            return this.size() > RECENT_KEYS;
+        }
+    };
     private final Collection<User> users = this.idToUser.values();
     private int current = 0;
 
@@ -35,16 +49,15 @@ public Users() {
 
     }
 
-    public boolean contains(RSAPublicKey key) {
+    public boolean contains(PublicKey key) {
         // any user with the same key
-        return this.users.stream().anyMatch(u -> u.key().equals(key));
+        return this.fingerprintToUser.containsKey(CryptoHelper.sha256Hash(key.getEncoded()));
     }
 
-    public @NotNull User createUser(Identifier username, RSAPublicKey key, byte @Nullable [] base64Icon) {
-        if (this.contains(key)) throw new UnsupportedOperationException("multiconnect");
-        int id = this.current++;
-        User user = new User(id, username, key, base64Icon);
-        this.idToUser.put(id, user);
+    public @NotNull User createUser(Identifier username, PublicKey key, byte @Nullable [] base64Icon) {
+        User user = new User(this.current, username, key, base64Icon);
+        if (this.fingerprintToUser.putIfAbsent(user.fingerprint(), user) != null) throw new UnsupportedOperationException("multiconnect");
+        this.idToUser.put(this.current++, user);
         return user;
     }
 
@@ -59,9 +72,19 @@ public Collection<User> getUsers() {
     public void remove(User user) {
         User remove = this.idToUser.remove(user.sessionId());
         assert remove == user;
+        this.fingerprintToUser.remove(user.fingerprint());
+        this.recentKeys.put(user.fingerprint(), user.key());
+    }
+
+    /**
+     * @return the key of an online (or recently disconnected) user, or null if it is unknown
+     */
+    public @Nullable PublicKey getKey(String fingerprint) {
+        User user = this.fingerprintToUser.get(fingerprint);
+        return user != null ? user.key() : this.recentKeys.get(fingerprint);
     }
 
-    public boolean canAccept(RSAPublicKey key) {
+    public boolean canAccept(PublicKey key) {
         return !this.contains(key);
     }
 }